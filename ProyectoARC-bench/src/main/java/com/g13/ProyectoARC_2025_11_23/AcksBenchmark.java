@@ -0,0 +1,95 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Seguimiento de ACKs de una iteración (SeguimientoAcks, lo que usa Persona.esperarAcks).
+ * * - cicloCompleto: un hilo hace iniciar + V-1 registrar + esperar (ya completa). Coste puro
+ *   de la contabilidad, sin esperas reales.
+ * - esperaEntreHilos: como en Persona, un hilo espera y otro (el de escucha) apunta los ACKs.
+ *   Mide la iteración completa incluyendo el despertar del que espera.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AcksBenchmark {
+
+    @State(Scope.Thread)
+    public static class UnHilo {
+        @Param({"2", "5", "10", "50"})
+        public int V;
+
+        SeguimientoAcks acks;
+        int iteracion = 0;
+
+        @Setup
+        public void preparar() {
+            acks = new SeguimientoAcks(V, 1);
+        }
+    }
+
+    @Benchmark
+    public boolean cicloCompleto(UnHilo s) {
+        int it = ++s.iteracion;
+        s.acks.iniciar(it);
+        for (int vecino = 1; vecino < s.V; vecino++) s.acks.registrar(it, vecino);
+        return s.acks.esperar(it, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /** Estado compartido por el hilo que espera y el que registra. */
+    @State(Scope.Group)
+    public static class DosHilos {
+        @Param({"2", "5", "10", "50"})
+        public int V;
+
+        SeguimientoAcks acks;
+        volatile int iteracionEnCurso = 0; // La publica el que espera cuando ya ha llamado a iniciar().
+        int iteracion = 0;                 // Solo el que espera.
+        int ultimaConfirmada = 0;          // Solo el que registra.
+
+        @Setup
+        public void preparar() {
+            acks = new SeguimientoAcks(V, 1);
+        }
+    }
+
+    @Benchmark
+    @Group("esperaEntreHilos")
+    @GroupThreads(1)
+    public boolean esperar(DosHilos s) {
+        int it = ++s.iteracion;
+        s.acks.iniciar(it);
+        s.iteracionEnCurso = it;
+        // Con timeout: si JMH para al otro hilo antes que a este, no nos quedamos colgados.
+        return s.acks.esperar(it, 1, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("esperaEntreHilos")
+    @GroupThreads(1)
+    public int registrar(DosHilos s) {
+        int it = s.iteracionEnCurso;
+        if (it == s.ultimaConfirmada) {
+            Thread.onSpinWait(); // Nada nuevo que confirmar.
+            return 0;
+        }
+        for (int vecino = 1; vecino < s.V; vecino++) s.acks.registrar(it, vecino);
+        s.ultimaConfirmada = it;
+        return s.V - 1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Codificar/decodificar un mensaje con CodecMensaje: es lo que hacen serializarMensaje y
+ * deserializarMensaje en Servidor y Persona (que solo añaden el buffer del hilo).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"COMPARTIR_COORDENADAS", "ACK", "TIEMPOS_SIMULACION"})
+    public Mensaje.messageType tipo;
+
+    @Param({"false", "true"}) // Solo cambia algo en COMPARTIR_COORDENADAS (arc.coordsDelta).
+    public boolean delta;
+
+    private Mensaje mensaje;
+    private ByteBuffer bufer;
+    private ByteBuffer codificado;
+
+    @Setup
+    public void preparar() {
+        mensaje = new Mensaje(tipo, 4242, 17);
+        mensaje.idDestino = 4243; // En un ACK, quién confirma y a quién van en idCliente/idDestino.
+        switch (tipo) {
+            case COMPARTIR_COORDENADAS -> {
+                mensaje.delta = delta;
+                mensaje.x = delta ? 23 : 5_012;
+                mensaje.y = delta ? -41 : 7_340;
+                mensaje.z = delta ? 7 : 129;
+            }
+            case TIEMPOS_SIMULACION -> mensaje.tiempoNs = 150_526_315L;
+            default -> { }
+        }
+        bufer = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+        codificado = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+        CodecMensaje.codificar(mensaje, codificado);
+        codificado.flip();
+    }
+
+    @Benchmark
+    public int codificar() {
+        bufer.clear();
+        return CodecMensaje.codificar(mensaje, bufer);
+    }
+
+    @Benchmark
+    public Mensaje decodificar() throws IOException {
+        codificado.rewind();
+        return CodecMensaje.decodificar(codificado);
+    }
+
+    @Benchmark
+    public Mensaje idaYVuelta() throws IOException {
+        bufer.clear();
+        CodecMensaje.codificar(mensaje, bufer);
+        bufer.flip();
+        return CodecMensaje.decodificar(bufer);
+    }
+}
@@ -0,0 +1,35 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * CLASE: EjecutarBenchmarks (Punto de entrada de benchmarks.jar)
+ * * OBJETIVO:
+ * Lanzar todos los microbenchmarks con lo que queremos SIEMPRE: el perfilador de GC (bytes
+ * reservados por operación, "gc.alloc.rate.norm") y los resultados en JSON, para poder
+ * comparar versiones.
+ * * Uso:
+ * <pre>
+ *   java -jar target/benchmarks.jar                      (todos, JSON en resultados-jmh.json)
+ *   java -jar target/benchmarks.jar Codec -rff codec.json (filtro y fichero propios)
+ * </pre>
+ * Admite cualquier opción normal de JMH; las de la línea de comandos mandan.
+ */
+public class EjecutarBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions lineaComandos = new CommandLineOptions(args);
+        Options opciones = new OptionsBuilder()
+                .parent(lineaComandos)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(lineaComandos.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(lineaComandos.getResult().orElse("resultados-jmh.json"))
+                .build();
+        new Runner(opciones).run();
+    }
+}
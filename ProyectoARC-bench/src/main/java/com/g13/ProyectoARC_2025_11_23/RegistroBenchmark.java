@@ -0,0 +1,76 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Búsqueda del remitente de un paquete (Servidor.buscarCliente -> RegistroClientes.buscar)
+ * con N de 10 a 100.000.
+ * * - distintas:   cada cliente con su IP:puerto (motor hilos/virtual).
+ * - compartidas:  4 sockets para todos (motor multiplexado): se resuelve por el id declarado.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistroBenchmark {
+
+    private static final int V = 10;
+    private static final int CONSULTAS = 4096; // Potencia de 2: recorremos con '&'.
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int N;
+
+    @Param({"distintas", "compartidas"})
+    public String direcciones;
+
+    private RegistroClientes registro;
+    private InetSocketAddress[] origenes;
+    private int[] idsDeclarados;
+    private int siguiente = 0;
+
+    @Setup
+    public void preparar() throws UnknownHostException {
+        boolean compartidas = direcciones.equals("compartidas");
+        InfoCliente[] clientes = new InfoCliente[N];
+        for (int id = 0; id < N; id++) {
+            // Hasta 50.000 puertos por IP; con más clientes pasamos a la siguiente IP (10.0.x.y).
+            int ip = compartidas ? 0 : id / 50_000;
+            int puerto = compartidas ? 10_000 + id % 4 : 10_000 + id % 50_000;
+            InetAddress direccion = InetAddress.getByAddress(new byte[] {10, 0, (byte) (ip >> 8), (byte) ip});
+            clientes[id] = new InfoCliente(id, id / V, direccion, puerto);
+        }
+        registro = new RegistroClientes(clientes, Math.max(1, N / V));
+
+        // Consultas aleatorias precalculadas (la dirección llega ya creada, como del socket).
+        origenes = new InetSocketAddress[CONSULTAS];
+        idsDeclarados = new int[CONSULTAS];
+        for (int i = 0; i < CONSULTAS; i++) {
+            int id = ThreadLocalRandom.current().nextInt(N);
+            origenes[i] = clientes[id].endpoint();
+            idsDeclarados[i] = id;
+        }
+    }
+
+    @Benchmark
+    public InfoCliente buscarCliente() {
+        int i = siguiente++ & (CONSULTAS - 1);
+        return registro.buscar(origenes[i], idsDeclarados[i]);
+    }
+}
@@ -0,0 +1,109 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * El reparto de COMPARTIR_COORDENADAS del servidor: se llama a Servidor.difundirAlGrupo, el mismo
+ * código que usa procesarMensaje (recorrer los miembros del grupo, reescribir idDestino en el
+ * mismo datagrama y mandarlo a cada vecino, contándolo en las estadísticas de tráfico).
+ * * - bucle:  con un Transporte que no manda nada (lo que cuesta nuestro código).
+ * - socket:   con el Transporte del servidor (-Darc.transporte) hacia un sumidero en loopback que
+ *             nadie lee (suma el coste del send).
+ * Se mide por paquete recibido, así que el coste crece con V-1 envíos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepartoBenchmark {
+
+    @Param({"2", "5", "10", "20", "50"})
+    public int V;
+
+    private ByteBuffer datos;
+    private Transporte nulo, canalServidor, sumidero;
+
+    @Setup
+    public void preparar() throws IOException {
+        // Un sumidero en loopback: todos los "vecinos" apuntan a él (nadie lo lee; si se llena,
+        // se descarta, igual que con un cliente lento).
+        sumidero = Transporte.abrir(0, 4 * 1024 * 1024);
+        int puerto = sumidero.direccionLocal().getPort();
+        canalServidor = Transporte.abrir(0, 64 * 1024);
+        nulo = new CanalNulo();
+
+        // Un único grupo de V clientes; el servidor queda como al empezar la FASE 2.
+        InfoCliente[] clientes = new InfoCliente[V];
+        for (int id = 0; id < V; id++) {
+            clientes[id] = new InfoCliente(id, 0, InetAddress.getLoopbackAddress(), puerto);
+        }
+        Servidor.prepararReproduccion(V, V, 1, clientes, canalServidor);
+
+        datos = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+        CodecMensaje.codificar(new Mensaje(Mensaje.messageType.COMPARTIR_COORDENADAS, 0, 1), datos);
+        datos.flip();
+    }
+
+    @TearDown
+    public void cerrar() throws IOException {
+        canalServidor.close();
+        sumidero.close();
+    }
+
+    @Benchmark
+    public byte bucle() throws IOException {
+        Servidor.difundirAlGrupo(nulo, 0, 0, datos);
+        return datos.get(CodecMensaje.OFFSET_DESTINO + 3);
+    }
+
+    @Benchmark
+    public byte socket() throws IOException {
+        Servidor.difundirAlGrupo(canalServidor, 0, 0, datos);
+        return datos.get(CodecMensaje.OFFSET_DESTINO + 3);
+    }
+
+    /** Acepta cualquier datagrama y lo da por enviado sin tocar la red. */
+    private static final class CanalNulo implements Transporte {
+
+        @Override
+        public int enviar(ByteBuffer bufer, InetSocketAddress destino) {
+            int n = bufer.remaining();
+            bufer.position(bufer.limit());
+            return n;
+        }
+
+        @Override
+        public InetSocketAddress recibir(ByteBuffer destino) throws IOException {
+            throw new IOException("El canal del benchmark no recibe");
+        }
+
+        @Override
+        public InetSocketAddress direccionLocal() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        }
+
+        @Override
+        public boolean abierto() { return true; }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,144 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CLASE: AgregadorAcks (Un ACK por cliente e iteración, con un bitmap de quién confirma)
+ * * OBJETIVO:
+ * En el camino de vuelta cada vecino que confirma genera un ACK que el servidor reenvía suelto:
+ * el autor de las coordenadas recibe V-1 datagramas por iteración. Con -Darc.agruparAcks=true el
+ * servidor apunta los ACKs de cada (cliente, iteración) en un bitmap (bit p = el miembro en la
+ * posición p del grupo ha confirmado) y le manda UN ACK_MAPA:
+ * - en cuanto están los V-1, o
+ * - al vencer el plazo (-Darc.agruparAcksPlazoUs) desde el primero que falta por enviar, con los
+ *   que haya (parcial). Lo que llegue después sale en otro ACK_MAPA (el cliente ignora los bits repetidos).
+ * - Un ACK repetido de un bitmap que ya salió vuelve a mandar el bitmap tal como está: si el
+ *   ACK_MAPA se perdió, el autor retransmite (arc.fiable), el vecino confirma otra vez y así se
+ *   recupera sin esperar al timeout completo.
+ * * ITERACIONES EN VUELO:
+ * En bucle cerrado cada cliente tiene una sola iteración pendiente, pero en bucle abierto
+ * (arc.tasaHz en el Cliente) tiene varias a la vez. Por eso cada miembro guarda un anillo de
+ * -Darc.agruparVentana iteraciones (índice = iteración % ventana), cada una con su bitmap y su plazo:
+ * - Si una iteración nueva necesita el hueco de otra con confirmaciones sin enviar, esas salen
+ *   antes en un ACK_MAPA parcial (no se pierden).
+ * - Un ACK de una iteración más vieja que las del anillo sale al momento, en un ACK_MAPA con su bit.
+ * * Estado por grupo protegido por su propio monitor, como AgrupadorCoordenadas.
+ */
+final class AgregadorAcks {
+
+    /** Un ACK_MAPA listo para enviar (el bitmap es una copia: se envía fuera del monitor). */
+    record Confirmacion(int idDestino, int iteracion, long[] mapa) {}
+
+    private final int V;
+    private final int ventana;
+    private final long plazoNs;
+    private final Grupo[] grupos;
+
+    AgregadorAcks(int numGrupos, int V, int ventana, long plazoNs) {
+        this.V = V;
+        this.ventana = ventana;
+        this.plazoNs = plazoNs;
+        this.grupos = new Grupo[numGrupos];
+        for (int g = 0; g < numGrupos; g++) grupos[g] = new Grupo(V, ventana);
+    }
+
+    /**
+     * Apunta que 'idConfirma' ha recibido las coordenadas de 'idDestino' en esa iteración.
+     * @return Los ACK_MAPA a enviar ya: el completo si con este están los V-1, el parcial de la
+     *         iteración que dejaba su hueco, o el de un ACK demasiado viejo. Normalmente ninguno.
+     */
+    List<Confirmacion> anotar(int idGrupo, int idDestino, int idConfirma, int iteracion, long ahora) {
+        Grupo g = grupos[idGrupo];
+        int pos = Math.floorMod(idDestino, V);
+        int bit = Math.floorMod(idConfirma, V);
+        if (bit == pos) return List.of(); // Nadie se confirma a sí mismo.
+        int h = pos * ventana + Math.floorMod(iteracion, ventana);
+        long mascara = 1L << (bit & 63);
+        synchronized (g) {
+            if (iteracion < g.iteracion[h]) {
+                // Fuera del anillo: no hay bitmap que completar, sale suelta con su bit.
+                long[] suelto = new long[g.bits[h].length];
+                suelto[bit >> 6] = mascara;
+                return List.of(new Confirmacion(idDestino, iteracion, suelto));
+            }
+            List<Confirmacion> salida = List.of();
+            if (iteracion > g.iteracion[h]) {
+                if (g.pendiente[h]) { // La que ocupaba el hueco sale antes de borrarla.
+                    salida = new ArrayList<>(2);
+                    salida.add(soltar(g, h, idDestino));
+                }
+                g.iteracion[h] = iteracion;
+                Arrays.fill(g.bits[h], 0L);
+                g.cuenta[h] = 0;
+            }
+            if ((g.bits[h][bit >> 6] & mascara) != 0) {
+                // Repetido: si el bitmap ya salió, puede que se perdiera (el autor retransmite con
+                // arc.fiable y el vecino vuelve a confirmar). Se reenvía tal como está ahora.
+                if (g.pendiente[h]) return salida; // Aún no ha salido: ya irá al vencer el plazo.
+                return List.of(soltar(g, h, idDestino));
+            }
+            g.bits[h][bit >> 6] |= mascara;
+            g.cuenta[h]++;
+            if (g.cuenta[h] == V - 1) {
+                if (salida.isEmpty()) return List.of(soltar(g, h, idDestino));
+                salida.add(soltar(g, h, idDestino));
+                return salida;
+            }
+            if (!g.pendiente[h]) { // Primer ACK sin enviar: arranca el plazo.
+                g.pendiente[h] = true;
+                g.pendientes++;
+                g.limite[h] = ahora + plazoNs;
+            }
+            return salida;
+        }
+    }
+    /** ACK_MAPA parciales de los miembros del grupo cuyo plazo ha vencido (lo llama el hilo del plazo). */
+    List<Confirmacion> caducados(int idGrupo, long ahora) {
+        Grupo g = grupos[idGrupo];
+        List<Confirmacion> salida = List.of();
+        synchronized (g) {
+            if (g.pendientes == 0) return salida; // Lo normal: no recorremos V·ventana huecos para nada.
+            for (int h = 0; h < g.iteracion.length; h++) {
+                if (!g.pendiente[h] || ahora - g.limite[h] < 0) continue;
+                if (salida.isEmpty()) salida = new ArrayList<>();
+                salida.add(soltar(g, h, idGrupo * V + h / ventana));
+            }
+        }
+        return salida;
+    }
+
+    int numGrupos() {
+        return grupos.length;
+    }
+
+    // El ACK_MAPA con lo que lleva apuntado el hueco h (y deja de estar pendiente). Con el monitor tomado.
+    private static Confirmacion soltar(Grupo g, int h, int idDestino) {
+        if (g.pendiente[h]) {
+            g.pendiente[h] = false;
+            g.pendientes--;
+        }
+        return new Confirmacion(idDestino, g.iteracion[h], g.bits[h].clone());
+    }
+
+    /**
+     * Estado por miembro del grupo e iteración en vuelo (índice = posición · ventana + iteración % ventana):
+     * qué iteración ocupa el hueco y quién la ha confirmado.
+     */
+    private static final class Grupo {
+        final int[] iteracion, cuenta;
+        final long[][] bits;
+        final boolean[] pendiente; // Hay confirmaciones apuntadas que aún no le hemos enviado.
+        final long[] limite;
+        int pendientes = 0;        // Cuántos huecos tienen 'pendiente' (para que el plazo no los recorra todos).
+
+        Grupo(int V, int ventana) {
+            iteracion = new int[V * ventana];
+            cuenta = new int[V * ventana];
+            bits = new long[V * ventana][(V + 63) / 64];
+            pendiente = new boolean[V * ventana];
+            limite = new long[V * ventana];
+        }
+    }
+}
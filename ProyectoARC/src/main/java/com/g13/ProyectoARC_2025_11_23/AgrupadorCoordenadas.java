@@ -0,0 +1,190 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CLASE: AgrupadorCoordenadas (Un datagrama por miembro e iteración, no V-1)
+ * * OBJETIVO:
+ * Con el reenvío clásico cada COMPARTIR_COORDENADAS sale hacia los V-1 vecinos en el momento:
+ * un grupo mueve V·(V-1) datagramas de coordenadas por iteración (2.450 con V=50). Con
+ * -Darc.agrupar=true el servidor junta las coordenadas del grupo para una misma iteración y
+ * manda a cada miembro UN solo COORDENADAS_AGRUPADAS con todas: V datagramas por iteración.
+ * * * CUÁNDO SE ENVÍA EL AGREGADO:
+ * - En cuanto han llegado las de los V miembros, o
+ * - al vencer el plazo (-Darc.agruparPlazoUs) desde la primera, con las que haya (parcial), o
+ * - si una iteración posterior necesita su hueco en el anillo (ver abajo), con las que haya.
+ * Las que lleguen tarde para una iteración ya enviada se reenvían sueltas, como siempre.
+ * * * ITERACIONES EN VUELO:
+ * En bucle abierto (arc.tasaHz en el Cliente) un grupo tiene varias iteraciones abiertas a la
+ * vez, así que cada grupo guarda un anillo de -Darc.agruparVentana rondas (índice = iteración %
+ * ventana), cada una con sus coordenadas y su plazo. Una iteración más vieja que las del anillo
+ * ya no se agrupa: sus coordenadas salen sueltas.
+ * * * ACKs:
+ * Cada miembro contesta un único ACK_AGRUPADO. Para saber a quién confirma, la ronda recuerda qué
+ * clientes iban en su agregado hasta que otra iteración reutiliza el hueco: con una ventana
+ * menor que las iteraciones en vuelo del cliente, los ACK_AGRUPADO más viejos se pierden.
+ * * Estado por grupo protegido por su propio monitor: los trabajadores de grupos distintos no
+ * compiten entre sí (y en modo reactores cada grupo lo atiende siempre el mismo hilo).
+ */
+final class AgrupadorCoordenadas {
+
+    private final int V;
+    private final int ventana;
+    private final long plazoNs;
+    private final Grupo[] grupos;
+
+    AgrupadorCoordenadas(int numGrupos, int V, int ventana, long plazoNs) {
+        this.V = V;
+        this.ventana = ventana;
+        this.plazoNs = plazoNs;
+        this.grupos = new Grupo[numGrupos];
+        for (int g = 0; g < numGrupos; g++) grupos[g] = new Grupo(V, ventana);
+    }
+
+    /**
+     * Apunta las coordenadas de un miembro (su COMPARTIR_COORDENADAS, ya decodificado).
+     * @return null si su iteración ya se envió o ya no está en el anillo (hay que reenviarlas
+     *         sueltas); si no, los paquetes que hay que mandar ya a todo el grupo (normalmente
+     *         ninguno, o el agregado completo).
+     */
+    List<ByteBuffer> anotar(int idGrupo, int idCliente, Mensaje coords, long ahora) {
+        int iteracion = coords.numIteracion;
+        Grupo g = grupos[idGrupo];
+        synchronized (g) {
+            Ronda r = g.rondas[Math.floorMod(iteracion, ventana)];
+            if (iteracion < r.iteracion || (iteracion == r.iteracion && r.enviada)) return null;
+            List<ByteBuffer> salida = List.of();
+            if (iteracion > r.iteracion) {
+                if (r.abierta()) salida = cerrar(g, r); // Necesitamos su hueco: va lo que hubiera.
+                r.empezar(iteracion, ahora + plazoNs);
+            }
+            int pos = Math.floorMod(idCliente, V);
+            if (r.coords[pos] != null) return salida; // Duplicado.
+            if (r.recibidos == 0) g.abiertas++;
+            r.coords[pos] = new Mensaje.Coordenada(idCliente, coords.delta, coords.x, coords.y, coords.z);
+            r.bytes += 4 + CodecMensaje.tamCoordenada(coords.delta, coords.x, coords.y, coords.z);
+            r.recibidos++;
+            if (r.recibidos == V) {
+                salida = concatenar(salida, cerrar(g, r));
+            }
+            return salida;
+        }
+    }
+
+    /** Agregados parciales de los grupos cuyo plazo ha vencido (lo llama el hilo del plazo). */
+    List<ByteBuffer> caducados(int idGrupo, long ahora) {
+        Grupo g = grupos[idGrupo];
+        synchronized (g) {
+            if (g.abiertas == 0) return List.of(); // Lo normal: no recorremos el anillo para nada.
+            List<ByteBuffer> salida = List.of();
+            for (Ronda r : g.rondas) {
+                if (r.abierta() && ahora - r.limite >= 0) salida = concatenar(salida, cerrar(g, r));
+            }
+            return salida;
+        }
+    }
+
+    /** Clientes cuyas coordenadas iban en el agregado de esa iteración (null si ya no lo recordamos). */
+    int[] incluidos(int idGrupo, int iteracion) {
+        Grupo g = grupos[idGrupo];
+        synchronized (g) {
+            Ronda r = g.rondas[Math.floorMod(iteracion, ventana)];
+            return (r.iteracion == iteracion) ? r.incluidos : null;
+        }
+    }
+
+    int numGrupos() {
+        return grupos.length;
+    }
+
+    // Construye el/los paquete(s) con lo recibido en la ronda y apunta quién iba. Con el monitor tomado.
+    private List<ByteBuffer> cerrar(Grupo g, Ronda r) {
+        r.enviada = true;
+        g.abiertas--;
+        int[] ids = new int[r.recibidos];
+        Mensaje.Coordenada[] agrupadas = new Mensaje.Coordenada[r.recibidos];
+        int n = 0;
+        for (int pos = 0; pos < V; pos++) {
+            if (r.coords[pos] == null) continue;
+            ids[n] = r.coords[pos].idCliente();
+            agrupadas[n++] = r.coords[pos];
+        }
+
+        List<ByteBuffer> salida = new ArrayList<>(1);
+        if (r.bytes <= CodecMensaje.MAX_PAYLOAD) {
+            Mensaje agregado = new Mensaje(Mensaje.messageType.COORDENADAS_AGRUPADAS, Mensaje.SIN_DESTINO, r.iteracion);
+            agregado.agrupadas = agrupadas;
+            salida.add(codificar(agregado));
+            r.incluidos = ids;
+        } else {
+            // No cabe en un datagrama (V muy grande): cada una sale suelta, como en el modo clásico.
+            for (Mensaje.Coordenada c : agrupadas) {
+                Mensaje suelta = new Mensaje(Mensaje.messageType.COMPARTIR_COORDENADAS, c.idCliente(), r.iteracion);
+                suelta.delta = c.delta();
+                suelta.x = c.x();
+                suelta.y = c.y();
+                suelta.z = c.z();
+                salida.add(codificar(suelta));
+            }
+        }
+        return salida;
+    }
+
+    // Buffer propio por paquete: se envía fuera del monitor y puede que desde otro hilo.
+    private static ByteBuffer codificar(Mensaje msj) {
+        ByteBuffer bufer = ByteBuffer.allocate(CodecMensaje.TAM_MAXIMO);
+        CodecMensaje.codificar(msj, bufer);
+        bufer.flip();
+        return bufer;
+    }
+
+    private static List<ByteBuffer> concatenar(List<ByteBuffer> a, List<ByteBuffer> b) {
+        if (a.isEmpty()) return b;
+        List<ByteBuffer> todo = new ArrayList<>(a);
+        todo.addAll(b);
+        return todo;
+    }
+
+    /** El anillo de rondas de un grupo y cuántas tienen coordenadas sin enviar. */
+    private static final class Grupo {
+        final Ronda[] rondas;
+        int abiertas = 0;
+
+        Grupo(int V, int ventana) {
+            rondas = new Ronda[ventana];
+            for (int i = 0; i < ventana; i++) rondas[i] = new Ronda(V);
+        }
+    }
+
+    /** Una iteración de un grupo y lo que llevamos recibido (índice = posición en el grupo). */
+    private static final class Ronda {
+        int iteracion = 0;
+        boolean enviada = false;
+        int recibidos = 0;
+        int bytes = 0;   // Lo que ocuparía el payload del agregado con lo recibido.
+        long limite;
+        int[] incluidos; // Quién iba en el agregado enviado (para resolver su ACK_AGRUPADO).
+        final Mensaje.Coordenada[] coords;
+
+        Ronda(int V) {
+            coords = new Mensaje.Coordenada[V];
+        }
+
+        boolean abierta() {
+            return recibidos > 0 && !enviada;
+        }
+
+        void empezar(int nuevaIteracion, long nuevoLimite) {
+            iteracion = nuevaIteracion;
+            enviada = false;
+            recibidos = 0;
+            bytes = 0;
+            limite = nuevoLimite;
+            incluidos = null;
+            Arrays.fill(coords, null);
+        }
+    }
+}
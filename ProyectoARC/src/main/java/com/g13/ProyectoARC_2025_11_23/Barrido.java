@@ -0,0 +1,227 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CLASE PRINCIPAL: Barrido (Batería de simulaciones sin intervención)
+ * * OBJETIVO:
+ * Recorrer una rejilla de parámetros N × V × S (× intercambio), repitiendo cada combinación varias veces, y
+ * dejar en data/BarridoResultados.csv la media, la desviación típica y el intervalo de confianza
+ * al 95% (t de Student) de la latencia media, p50, p99 y throughput.
+ * * Ejemplo:
+ * <pre>
+ *   java ... Barrido --n=100,200,400 --v=5,10 --s=10 --repeticiones=5 --calentamiento=1 --motor=virtual
+ * </pre>
+ * Los valores de n/v/s son listas separadas por comas o rangos "inicio:fin:paso" (100:500:100).
+ * Las combinaciones con N no divisible entre V se saltan. Con --intercambio=servidor,directo cada
+ * combinación se mide en los dos modos, una fila de cada, para comparar reenvío e intercambio directo.
+ * * Cada ejecución arranca un Servidor NUEVO como proceso hijo (el servidor guarda su estado en
+ * campos estáticos y termina al acabar la simulación), y los clientes corren en este mismo
+ * proceso con Cliente.ejecutar. El resto de opciones (--modo, --motor, --fiable...) se aplican
+ * a los dos lados. Las repeticiones de calentamiento no se miden ni se escriben en los CSV.
+ */
+public class Barrido {
+
+    // Opciones propias del barrido: no se le pasan al servidor.
+    private static final Set<String> PROPIAS = Set.of("arc.n", "arc.v", "arc.s", "arc.repeticiones",
+            "arc.calentamiento", "arc.ip", "arc.timeoutServidorS", "arc.logServidor", "arc.intercambio");
+
+    // t de Student bilateral al 95% para 1..30 grados de libertad; a partir de ahí, la normal.
+    private static final double[] T_STUDENT_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+    public static void main(String[] args) throws Exception {
+        Configuracion.cargar(args);
+        int[] valoresN = rejilla(Configuracion.texto("arc.n", "100"));
+        int[] valoresV = rejilla(Configuracion.texto("arc.v", "5"));
+        int[] valoresS = rejilla(Configuracion.texto("arc.s", "10"));
+        String[] intercambios = Configuracion.texto("arc.intercambio", "servidor").split(",");
+        int repeticiones = Math.max(1, Configuracion.entero("arc.repeticiones", 5));
+        int calentamiento = Math.max(0, Configuracion.entero("arc.calentamiento", 1));
+        int puerto = Configuracion.entero("arc.puerto", 10578);
+        int timeoutServidorS = Configuracion.entero("arc.timeoutServidorS", 600);
+        String logServidor = Configuracion.texto("arc.logServidor", null); // Fichero donde volcar la salida del servidor.
+
+        CSVWriter csvWriter = new CSVWriter();
+        int combinacion = 0;
+        try {
+            for (int N : valoresN) {
+                for (int V : valoresV) {
+                    if (V <= 0 || N % V != 0) {
+                        System.out.println("[Barrido] Se salta N=" + N + ", V=" + V + " (N no es múltiplo de V).");
+                        continue;
+                    }
+                    for (int S : valoresS) {
+                        for (String intercambioBruto : intercambios) {
+                            String intercambio = intercambioBruto.trim();
+                            combinacion++;
+                            System.out.printf("%n[Barrido] === Combinación %d: N=%d V=%d S=%d intercambio=%s (%d calentamiento + %d medidas) ===%n",
+                                    combinacion, N, V, S, intercambio, calentamiento, repeticiones);
+
+                            List<ResultadoSimulacion> medidas = new ArrayList<>();
+                            for (int r = 0; r < calentamiento + repeticiones; r++) {
+                                boolean medir = r >= calentamiento;
+                                ResultadoSimulacion res = ejecutarUna(N, V, S, intercambio, puerto, timeoutServidorS, logServidor, csvWriter);
+                                if (res == null) {
+                                    System.out.println("[Barrido] Ejecución fallida (sin resultados).");
+                                    continue;
+                                }
+                                System.out.printf("[Barrido] %s %d: media=%.3f ms p50=%.3f ms p99=%.3f ms throughput=%.0f bits/s %s%n",
+                                        medir ? "Medida" : "Calentamiento", medir ? r - calentamiento + 1 : r + 1,
+                                        res.tiempoMedioGlobalMs, res.percentilMs(50), res.percentilMs(99), res.throughput,
+                                        res.exitoTotal() ? "" : "(CON ERRORES: " + res.fallidos + " fallidos)");
+                                if (medir) {
+                                    res.escribirCSV(csvWriter);
+                                    medidas.add(res);
+                                }
+                            }
+                            resumir(csvWriter, N, V, S, intercambio, medidas);
+                        }
+                    }
+                }
+            }
+        } finally {
+            csvWriter.cerrar();
+        }
+    }
+
+    /** Una ejecución completa: servidor hijo + clientes en este proceso. */
+    private static ResultadoSimulacion ejecutarUna(int N, int V, int S, String intercambio, int puerto, int timeoutServidorS,
+                                                   String logServidor, CSVWriter csvWriter) throws IOException, InterruptedException {
+        List<String> comando = new ArrayList<>();
+        comando.add(ProcessHandle.current().info().command().orElse("java"));
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(Servidor.class.getName());
+        comando.add("--n=" + N);
+        comando.add("--v=" + V);
+        comando.add("--s=" + S);
+        comando.add("--intercambio=" + intercambio); // Lo decide el servidor y se lo dice a los clientes al registrarlos.
+        for (Map.Entry<String, String> e : Configuracion.cargadas().entrySet()) {
+            if (!PROPIAS.contains(e.getKey())) comando.add("--" + e.getKey() + "=" + e.getValue());
+        }
+
+        Process servidor = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        CountDownLatch listo = new CountDownLatch(1);
+        Thread lector = Thread.ofPlatform().daemon().name("Barrido-Servidor").start(() -> leerSalida(servidor, listo, logServidor));
+        try {
+            if (!listo.await(30, TimeUnit.SECONDS) || !servidor.isAlive()) {
+                System.err.println("[Barrido] El servidor no llegó a arrancar.");
+                return null;
+            }
+            ResultadoSimulacion res = Cliente.ejecutar("127.0.0.1", puerto, N, V, S, csvWriter);
+            if (!servidor.waitFor(timeoutServidorS, TimeUnit.SECONDS)) {
+                System.err.println("[Barrido] El servidor no terminó en " + timeoutServidorS + " s: se cierra a la fuerza.");
+            }
+            return res;
+        } finally {
+            // Siempre lo matamos y esperamos: la siguiente ejecución necesita el puerto libre.
+            servidor.destroyForcibly();
+            servidor.waitFor();
+            lector.join(1000);
+        }
+    }
+
+    // Lee la salida del servidor (si no, se llena la tubería y se bloquea) y avisa cuando ya escucha.
+    private static void leerSalida(Process servidor, CountDownLatch listo, String logServidor) {
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(servidor.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter log = (logServidor != null) ? new PrintWriter(new FileWriter(new File(logServidor), true)) : null) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (log != null) log.println(linea);
+                if (linea.startsWith("Esperando a ")) listo.countDown();
+            }
+        } catch (IOException e) {
+            // El proceso se ha cerrado: nada más que leer.
+        } finally {
+            listo.countDown(); // Si murió antes de escuchar, que main no espere en vano.
+        }
+    }
+
+    // Media, desviación típica e IC 95% de cada métrica, una fila por combinación.
+    private static void resumir(CSVWriter csvWriter, int N, int V, int S, String intercambio, List<ResultadoSimulacion> medidas) {
+        int n = medidas.size();
+        if (n == 0) return;
+        double[] media = new double[n], p50 = new double[n], p99 = new double[n], throughput = new double[n];
+        int errores = 0;
+        for (int i = 0; i < n; i++) {
+            ResultadoSimulacion r = medidas.get(i);
+            media[i] = r.tiempoMedioGlobalMs;
+            p50[i] = r.percentilMs(50);
+            p99[i] = r.percentilMs(99);
+            throughput[i] = r.throughput;
+            if (!r.exitoTotal()) errores++;
+        }
+        String fila = N + ";" + V + ";" + S + ";" + intercambio + ";" + n + ";" + errores + ";"
+                + estadistica(media) + ";" + estadistica(p50) + ";" + estadistica(p99) + ";" + estadistica(throughput);
+        csvWriter.writeBarrido(fila);
+        System.out.printf("[Barrido] Resumen N=%d V=%d S=%d %s: media=%.3f ± %.3f ms, p99=%.3f ± %.3f ms (IC 95%%, %d medidas)%n",
+                N, V, S, intercambio, mediaDe(media), semiIntervalo(media), mediaDe(p99), semiIntervalo(p99), n);
+    }
+
+    // "media;desviación;IC inferior;IC superior"
+    private static String estadistica(double[] x) {
+        double m = mediaDe(x);
+        double h = semiIntervalo(x);
+        return m + ";" + desviacion(x) + ";" + (m - h) + ";" + (m + h);
+    }
+
+    private static double mediaDe(double[] x) {
+        double suma = 0;
+        for (double v : x) suma += v;
+        return suma / x.length;
+    }
+
+    // Desviación típica muestral (n-1). Con una sola medida no hay dispersión que estimar.
+    private static double desviacion(double[] x) {
+        if (x.length < 2) return 0.0;
+        double m = mediaDe(x), suma = 0;
+        for (double v : x) suma += (v - m) * (v - m);
+        return Math.sqrt(suma / (x.length - 1));
+    }
+
+    private static double semiIntervalo(double[] x) {
+        if (x.length < 2) return 0.0;
+        int gl = x.length - 1;
+        double t = (gl <= T_STUDENT_95.length) ? T_STUDENT_95[gl - 1] : 1.960;
+        return t * desviacion(x) / Math.sqrt(x.length);
+    }
+
+    /** "100,200,400" o "100:500:100" (ambos extremos incluidos). */
+    static int[] rejilla(String texto) {
+        List<Integer> valores = new ArrayList<>();
+        for (String parte : texto.split(",")) {
+            parte = parte.trim();
+            if (parte.isEmpty()) continue;
+            String[] r = parte.split(":");
+            try {
+                if (r.length == 1) {
+                    valores.add(Integer.parseInt(r[0].trim()));
+                } else if (r.length == 3) {
+                    int inicio = Integer.parseInt(r[0].trim()), fin = Integer.parseInt(r[1].trim()), paso = Integer.parseInt(r[2].trim());
+                    if (paso <= 0) throw new IllegalArgumentException("El paso del rango debe ser positivo: " + parte);
+                    for (int v = inicio; v <= fin; v += paso) valores.add(v);
+                } else {
+                    throw new IllegalArgumentException("Rango no válido (se espera inicio:fin:paso): " + parte);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valor no numérico en la rejilla: " + parte);
+            }
+        }
+        return valores.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -1,9 +1,10 @@
 package com.g13.ProyectoARC_2025_11_23;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-
+/**
+ * Escribe los CSV de resultados en data/. Las filas se encolan en un SumideroCSV (hilo escritor
+ * en segundo plano), así que nadie se bloquea escribiendo a disco. Hay que llamar a cerrar()
+ * al final para que todo quede escrito.
+ */
 public class CSVWriter {
 
     private static final String DIR = "data";
@@ -11,51 +12,82 @@ public class CSVWriter {
     private static final String LAT_CLIENTES = DIR + "/LatenciaporClientes.csv";
     private static final String LAT_GRUPOS   = DIR + "/LatenciaporGVecinos.csv";
     private static final String THROUGHPUT   = DIR + "/ThroughPutPorClientes.csv";
+    private static final String PERC_CLIENTES = DIR + "/PercentilesPorClientes.csv";
+    private static final String PERC_GRUPOS   = DIR + "/PercentilesPorGrupo.csv";
+    private static final String TRAFICO       = DIR + "/TraficoPorClientes.csv";
+    private static final String BARRIDO       = DIR + "/BarridoResultados.csv";
+
+    private static final String CABECERA_PERCENTILES = "P50Ms;P90Ms;P99Ms;P999Ms;MaxMs";
+
+    private static final int CAPACIDAD_SUMIDERO = 1 << 16; // Muestras en vuelo antes de descartar.
+
+    private final SumideroCSV sumidero = new SumideroCSV(CAPACIDAD_SUMIDERO);
+    private final SumideroCSV.Archivo latClientes, latGrupos, throughput, percClientes, percGrupos, trafico;
+    private SumideroCSV.Archivo barrido; // Solo se crea si se usa (lo escribe Barrido).
 
     public CSVWriter() {
-        crearDirectorio();
-        initFile(LAT_CLIENTES, "NumeroClientes;LatenciaMediaMs");
-        initFile(LAT_GRUPOS, "NumeroGrupos;LatenciaMediaMs");
-        initFile(THROUGHPUT, "NumeroClientes;BitsPorSegundo");
+        // Los resúmenes son pocas filas: no rotan.
+        latClientes = sumidero.abrir(LAT_CLIENTES, "NumeroClientes;LatenciaMediaMs", Long.MAX_VALUE);
+        latGrupos = sumidero.abrir(LAT_GRUPOS, "NumeroGrupos;LatenciaMediaMs", Long.MAX_VALUE);
+        throughput = sumidero.abrir(THROUGHPUT, "NumeroClientes;BitsPorSegundo", Long.MAX_VALUE);
+        percClientes = sumidero.abrir(PERC_CLIENTES, "NumeroClientes;" + CABECERA_PERCENTILES, Long.MAX_VALUE);
+        percGrupos = sumidero.abrir(PERC_GRUPOS, "NumeroClientes;IdGrupo;" + CABECERA_PERCENTILES, Long.MAX_VALUE);
+        trafico = sumidero.abrir(TRAFICO, "NumeroClientes;DatagramasEnviados;BytesEnviados;DatagramasRecibidos;BytesRecibidos;BitsPorSegundo", Long.MAX_VALUE);
     }
 
-    private void crearDirectorio() {
-        File dir = new File(DIR);
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
+    /** Salida por iteración (-Darc.detalle=true), sobre el mismo hilo escritor. */
+    DetalleIteraciones detalleIteraciones(int numClientes, int V, int S, long maxBytes) {
+        return new DetalleIteraciones(sumidero, DIR, numClientes, V, S, maxBytes);
     }
 
-    private void initFile(String path, String header) {
-        File file = new File(path);
-        if (!file.exists()) {
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.append(header).append("\n");
-            } catch (IOException e) {
-                System.err.println("Error creando CSV " + path);
-            }
-        }
+    /* ================== ESCRITURAS ================== */
+
+    public void writeLatenciaPorClientes(int numClientes, double latenciaMediaMs) {
+        sumidero.linea(latClientes, numClientes + ";" + latenciaMediaMs);
     }
 
-    /* ================== ESCRITURAS ================== */
+    public void writeLatenciaPorGrupos(int numGrupos, double latenciaMediaMs) {
+        sumidero.linea(latGrupos, numGrupos + ";" + latenciaMediaMs);
+    }
 
-    public synchronized void writeLatenciaPorClientes(int numClientes, double latenciaMediaMs) {
-        writeLine(LAT_CLIENTES, numClientes + ";" + latenciaMediaMs);
+    public void writeThroughput(int numClientes, double bitsPorSegundo) {
+        sumidero.linea(throughput, numClientes + ";" + bitsPorSegundo);
     }
 
-    public synchronized void writeLatenciaPorGrupos(int numGrupos, double latenciaMediaMs) {
-        writeLine(LAT_GRUPOS, numGrupos + ";" + latenciaMediaMs);
+    public void writeTrafico(int numClientes, ContadoresTrafico t, double bitsPorSegundo) {
+        sumidero.linea(trafico, numClientes + ";" + t.datagramasEnviados() + ";" + t.bytesEnviados() + ";"
+                + t.datagramasRecibidos() + ";" + t.bytesRecibidos() + ";" + bitsPorSegundo);
     }
 
-    public synchronized void writeThroughput(int numClientes, double bitsPorSegundo) {
-        writeLine(THROUGHPUT, numClientes + ";" + bitsPorSegundo);
+    public void writePercentilesPorClientes(int numClientes, HistogramaLatencia h) {
+        sumidero.linea(percClientes, numClientes + ";" + percentiles(h));
     }
 
-    private void writeLine(String path, String line) {
-        try (FileWriter writer = new FileWriter(path, true)) {
-            writer.append(line).append("\n");
-        } catch (IOException e) {
-            System.err.println("Error escribiendo en CSV " + path);
+    public void writePercentilesPorGrupo(int numClientes, int idGrupo, HistogramaLatencia h) {
+        sumidero.linea(percGrupos, numClientes + ";" + idGrupo + ";" + percentiles(h));
+    }
+
+    /** Resumen de una combinación del barrido: "N;V;S;Intercambio;Repeticiones;ConErrores" + media;desv;IC de cada métrica. */
+    void writeBarrido(String fila) {
+        if (barrido == null) {
+            StringBuilder cabecera = new StringBuilder("N;V;S;Intercambio;Repeticiones;RepeticionesConErrores");
+            for (String m : new String[] {"LatenciaMediaMs", "P50Ms", "P99Ms", "BitsPorSegundo"}) {
+                cabecera.append(';').append(m).append("Media;").append(m).append("Desv;")
+                        .append(m).append("IC95Inf;").append(m).append("IC95Sup");
+            }
+            barrido = sumidero.abrir(BARRIDO, cabecera.toString(), Long.MAX_VALUE);
         }
+        sumidero.linea(barrido, fila);
+    }
+
+    /** Escribe todo lo pendiente y cierra los ficheros. */
+    public void cerrar() {
+        sumidero.close();
+    }
+
+    // p50;p90;p99;p99.9;máx en ms (con decimales: el histograma guarda ns).
+    private static String percentiles(HistogramaLatencia h) {
+        return h.percentil(50) / 1e6 + ";" + h.percentil(90) / 1e6 + ";" + h.percentil(99) / 1e6 + ";"
+                + h.percentil(99.9) / 1e6 + ";" + h.maximo() / 1e6;
     }
 }
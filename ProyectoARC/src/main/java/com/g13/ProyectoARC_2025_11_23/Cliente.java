@@ -1,9 +1,9 @@
 package com.g13.ProyectoARC_2025_11_23;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.List;
 
 /**
  * CLASE PRINCIPAL: Cliente (El Lanzador)
@@ -12,123 +12,184 @@ public class Cliente {
     
     public static void main(String[] args) {
         // 1. CONFIGURACIÓN INICIAL
-        Scanner escaner = new Scanner(System.in);
+        // Lo que venga por línea de comandos / fichero (--ip=... --n=...) no se pregunta.
+        Configuracion.cargar(args);
         System.out.println("--- CONFIGURACIÓN DEL CLIENTE ---");
         
-        System.out.print("Introduce la IP (ej. 127.0.0.1): ");
-        String ipServidor = escaner.nextLine();
-        
-        System.out.print("Introduce el puerto (ej. 10578): ");
-        int puertoServidor = escaner.nextInt();
-        
-        System.out.print("Introduce N (Total Clientes): ");
-        int numeroClientes = escaner.nextInt();
-        
-        System.out.print("Introduce V (Vecinos): ");
-        int numeroVecinos = escaner.nextInt();
-        
-        System.out.print("Introduce S (Iteraciones): ");
-        int numeroIteraciones = escaner.nextInt();
-        
-        escaner.close(); 
+        String ipServidor = Configuracion.textoOPreguntar("arc.ip", "Introduce la IP (ej. 127.0.0.1): ");
+        int puertoServidor = Configuracion.enteroOPreguntar("arc.puerto", "Introduce el puerto (ej. 10578): ");
+        int numeroClientes = Configuracion.enteroOPreguntar("arc.n", "Introduce N (Total Clientes): ");
+        int numeroVecinos = Configuracion.enteroOPreguntar("arc.v", "Introduce V (Vecinos): ");
+        int numeroIteraciones = Configuracion.enteroOPreguntar("arc.s", "Introduce S (Iteraciones): ");
+
         // --- CSV ---
         CSVWriter csvWriter = new CSVWriter();
-        System.out.println("\n=== Iniciando " + numeroClientes + " Clientes ===");
-        
-        // 2. CREACIÓN DE CLIENTES (INSTANCIACIÓN)
-        ArrayList<Persona> listaClientes = new ArrayList<>();
-        long tiempoInicioSimulacion = System.nanoTime();
-
-        for (int i = 0; i < numeroClientes; i++) {
-            listaClientes.add(new Persona(ipServidor, puertoServidor, numeroVecinos, numeroIteraciones));
+        if (Configuracion.entero("arc.generadores", 1) > 1) {
+            // Varios procesos Cliente se reparten los N: el líder saca el reporte conjunto.
+            GeneradorDistribuido.ejecutar(ipServidor, puertoServidor,
+                    numeroClientes, numeroVecinos, numeroIteraciones, csvWriter);
+            csvWriter.cerrar();
+            return;
         }
-        
-        // 3. EJECUCIÓN DE CLIENTES (START)
-        for (Persona cliente : listaClientes) {
-            cliente.start();
-            try { Thread.sleep(8); } catch (InterruptedException e) {}
+        ResultadoSimulacion resultado = ejecutar(ipServidor, puertoServidor,
+                numeroClientes, numeroVecinos, numeroIteraciones, csvWriter);
+        if (resultado != null) {
+            // VOLCAR A CSV E IMPRESIÓN EN CONSOLA
+            resultado.escribirCSV(csvWriter);
+            resultado.imprimir();
         }
+        csvWriter.cerrar(); // Que el escritor en segundo plano termine de volcar los CSV.
+    }
+
+    /**
+     * Lanza N clientes contra el servidor, espera a que terminen y devuelve las estadísticas.
+     * No imprime el reporte ni escribe los resúmenes: eso lo decide quien llama (main o Barrido).
+     * El csvWriter solo se usa para el detalle por iteración (-Darc.detalle=true).
+     * Devuelve null si no llegó a arrancar ningún cliente (fallo del registro en lote u opciones incompatibles).
+     */
+    static ResultadoSimulacion ejecutar(String ipServidor, int puertoServidor, int numeroClientes,
+                                        int numeroVecinos, int numeroIteraciones, CSVWriter csvWriter) {
+        System.out.println("\n=== Iniciando " + numeroClientes + " Clientes ===");
         
-        System.out.println(">>> Clientes iniciados. Esperando finalización...");
-        
-        // 4. SINCRONIZACIÓN (JOIN)
-        for (Persona cliente : listaClientes) {
-            try { cliente.join(); } catch (InterruptedException e) {}
+        // 2. CREACIÓN Y EJECUCIÓN DE CLIENTES
+        // Tres motores posibles (-Darc.motor=...):
+        //  - hilos        (por defecto): una Persona = un hilo del sistema + su hilo de escucha.
+        //  - virtual      : la misma Persona, pero sobre hilos virtuales (miles sin agotar el SO).
+        //  - multiplexado : MultiplexorPersonas, muchos clientes sobre pocos sockets y un solo hilo.
+        // Los tres devuelven las mismas estadísticas, así que el reporte de abajo no cambia.
+        String motor = Configuracion.texto("arc.motor", "hilos");
+        ContadoresTrafico trafico = new ContadoresTrafico(); // Compartido por todas las Personas.
+        ProgresoClientes progreso = new ProgresoClientes(); // Idem, para las métricas en vivo.
+        Metricas metricas = publicarMetricas(trafico, progreso);
+        try {
+            return lanzar(ipServidor, puertoServidor, numeroClientes, numeroVecinos, numeroIteraciones,
+                    csvWriter, motor, trafico, progreso);
+        } finally {
+            metricas.cerrar(); // Barrido vuelve a llamar a ejecutar en el mismo proceso.
         }
-        long tiempoFinSimulacion = System.nanoTime();
-        double tiempoTotalSegundos = (tiempoFinSimulacion - tiempoInicioSimulacion) / 1_000_000_000.0;
-        
-        // 5. REPORTE FINAL DE LA SIMULACIÓN
-        int exitosos = 0;
-        int fallidos = 0;
-        double sumaTiempos = 0;
-        int totalTimeouts = 0;
-        long mensajesTotales = 0;
-        ArrayList<Integer> idsFallidos = new ArrayList<>();
+    }
 
-        // Para latencia por grupo
-        Map<Integer, Double> sumaGrupo = new HashMap<>();
-        Map<Integer, Integer> countGrupo = new HashMap<>();
+    /**
+     * Métricas en vivo del Cliente (JMX y, con -Darc.metricasPuerto=P, texto en el puerto P+1):
+     * tráfico por tipo, clientes activos, iteraciones en vuelo, timeouts y percentiles de latencia
+     * del último intervalo.
+     */
+    private static Metricas publicarMetricas(ContadoresTrafico trafico, ProgresoClientes progreso) {
+        int puerto = Configuracion.entero("arc.metricasPuerto", 0);
+        return new Metricas("cliente")
+                .contadorPorTipo("datagramas_enviados", "Datagramas UDP enviados", trafico::datagramasEnviados)
+                .contadorPorTipo("bytes_enviados", "Bytes UDP enviados", trafico::bytesEnviados)
+                .contadorPorTipo("datagramas_recibidos", "Datagramas UDP recibidos", trafico::datagramasRecibidos)
+                .contadorPorTipo("bytes_recibidos", "Bytes UDP recibidos", trafico::bytesRecibidos)
+                .medida("clientes_activos", "Clientes arrancados que aún no han recibido GROUP_DONE", progreso::activos)
+                .contador("clientes_terminados", "Clientes que han terminado", progreso::terminados)
+                .medida("iteraciones_en_curso", "Iteraciones esperando ACKs ahora mismo", progreso::iteracionesEnCurso)
+                .contador("iteraciones", "Iteraciones completadas (con o sin timeout)", progreso::iteraciones)
+                .contador("timeouts", "Iteraciones que acabaron por timeout", progreso::timeouts)
+                .contador("retransmisiones", "Coordenadas reenviadas por la capa fiable", progreso::retransmisiones)
+                .percentiles("latencia_iteracion", "Latencia de iteración del último intervalo en ms", progreso.latencia())
+                .arrancar(puerto > 0 ? puerto + 1 : 0);
+    }
 
-        for (Persona p : listaClientes) {
-            if (p.isFinalizadoConExito()) {
-                exitosos++;
-                sumaTiempos += p.getTiempoMedioFinal();
+    private static ResultadoSimulacion lanzar(String ipServidor, int puertoServidor, int numeroClientes,
+                                              int numeroVecinos, int numeroIteraciones, CSVWriter csvWriter,
+                                              String motor, ContadoresTrafico trafico, ProgresoClientes progreso) {
+        List<EstadisticasPersona> listaClientes = new ArrayList<>();
 
-                // Latencia por grupo
-                int g = p.getIdGrupo();
-                sumaGrupo.put(g, sumaGrupo.getOrDefault(g, 0.0) + p.getTiempoMedioFinal());
-                countGrupo.put(g, countGrupo.getOrDefault(g, 0) + 1);
-            } else {
-                fallidos++;
-                idsFallidos.add(p.getIdCliente());
-            }
-
-            totalTimeouts += p.getCantidadTimeouts();
-            mensajesTotales += p.getRespuestasCorrectas();
+        // Detalle por iteración (-Darc.detalle=true): una fila por iteración y cliente, escrita en
+        // segundo plano. Los ficheros rotan al pasar de -Darc.detalleMaxMB.
+        DetalleIteraciones detalle = null;
+        if (Boolean.parseBoolean(Configuracion.texto("arc.detalle", "false"))) {
+            long maxBytes = Configuracion.entero("arc.detalleMaxMB", 64) * 1024L * 1024L;
+            detalle = csvWriter.detalleIteraciones(numeroClientes, numeroVecinos, numeroIteraciones, maxBytes);
         }
+        long tiempoInicioSimulacion = System.nanoTime();
 
-        // Cálculo de métricas
-        double tiempoMedioGlobal = (exitosos > 0) ? (sumaTiempos / exitosos) : 0.0;
-        double porcentajeExito = (numeroClientes > 0) ? ((double) exitosos / numeroClientes) * 100.0 : 0.0;
+        if (motor.equalsIgnoreCase("multiplexado")) {
+            if (Double.parseDouble(Configuracion.texto("arc.tasaHz", "0")) > 0) {
+                // La máquina de estados del multiplexor lleva una sola iteración en vuelo por cliente.
+                System.err.println("[Cliente] El bucle abierto (arc.tasaHz) solo funciona con los motores hilos o virtual.");
+                return null;
+            }
+            if (Configuracion.texto("arc.transporte", "udp").equalsIgnoreCase("memoria")) {
+                // El multiplexor espera en un Selector: necesita sockets de verdad.
+                System.err.println("[Cliente] El motor multiplexado solo funciona con arc.transporte=udp (usa hilos o virtual).");
+                return null;
+            }
+            int numCanales = Configuracion.entero("arc.canales", 4);
+            MultiplexorPersonas multiplexor = new MultiplexorPersonas(ipServidor, puertoServidor,
+                    numeroClientes, numeroVecinos, numeroIteraciones, numCanales);
+            multiplexor.setDetalle(detalle);
+            multiplexor.setTrafico(trafico);
+            multiplexor.setProgreso(progreso);
+            try {
+                multiplexor.ejecutar();
+            } catch (IOException e) {
+                System.err.println("[Multiplexor] Error Fatal: " + e.getMessage());
+            }
+            listaClientes.addAll(multiplexor.getPersonas());
+        } else {
+            boolean virtuales = motor.equalsIgnoreCase("virtual");
+            ArrayList<Persona> personas = new ArrayList<>();
+            for (int i = 0; i < numeroClientes; i++) {
+                Persona persona = new Persona(ipServidor, puertoServidor, numeroVecinos, numeroIteraciones);
+                if (virtuales) persona.setFabricaHilos(Thread.ofVirtual().factory());
+                persona.setTrafico(trafico);
+                persona.setDetalle(detalle);
+                persona.setProgreso(progreso);
+                personas.add(persona);
+            }
 
-        // Latencia por grupo
-        Map<Integer, Double> latenciaMediaGrupo = new HashMap<>();
-        for (Integer g : sumaGrupo.keySet()) {
-            latenciaMediaGrupo.put(g, sumaGrupo.get(g) / countGrupo.get(g));
+            // Registro en lote (-Darc.registroLote=true): abrimos todos los canales UDP aquí y los
+            // registramos con una sola conexión TCP, en vez de un handshake por Persona.
+            if (Boolean.parseBoolean(Configuracion.texto("arc.registroLote", "false"))) {
+                try {
+                    registrarEnLote(ipServidor, puertoServidor, personas);
+                } catch (IOException e) {
+                    System.err.println("[Cliente] Error en el registro en lote: " + e.getMessage());
+                    return null;
+                }
+            }
+            
+            // 3. EJECUCIÓN DE CLIENTES (START)
+            ArrayList<Thread> hilos = new ArrayList<>();
+            for (Persona cliente : personas) {
+                // Con hilos virtuales, la Persona se ejecuta como tarea (su run()) dentro de un hilo virtual.
+                hilos.add(virtuales ? Thread.ofVirtual().start(cliente) : cliente);
+                if (!virtuales) cliente.start();
+            }
+            
+            System.out.println(">>> Clientes iniciados. Esperando finalización...");
+            
+            // 4. SINCRONIZACIÓN (JOIN)
+            for (Thread hilo : hilos) {
+                try { hilo.join(); } catch (InterruptedException e) {}
+            }
+            listaClientes.addAll(personas);
         }
+        long tiempoFinSimulacion = System.nanoTime();
 
-        // Throughput
-        final int TAM_MENSAJE_BITS = 1024 * 8; // Ajustar según tamaño real de mensajes
-        double throughput = (mensajesTotales * TAM_MENSAJE_BITS) / tiempoTotalSegundos;
-
-        // VOLCAR A CSV
-        csvWriter.writeLatenciaPorClientes(numeroClientes, tiempoMedioGlobal);
+        // 5. ESTADÍSTICAS DE LA SIMULACIÓN
+        return new ResultadoSimulacion(numeroClientes, numeroVecinos, numeroIteraciones, listaClientes, trafico,
+                tiempoInicioSimulacion, tiempoFinSimulacion, (detalle != null) ? detalle.descartadas() : 0);
+    }
 
-        if (numeroClientes == 100) {
-            int numeroGrupos = numeroClientes / numeroVecinos;
-            csvWriter.writeLatenciaPorGrupos(numeroGrupos, tiempoMedioGlobal);
+    /**
+     * Abre el canal UDP de cada Persona y los registra todos con una sola conexión TCP.
+     * Cada Persona recibe su canal y su asignación antes de arrancar.
+     */
+    private static void registrarEnLote(String ipServidor, int puertoServidor, List<Persona> personas) throws IOException {
+        Transporte[] canales = new Transporte[personas.size()];
+        int[] puertos = new int[canales.length];
+        for (int i = 0; i < canales.length; i++) {
+            canales[i] = Persona.abrirCanalUDP();
+            puertos[i] = canales[i].direccionLocal().getPort();
         }
-
-        csvWriter.writeThroughput(numeroClientes, throughput);
-
-        // IMPRESIÓN EN CONSOLA
-        System.out.println("\n==================================================");
-        System.out.println("       REPORTE FINAL DE LA SIMULACIÓN");
-        System.out.println("==================================================");
-        System.out.printf("Clientes Totales:       %d\n", numeroClientes);
-        System.out.printf("Clientes Exitosos:      %d (%.2f%%)\n", exitosos, porcentajeExito);
-        System.out.printf("Clientes Fallidos:      %d\n", fallidos);
-        if (fallidos > 0) {
-            System.out.println(" -> IDs Fallidos: " + idsFallidos);
+        List<ProtocoloRegistro.Asignacion> asignaciones =
+                ProtocoloRegistro.registrarLote(InetAddress.getByName(ipServidor), puertoServidor, puertos);
+        for (int i = 0; i < canales.length; i++) {
+            personas.get(i).asignarRegistro(canales[i], asignaciones.get(i));
         }
-        System.out.println("--------------------------------------------------");
-        System.out.printf("Tiempo Medio Global:    %.4f ms\n", tiempoMedioGlobal);
-        System.out.printf("Total Timeouts (UDP):   %d\n", totalTimeouts);
-        System.out.printf("Throughput:             %.2f bits/s\n", throughput);
-        System.out.println("==================================================");
-        String estado = (exitosos == numeroClientes) ? "ÉXITO TOTAL" : "CON ERRORES";
-        System.out.println(" ESTADO: " + estado);
-        System.out.println("==================================================");
+        System.out.println("[Cliente] " + canales.length + " clientes registrados en lote.");
     }
 }
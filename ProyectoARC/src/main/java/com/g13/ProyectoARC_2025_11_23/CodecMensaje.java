@@ -0,0 +1,252 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CLASE: CodecMensaje (El Formato Binario del Protocolo)
+ * * OBJETIVO:
+ * Convertir un {@link Mensaje} en bytes (y al revés) con un formato binario fijo,
+ * compartido por el Servidor y por la Persona.
+ * * * POR QUÉ NO USAMOS ObjectOutputStream:
+ * La serialización de Java escribe descriptores de clase, nombres de campos, etc.
+ * Para un par de enteros y unas coordenadas eso son más de 200 bytes por paquete y
+ * varios objetos (streams, buffers) creados en cada envío y en cada recepción.
+ * Aquí escribimos directamente sobre un ByteBuffer que nos da quien llama, sin
+ * crear ningún stream por mensaje.
+ * * * FORMATO (versión 3), en orden de red (big-endian):
+ * <pre>
+ *  [0]      versión          (1 byte)
+ *  [1]      tipo             (1 byte, ordinal de messageType)
+ *  [2..5]   idCliente        (4 bytes)
+ *  [6..9]   idDestino        (4 bytes, -1 si no aplica)
+ *  [10..13] numIteracion     (4 bytes)
+ *  [14..15] longitud payload (2 bytes, sin signo)
+ *  [16..]   payload          (según el tipo, ver abajo)
+ * </pre>
+ * Payload por tipo (todo binario, sin texto):
+ * <pre>
+ *  COMPARTIR_COORDENADAS : coordenada
+ *  COORDENADAS_AGRUPADAS : k × ([idCliente (4 bytes)] coordenada)
+ *  TIEMPOS_SIMULACION    : [tiempoNs (8 bytes)]
+ *  ACK_MAPA              : bitmap de Mensaje.mapa (longs de 8 bytes)
+ *  resto                 : vacío
+ *
+ *  coordenada : [0] [x] [y] [z]   absoluta, 3 enteros de 4 bytes         (13 bytes)
+ *               [1] dx dy dz      delta, 3 varints zigzag de 1 a 5 bytes (4-7 bytes lo normal)
+ * </pre>
+ * La versión 2 añadió idDestino para que varios clientes simulados puedan compartir un
+ * mismo socket (MultiplexorPersonas): el servidor lo rellena al reenviar y el receptor
+ * sabe a cuál de sus clientes va dirigido el paquete. La 3 cambió el payload de texto UTF-8
+ * ("(57)", "150.52") por campos tipados: ni se construyen ni se parsean cadenas por paquete.
+ */
+public final class CodecMensaje {
+
+    /** Versión del formato. Si cambia el diseño del paquete, se sube este número. */
+    public static final byte VERSION = 3;
+
+    /** Tamaño de la cabecera fija (todo menos el payload). */
+    public static final int TAM_CABECERA = 16;
+
+    /** Posición de idDestino dentro del paquete (para reescribirlo sin recodificar). */
+    public static final int OFFSET_DESTINO = 6;
+
+    /** Tamaño máximo de un paquete. Cabe de sobra en un datagrama UDP sin fragmentar. */
+    public static final int TAM_MAXIMO = 1400;
+
+    /** Longitud máxima del payload. */
+    public static final int MAX_PAYLOAD = TAM_MAXIMO - TAM_CABECERA;
+
+    private static final byte ABSOLUTA = 0, DELTA = 1; // Primer byte de cada coordenada.
+
+    // Cacheamos los valores del enum: values() crea un array nuevo en cada llamada.
+    private static final Mensaje.messageType[] TIPOS = Mensaje.messageType.values();
+
+    private CodecMensaje() {}
+
+    /**
+     * Escribe el mensaje en el buffer a partir de su posición actual.
+     * Al terminar, la posición queda justo detrás del último byte escrito
+     * (el que llama hace flip() antes de enviar).
+     * @return Número de bytes escritos.
+     */
+    public static int codificar(Mensaje msj, ByteBuffer destino) {
+        int inicio = destino.position();
+        destino.put(VERSION);
+        destino.put((byte) msj.type.ordinal());
+        destino.putInt(msj.idCliente);
+        destino.putInt(msj.idDestino);
+        destino.putInt(msj.numIteracion);
+
+        // Reservamos los 2 bytes de la longitud y los rellenamos al final,
+        // así no hace falta calcular el tamaño del payload por adelantado.
+        int posLongitud = destino.position();
+        destino.putShort((short) 0);
+        switch (msj.type) {
+            case COMPARTIR_COORDENADAS -> escribirCoordenada(msj.delta, msj.x, msj.y, msj.z, destino);
+            case COORDENADAS_AGRUPADAS -> {
+                if (msj.agrupadas != null) {
+                    for (Mensaje.Coordenada c : msj.agrupadas) {
+                        destino.putInt(c.idCliente());
+                        escribirCoordenada(c.delta(), c.x(), c.y(), c.z(), destino);
+                    }
+                }
+            }
+            case TIEMPOS_SIMULACION -> destino.putLong(msj.tiempoNs);
+            case ACK_MAPA -> escribirMapa(msj.mapa, destino);
+            default -> { }
+        }
+        int longitud = destino.position() - posLongitud - 2;
+        if (longitud > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload demasiado largo: " + longitud + " bytes");
+        }
+        destino.putShort(posLongitud, (short) longitud);
+
+        return destino.position() - inicio;
+    }
+
+    /**
+     * Lee un mensaje desde la posición actual del buffer hasta su límite.
+     * @throws IOException Si el paquete está truncado o es de otra versión.
+     */
+    public static Mensaje decodificar(ByteBuffer origen) throws IOException {
+        if (origen.remaining() < TAM_CABECERA) {
+            throw new IOException("Paquete demasiado corto: " + origen.remaining() + " bytes");
+        }
+        byte version = origen.get();
+        if (version != VERSION) {
+            throw new IOException("Versión de protocolo desconocida: " + version);
+        }
+        int ordinal = origen.get() & 0xFF;
+        if (ordinal >= TIPOS.length) {
+            throw new IOException("Tipo de mensaje desconocido: " + ordinal);
+        }
+        int idCliente = origen.getInt();
+        int idDestino = origen.getInt();
+        int numIteracion = origen.getInt();
+        int longitud = origen.getShort() & 0xFFFF;
+        if (origen.remaining() < longitud) {
+            throw new IOException("Payload truncado: se esperaban " + longitud + " bytes");
+        }
+        Mensaje msj = new Mensaje(TIPOS[ordinal], idCliente, numIteracion);
+        msj.idDestino = idDestino;
+        int fin = origen.position() + longitud;
+        switch (msj.type) {
+            case COMPARTIR_COORDENADAS -> {
+                msj.delta = leerFormato(origen, fin);
+                msj.x = leerEje(origen, fin, msj.delta);
+                msj.y = leerEje(origen, fin, msj.delta);
+                msj.z = leerEje(origen, fin, msj.delta);
+            }
+            case COORDENADAS_AGRUPADAS -> {
+                // Como mucho una por cada 4+4 bytes (id + coordenada delta más corta).
+                Mensaje.Coordenada[] leidas = new Mensaje.Coordenada[longitud / 8];
+                int k = 0;
+                while (origen.position() < fin) {
+                    if (fin - origen.position() < 4) throw new IOException("Coordenadas agrupadas truncadas");
+                    int id = origen.getInt();
+                    boolean delta = leerFormato(origen, fin);
+                    leidas[k++] = new Mensaje.Coordenada(id, delta,
+                            leerEje(origen, fin, delta), leerEje(origen, fin, delta), leerEje(origen, fin, delta));
+                }
+                msj.agrupadas = (k == leidas.length) ? leidas : Arrays.copyOf(leidas, k);
+            }
+            case TIEMPOS_SIMULACION -> {
+                if (longitud != 8) throw new IOException("Tiempo mal formado: " + longitud + " bytes");
+                msj.tiempoNs = origen.getLong();
+            }
+            case ACK_MAPA -> {
+                if (longitud % 8 != 0) throw new IOException("Bitmap de ACKs mal formado: " + longitud + " bytes");
+                msj.mapa = new long[longitud / 8];
+                for (int i = 0; i < msj.mapa.length; i++) msj.mapa[i] = origen.getLong();
+            }
+            default -> { }
+        }
+        if (origen.position() != fin) {
+            throw new IOException("Payload de " + msj.type + " mal formado: sobran " + (fin - origen.position()) + " bytes");
+        }
+        return msj;
+    }
+
+    /**
+     * Cambia el destinatario de un paquete ya codificado (sin tocar su posición ni su límite).
+     * Permite codificar una vez y reenviar a varios destinatarios cambiando solo 4 bytes.
+     * @param paquete Buffer cuyo paquete empieza en la posición 0.
+     */
+    public static void escribirDestino(ByteBuffer paquete, int idDestino) {
+        paquete.putInt(OFFSET_DESTINO, idDestino);
+    }
+
+    /** Atajo para quien trabaja con arrays (DatagramPacket). */
+    public static Mensaje decodificar(byte[] datos, int longitud) throws IOException {
+        return decodificar(ByteBuffer.wrap(datos, 0, longitud));
+    }
+
+    /** Bytes que ocupa una coordenada en el payload (para saber si cabe sin codificar antes). */
+    public static int tamCoordenada(boolean delta, int x, int y, int z) {
+        if (!delta) return 1 + 3 * 4;
+        return 1 + tamVarint(zigzag(x)) + tamVarint(zigzag(y)) + tamVarint(zigzag(z));
+    }
+
+    // --- COORDENADAS ---
+    // En delta, cada eje va en zigzag (0, -1, 1, -2... -> 0, 1, 2, 3...) y en varint (7 bits por
+    // byte, el bit alto dice si sigue otro): un paso de menos de ±64 centésimas ocupa 1 byte.
+
+    private static void escribirCoordenada(boolean delta, int x, int y, int z, ByteBuffer destino) {
+        if (!delta) {
+            destino.put(ABSOLUTA).putInt(x).putInt(y).putInt(z);
+            return;
+        }
+        destino.put(DELTA);
+        escribirVarint(zigzag(x), destino);
+        escribirVarint(zigzag(y), destino);
+        escribirVarint(zigzag(z), destino);
+    }
+
+    private static boolean leerFormato(ByteBuffer origen, int fin) throws IOException {
+        if (origen.position() >= fin) throw new IOException("Coordenada truncada");
+        byte formato = origen.get();
+        if (formato != ABSOLUTA && formato != DELTA) throw new IOException("Formato de coordenada desconocido: " + formato);
+        return formato == DELTA;
+    }
+
+    private static int leerEje(ByteBuffer origen, int fin, boolean delta) throws IOException {
+        if (!delta) {
+            if (fin - origen.position() < 4) throw new IOException("Coordenada truncada");
+            return origen.getInt();
+        }
+        int valor = 0;
+        for (int desplazamiento = 0; desplazamiento < 35; desplazamiento += 7) {
+            if (origen.position() >= fin) throw new IOException("Coordenada truncada");
+            int b = origen.get();
+            valor |= (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) return (valor >>> 1) ^ -(valor & 1);
+        }
+        throw new IOException("Varint de coordenada demasiado largo");
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static void escribirVarint(int v, ByteBuffer destino) {
+        while ((v & ~0x7F) != 0) {
+            destino.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        destino.put((byte) v);
+    }
+
+    private static int tamVarint(int v) {
+        return (v == 0) ? 1 : (38 - Integer.numberOfLeadingZeros(v)) / 7;
+    }
+
+    private static void escribirMapa(long[] mapa, ByteBuffer destino) {
+        if (mapa == null) return;
+        if (mapa.length * 8 > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Bitmap demasiado largo: " + mapa.length * 8 + " bytes");
+        }
+        for (long palabra : mapa) destino.putLong(palabra);
+    }
+}
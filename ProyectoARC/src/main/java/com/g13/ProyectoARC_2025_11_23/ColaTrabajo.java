@@ -0,0 +1,383 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CLASE: ColaTrabajo (Del receptor a los trabajadores, con tamaño fijo)
+ * * OBJETIVO:
+ * Sustituir la cola de Executors.newFixedThreadPool, que es una LinkedBlockingQueue SIN LÍMITE:
+ * si los trabajadores van por detrás, la cola crece, la memoria sube y la latencia se dispara
+ * sin que nadie lo vea. Aquí la cola tiene capacidad fija y, cuando se llena, se aplica una
+ * política explícita (-Darc.colaPolitica):
+ * - bloquear       : el receptor espera a que haya hueco (los paquetes se quedan en el buffer del socket).
+ * - descartarNuevo : se tira el paquete que acaba de llegar.
+ * - descartarViejo : se tira el más antiguo de la cola (lo más probable es que ya no sirva).
+ * Solo se descartan los tipos "de datos" (-Darc.colaDescartables, por defecto coordenadas y ACKs).
+ * Los de control, como TIEMPOS_SIMULACION, NUNCA: si no caben, el receptor espera.
+ * * * CÓMO:
+ * Anillo acotado de Vyukov de varios productores y varios consumidores (como SumideroCSV, pero
+ * con CAS también al sacar): sin locks en el camino normal. Que sea MPMC es lo que permite a
+ * descartarViejo sacar el más antiguo desde el propio receptor. Los consumidores sin trabajo
+ * (y el receptor con la cola llena) se aparcan con LockSupport y se despiertan al cambiar la cola.
+ * * * TELEMETRÍA:
+ * Profundidad actual y máxima, tiempo de espera en cola (histograma por consumidor),
+ * veces y tiempo que el receptor ha tenido que esperar, y descartes por tipo de mensaje.
+ */
+final class ColaTrabajo {
+
+    enum Politica { BLOQUEAR, DESCARTAR_NUEVO, DESCARTAR_VIEJO }
+
+    private static final Mensaje.messageType[] TIPOS = Mensaje.messageType.values();
+    private static final int DESCONOCIDO = -1; // Paquete sin tipo válido (se trata como descartable).
+
+    // --- ANILLO (varios productores, varios consumidores) ---
+    private final int capacidad;
+    private final int mascara;
+    private final AtomicLongArray secuencia;
+    private final ByteBuffer[] buferes;
+    private final InetSocketAddress[] origenes;
+    private final long[] encolado;         // System.nanoTime() al entrar en la cola.
+    private final int[] tipos;             // Ordinal del tipo (para descartarViejo).
+    private final AtomicLong posEscritura = new AtomicLong();
+    private final AtomicLong posLectura = new AtomicLong();
+
+    private final Politica politica;
+    private final boolean[] descartable;   // Índice = ordinal del tipo.
+    private final PoolBuferes pool;        // A donde vuelve el buffer de un paquete descartado.
+
+    private final ConcurrentLinkedQueue<Thread> consumidoresDormidos = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Thread> productoresDormidos = new ConcurrentLinkedQueue<>();
+    private volatile boolean cerrada = false;
+
+    // --- TELEMETRÍA ---
+    private final AtomicLong profundidadMaxima = new AtomicLong();
+    private final LongAdder[] descartados = new LongAdder[TIPOS.length + 1]; // Último = tipo desconocido.
+    private final LongAdder esperasProductor = new LongAdder();
+    private final LongAdder nsEsperaProductor = new LongAdder();
+    private final LongAdder atendidos = new LongAdder();
+    private final LongAdder nsEnCola = new LongAdder();
+    private final List<Consumidor> consumidores = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param capacidad    Huecos del anillo (se redondea a potencia de 2).
+     * @param descartables Tipos que la política puede tirar; el resto nunca se descarta.
+     * @param pool         Pool del que salen los buffers encolados (los descartados vuelven a él).
+     */
+    ColaTrabajo(int capacidad, Politica politica, Set<Mensaje.messageType> descartables, PoolBuferes pool) {
+        int cap = huecos(capacidad);
+        this.capacidad = cap;
+        this.mascara = cap - 1;
+        this.secuencia = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) secuencia.set(i, i);
+        this.buferes = new ByteBuffer[cap];
+        this.origenes = new InetSocketAddress[cap];
+        this.encolado = new long[cap];
+        this.tipos = new int[cap];
+        this.politica = politica;
+        this.descartable = new boolean[TIPOS.length];
+        for (Mensaje.messageType t : descartables) descartable[t.ordinal()] = true;
+        this.pool = pool;
+        for (int i = 0; i < descartados.length; i++) descartados[i] = new LongAdder();
+    }
+
+    /** "bloquear" / "descartarNuevo" / "descartarViejo" (sin distinguir mayúsculas). */
+    static Politica politica(String texto) {
+        return switch (texto.toLowerCase()) {
+            case "bloquear" -> Politica.BLOQUEAR;
+            case "descartarnuevo" -> Politica.DESCARTAR_NUEVO;
+            case "descartarviejo" -> Politica.DESCARTAR_VIEJO;
+            default -> throw new IllegalArgumentException("Política de cola desconocida: " + texto
+                    + " (bloquear, descartarNuevo o descartarViejo)");
+        };
+    }
+
+    /** Lista de tipos separados por comas ("COMPARTIR_COORDENADAS,ACK"). Vacía = no se descarta nada. */
+    static Set<Mensaje.messageType> tipos(String texto) {
+        Set<Mensaje.messageType> tipos = EnumSet.noneOf(Mensaje.messageType.class);
+        for (String t : texto.split(",")) {
+            if (!t.isBlank()) tipos.add(Mensaje.messageType.valueOf(t.trim().toUpperCase()));
+        }
+        return tipos;
+    }
+
+    // --- PRODUCTOR (el receptor) ---
+
+    /**
+     * Encola un datagrama recibido (el buffer ya con flip()). Según la política puede esperar
+     * a que haya hueco o descartar (este paquete o el más antiguo), devolviendo su buffer al pool.
+     */
+    void encolar(ByteBuffer bufer, InetSocketAddress origen) throws InterruptedException {
+        int tipo = tipoDe(bufer);
+        boolean sePuedeTirar = tipo == DESCONOCIDO || descartable[tipo];
+        int intentosViejo = 0;
+        while (!ofrecer(bufer, origen, tipo, System.nanoTime())) {
+            if (cerrada) {
+                descartar(bufer, tipo);
+                return;
+            }
+            if (sePuedeTirar && politica == Politica.DESCARTAR_NUEVO) {
+                descartar(bufer, tipo);
+                return;
+            }
+            // Si la cola entera fuera de control no habría nada que tirar: tras una vuelta, a esperar.
+            if (politica == Politica.DESCARTAR_VIEJO && intentosViejo < capacidad) {
+                intentosViejo++;
+                tirarElMasViejo();
+                continue;
+            }
+            esperarHueco();
+            intentosViejo = 0;
+        }
+    }
+
+    private boolean ofrecer(ByteBuffer bufer, InetSocketAddress origen, int tipo, long instante) {
+        long pos = posEscritura.get();
+        while (true) {
+            int h = (int) (pos & mascara);
+            long dif = secuencia.get(h) - pos;
+            if (dif == 0) {
+                if (posEscritura.compareAndSet(pos, pos + 1)) {
+                    buferes[h] = bufer;
+                    origenes[h] = origen;
+                    tipos[h] = tipo;
+                    encolado[h] = instante;
+                    secuencia.set(h, pos + 1); // Publicar (escritura volátil).
+
+                    long profundidad = pos + 1 - posLectura.get();
+                    if (profundidad > profundidadMaxima.get()) profundidadMaxima.accumulateAndGet(profundidad, Math::max);
+                    despertar(consumidoresDormidos);
+                    return true;
+                }
+                pos = posEscritura.get();
+            } else if (dif < 0) {
+                return false; // Llena.
+            } else {
+                pos = posEscritura.get(); // Otro productor nos ganó el hueco.
+            }
+        }
+    }
+
+    /**
+     * descartarViejo: saca el más antiguo. Si es descartable, lo tira; si es de control, lo vuelve
+     * a poner al final (cambia de orden, pero no se pierde) y el que llama lo intenta con el siguiente.
+     * Camino lento (solo con la cola llena): crear aquí el Consumidor temporal no importa.
+     */
+    private void tirarElMasViejo() throws InterruptedException {
+        Consumidor viejo = new Consumidor(null);
+        if (!sacar(viejo)) return; // Se ha vaciado mientras tanto: ya hay hueco.
+        if (viejo.tipo == DESCONOCIDO || descartable[viejo.tipo]) {
+            descartar(viejo.bufer, viejo.tipo);
+            return;
+        }
+        // Con su hora de entrada original, para no falsear el tiempo de espera.
+        while (!ofrecer(viejo.bufer, viejo.origen, viejo.tipo, viejo.instante)) {
+            if (cerrada) {
+                descartar(viejo.bufer, viejo.tipo);
+                return;
+            }
+            esperarHueco();
+        }
+    }
+
+    private void esperarHueco() throws InterruptedException {
+        long inicio = System.nanoTime();
+        Thread yo = Thread.currentThread();
+        productoresDormidos.add(yo);
+        // Volvemos a mirar después de apuntarnos: si un consumidor liberó hueco justo antes, no aparcamos.
+        if (posEscritura.get() - posLectura.get() >= capacidad && !cerrada) {
+            LockSupport.park(this);
+        }
+        productoresDormidos.remove(yo);
+        esperasProductor.increment();
+        nsEsperaProductor.add(System.nanoTime() - inicio);
+        if (Thread.interrupted()) throw new InterruptedException();
+    }
+
+    private void descartar(ByteBuffer bufer, int tipo) {
+        descartados[(tipo == DESCONOCIDO) ? TIPOS.length : tipo].increment();
+        pool.devolver(bufer);
+    }
+
+    // El tipo está en el byte 1 del paquete (ver CodecMensaje); se mira sin decodificar.
+    private static int tipoDe(ByteBuffer bufer) {
+        if (bufer.limit() < 2) return DESCONOCIDO;
+        int ordinal = bufer.get(1) & 0xFF;
+        return (ordinal < TIPOS.length) ? ordinal : DESCONOCIDO;
+    }
+
+    // --- CONSUMIDORES (los trabajadores) ---
+
+    /** Lo que recibe un trabajador en cada tomar(). Uno por trabajador, se reutiliza. */
+    static final class Consumidor {
+        ByteBuffer bufer;
+        InetSocketAddress origen;
+        private int tipo;
+        private long instante;
+        private final HistogramaLatencia espera; // Tiempo en cola (ns). Solo lo escribe su trabajador.
+        private long inicioTrabajo; // Cuándo tomó el paquete actual (0 = esperando en la cola).
+        private volatile long nsOcupado; // Tiempo atendiendo paquetes. Lo escribe su trabajador, lo lee Metricas.
+
+        private Consumidor(HistogramaLatencia espera) {
+            this.espera = espera;
+        }
+    }
+
+    /** Da de alta un trabajador (para juntar luego su histograma de espera). */
+    Consumidor nuevoConsumidor() {
+        Consumidor c = new Consumidor(new HistogramaLatencia());
+        consumidores.add(c);
+        return c;
+    }
+
+    /**
+     * Saca el siguiente paquete (espera si no hay). El que llama tiene que devolver c.bufer al pool.
+     * @return false si la cola está cerrada y ya no queda nada.
+     */
+    boolean tomar(Consumidor c) throws InterruptedException {
+        if (c.inicioTrabajo != 0) { // Termina el paquete anterior: sumamos lo que tardó.
+            c.nsOcupado += System.nanoTime() - c.inicioTrabajo;
+            c.inicioTrabajo = 0;
+        }
+        while (true) {
+            if (sacar(c)) {
+                long ahora = System.nanoTime();
+                long ns = ahora - c.instante;
+                c.espera.registrar(ns);
+                nsEnCola.add(ns);
+                atendidos.increment();
+                c.inicioTrabajo = ahora;
+                return true;
+            }
+            if (cerrada) return false;
+            Thread yo = Thread.currentThread();
+            consumidoresDormidos.add(yo);
+            // Igual que el receptor: volver a mirar antes de aparcar para no perder el aviso.
+            if (posEscritura.get() == posLectura.get() && !cerrada) LockSupport.park(this);
+            consumidoresDormidos.remove(yo);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    private boolean sacar(Consumidor c) {
+        long pos = posLectura.get();
+        while (true) {
+            int h = (int) (pos & mascara);
+            long dif = secuencia.get(h) - (pos + 1);
+            if (dif == 0) {
+                if (posLectura.compareAndSet(pos, pos + 1)) {
+                    c.bufer = buferes[h];
+                    c.origen = origenes[h];
+                    c.tipo = tipos[h];
+                    c.instante = encolado[h];
+                    buferes[h] = null;
+                    origenes[h] = null;
+                    secuencia.set(h, pos + mascara + 1); // Hueco libre para la siguiente vuelta.
+                    despertar(productoresDormidos);
+                    return true;
+                }
+                pos = posLectura.get();
+            } else if (dif < 0) {
+                return false; // Vacía (o el productor aún no ha publicado este hueco).
+            } else {
+                pos = posLectura.get(); // Otro consumidor se llevó este.
+            }
+        }
+    }
+
+    private static void despertar(ConcurrentLinkedQueue<Thread> dormidos) {
+        if (dormidos.isEmpty()) return; // Lo normal con carga: nadie esperando, una lectura y fuera.
+        Thread t = dormidos.poll();
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    /** Ya no entra nada más: los trabajadores vacían lo que quede y tomar() devuelve false. */
+    void cerrar() {
+        cerrada = true;
+        for (Thread t : consumidoresDormidos) LockSupport.unpark(t);
+        for (Thread t : productoresDormidos) LockSupport.unpark(t);
+    }
+
+    /**
+     * Huecos reales del anillo para una capacidad pedida (la siguiente potencia de 2). El pool de
+     * buffers se dimensiona con esto: si tuviera menos, el receptor se quedaría esperando buffer
+     * antes de llenar la cola y las políticas de descarte no llegarían a actuar.
+     */
+    static int huecos(int capacidad) {
+        return Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+    }
+
+    // --- TELEMETRÍA ---
+
+    int capacidad() { return capacidad; }
+
+    Politica getPolitica() { return politica; }
+
+    /** Paquetes esperando ahora mismo (aproximado si hay hilos encolando o sacando a la vez). */
+    long profundidad() { return Math.max(0, posEscritura.get() - posLectura.get()); }
+
+    long profundidadMaxima() { return profundidadMaxima.get(); }
+
+    long atendidos() { return atendidos.sum(); }
+
+    /** Tiempo total (ns) que los trabajadores han pasado atendiendo paquetes (no esperando en la cola). */
+    long nsOcupados() {
+        long suma = 0;
+        for (Consumidor c : consumidores) suma += c.nsOcupado;
+        return suma;
+    }
+
+    int numConsumidores() { return consumidores.size(); }
+
+    /** Tiempo medio en cola (ns) de lo atendido hasta ahora. */
+    double esperaMediaNs() {
+        long n = atendidos.sum();
+        return (n == 0) ? 0.0 : (double) nsEnCola.sum() / n;
+    }
+
+    long descartados() {
+        long total = 0;
+        for (LongAdder d : descartados) total += d.sum();
+        return total;
+    }
+
+    long descartados(Mensaje.messageType tipo) { return descartados[tipo.ordinal()].sum(); }
+
+    long esperasProductor() { return esperasProductor.sum(); }
+
+    /** Tiempo en cola de todos los trabajadores juntos (en vivo puede ir alguna muestra por detrás). */
+    HistogramaLatencia espera() {
+        HistogramaLatencia espera = new HistogramaLatencia();
+        for (Consumidor c : consumidores) espera.sumar(c.espera);
+        return espera;
+    }
+
+    /** Resumen al terminar (con los trabajadores ya parados: lee sus histogramas). */
+    void imprimir(String titulo) {
+        HistogramaLatencia espera = espera();
+        System.out.println("--- " + titulo + " ---");
+        System.out.printf("Capacidad / política:   %d / %s%n", capacidad, politica);
+        System.out.printf("Atendidos:              %d (profundidad máxima %d)%n", atendidos(), profundidadMaxima());
+        System.out.printf("Espera en cola:         media %.3f ms, p50/p99/máx %.3f / %.3f / %.3f ms%n",
+                espera.media() / 1e6, espera.percentil(50) / 1e6, espera.percentil(99) / 1e6, espera.maximo() / 1e6);
+        System.out.printf("Receptor esperando:     %d veces, %.3f ms en total%n",
+                esperasProductor(), nsEsperaProductor.sum() / 1e6);
+        System.out.printf("Descartados:            %d%n", descartados());
+        for (Mensaje.messageType tipo : TIPOS) {
+            long d = descartados(tipo);
+            if (d > 0) System.out.printf("  %-22s %d%n", tipo, d);
+        }
+        if (descartados[TIPOS.length].sum() > 0) {
+            System.out.printf("  %-22s %d%n", "(tipo desconocido)", descartados[TIPOS.length].sum());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CLASE: ComparativaCodec (Herramienta de verificación)
+ * * OBJETIVO:
+ * 1. Comprobar que CodecMensaje es reversible (ida y vuelta) para todos los tipos de mensaje
+ *    y para contenidos raros (coordenadas extremas en absoluto y en delta, agregados vacíos y
+ *    llenos hasta el máximo, bitmaps vacíos), y que rechaza paquetes mal formados.
+ * 2. Comparar tamaño y velocidad frente a la serialización de Java que usábamos antes.
+ * * Uso: java com.g13.ProyectoARC_2025_11_23.ComparativaCodec [repeticiones]
+ * Termina con código 1 si alguna comprobación de ida y vuelta falla.
+ */
+public class ComparativaCodec {
+
+    public static void main(String[] args) throws Exception {
+        int repeticiones = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        // 1. IDA Y VUELTA
+        int fallos = 0;
+        ByteBuffer bufer = ByteBuffer.allocate(CodecMensaje.TAM_MAXIMO);
+        for (Mensaje.messageType tipo : Mensaje.messageType.values()) {
+            for (int caso = 0; caso < 2 * EJES.length; caso++) {
+                for (int id : new int[] {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+                    Mensaje original = new Mensaje(tipo, id, id ^ 0x5A5A);
+                    original.idDestino = ~id;
+                    rellenar(original, caso);
+                    fallos += idaYVuelta(original, bufer);
+                }
+            }
+        }
+        // El agregado más grande que cabe: todas las coordenadas absolutas (4 + 13 bytes cada una).
+        Mensaje lleno = new Mensaje(Mensaje.messageType.COORDENADAS_AGRUPADAS, Mensaje.SIN_DESTINO, 3);
+        lleno.agrupadas = new Mensaje.Coordenada[CodecMensaje.MAX_PAYLOAD / 17];
+        for (int i = 0; i < lleno.agrupadas.length; i++) lleno.agrupadas[i] = new Mensaje.Coordenada(i, false, -i, i, i * i);
+        fallos += idaYVuelta(lleno, bufer);
+
+        fallos += comprobarRechazo(new byte[] {CodecMensaje.VERSION, 0, 0}, "paquete truncado");
+        fallos += comprobarRechazo(new byte[] {99, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, "versión desconocida");
+        fallos += comprobarRechazo(new byte[] {CodecMensaje.VERSION, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 5, 'a'}, "payload truncado");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.COMPARTIR_COORDENADAS, 1, 0, 0), "coordenada truncada");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.COMPARTIR_COORDENADAS, 1, 0x80, 0x80, 0x80), "varint truncado");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.COMPARTIR_COORDENADAS, 7, 0, 0, 0), "formato de coordenada desconocido");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.COORDENADAS_AGRUPADAS, 0, 0, 0, 1, 0), "agregado truncado");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.TIEMPOS_SIMULACION, 0, 0, 0, 1), "tiempo truncado");
+        fallos += comprobarRechazo(paquete(Mensaje.messageType.GROUP_DONE, 0), "payload sobrante");
+        System.out.println("Ida y vuelta: " + (fallos == 0 ? "OK" : fallos + " FALLOS"));
+
+        // 2. TAMAÑO
+        Mensaje tipico = new Mensaje(Mensaje.messageType.COMPARTIR_COORDENADAS, 4242, 17);
+        tipico.x = 5_012;
+        tipico.y = 7_340;
+        tipico.z = 129;
+        int tamJava = serializarJava(tipico).length;
+        bufer.clear();
+        int tamCodec = CodecMensaje.codificar(tipico, bufer);
+        System.out.printf("Tamaño COMPARTIR_COORDENADAS: Java=%d bytes, Codec=%d bytes (%.1fx menor)%n",
+                tamJava, tamCodec, (double) tamJava / tamCodec);
+        Mensaje enDelta = new Mensaje(Mensaje.messageType.COMPARTIR_COORDENADAS, 4242, 18);
+        enDelta.delta = true;
+        enDelta.x = 23;
+        enDelta.y = -41;
+        enDelta.z = 7;
+        bufer.clear();
+        System.out.printf("Tamaño COMPARTIR_COORDENADAS en delta: Codec=%d bytes (payload %d)%n",
+                CodecMensaje.codificar(enDelta, bufer), CodecMensaje.tamCoordenada(true, 23, -41, 7));
+        System.out.printf("Coordenadas por COORDENADAS_AGRUPADAS: %d absolutas, %d en delta (pasos < 0,64)%n",
+                CodecMensaje.MAX_PAYLOAD / (4 + CodecMensaje.tamCoordenada(false, 0, 0, 0)),
+                CodecMensaje.MAX_PAYLOAD / (4 + CodecMensaje.tamCoordenada(true, 0, 0, 0)));
+
+        // 3. VELOCIDAD (ida y vuelta completa). Aproximado: para medidas serias, ver el módulo JMH.
+        long hash = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            Mensaje m = deserializarJava(serializarJava(tipico));
+            hash += m.idCliente;
+        }
+        long tJava = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            bufer.clear();
+            CodecMensaje.codificar(tipico, bufer);
+            bufer.flip();
+            hash += CodecMensaje.decodificar(bufer).idCliente;
+        }
+        long tCodec = System.nanoTime() - t0;
+
+        System.out.printf("Velocidad (%d idas y vueltas): Java=%.0f ns/msg, Codec=%.0f ns/msg (%.1fx más rápido) [%d]%n",
+                repeticiones, (double) tJava / repeticiones, (double) tCodec / repeticiones,
+                (double) tJava / tCodec, hash & 1);
+
+        if (fallos > 0) System.exit(1);
+    }
+
+    // Ejes de prueba: pasos de 1 y 2 bytes en varint, el límite entre ambos y los extremos de int.
+    private static final int[][] EJES = {
+            {0, 0, 0}, {1, -1, 63}, {-64, 64, 8191}, {10_000, 5_000, -8192}, {Integer.MIN_VALUE, Integer.MAX_VALUE, -1}};
+    private static final long[] TIEMPOS = {0, 1, 150_526_315L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    // Rellena el contenido propio del tipo (casos pares en absoluto, impares en delta).
+    private static void rellenar(Mensaje m, int caso) {
+        int[] e = EJES[caso / 2];
+        boolean delta = (caso % 2 == 1);
+        switch (m.type) {
+            case COMPARTIR_COORDENADAS -> {
+                m.delta = delta;
+                m.x = e[0];
+                m.y = e[1];
+                m.z = e[2];
+            }
+            case COORDENADAS_AGRUPADAS -> {
+                m.agrupadas = new Mensaje.Coordenada[caso];
+                for (int i = 0; i < caso; i++) m.agrupadas[i] = new Mensaje.Coordenada(i * 7, i % 2 == 1, e[0] + i, e[1], e[2] - i);
+            }
+            case TIEMPOS_SIMULACION -> m.tiempoNs = TIEMPOS[caso % TIEMPOS.length];
+            case ACK_MAPA -> {
+                m.mapa = new long[caso];
+                for (int i = 0; i < caso; i++) m.mapa[i] = (long) e[i % 3] << i;
+            }
+            default -> { }
+        }
+    }
+
+    private static int idaYVuelta(Mensaje original, ByteBuffer bufer) throws IOException {
+        bufer.clear();
+        CodecMensaje.codificar(original, bufer);
+        bufer.flip();
+        Mensaje copia = CodecMensaje.decodificar(bufer);
+        if (copia.type != original.type || copia.idCliente != original.idCliente
+                || copia.idDestino != original.idDestino || copia.numIteracion != original.numIteracion
+                || !mismoContenido(original, copia) || bufer.hasRemaining()) {
+            System.out.println("FALLO ida y vuelta: " + original + " -> " + copia);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static boolean mismoContenido(Mensaje a, Mensaje b) {
+        return switch (a.type) {
+            case COMPARTIR_COORDENADAS -> a.delta == b.delta && a.x == b.x && a.y == b.y && a.z == b.z;
+            case COORDENADAS_AGRUPADAS -> Arrays.equals(a.agrupadas, b.agrupadas);
+            case TIEMPOS_SIMULACION -> a.tiempoNs == b.tiempoNs;
+            case ACK_MAPA -> Arrays.equals(a.mapa, b.mapa);
+            default -> true;
+        };
+    }
+
+    // Cabecera correcta del tipo dado con este payload (para los casos de rechazo).
+    private static byte[] paquete(Mensaje.messageType tipo, int... payload) {
+        ByteBuffer b = ByteBuffer.allocate(CodecMensaje.TAM_CABECERA + payload.length);
+        b.put(CodecMensaje.VERSION).put((byte) tipo.ordinal()).putInt(0).putInt(Mensaje.SIN_DESTINO).putInt(1);
+        b.putShort((short) payload.length);
+        for (int v : payload) b.put((byte) v);
+        return b.array();
+    }
+
+    private static int comprobarRechazo(byte[] datos, String caso) {
+        try {
+            CodecMensaje.decodificar(datos, datos.length);
+            System.out.println("FALLO: se aceptó un " + caso);
+            return 1;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // La serialización antigua, para comparar. Mensaje ya no es Serializable: se serializa una
+    // copia con los mismos campos, que es lo que escribía ObjectOutputStream.
+    private static byte[] serializarJava(Mensaje msj) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(new MensajeJava(msj));
+        return bos.toByteArray();
+    }
+
+    private static Mensaje deserializarJava(byte[] datos) throws IOException, ClassNotFoundException {
+        MensajeJava copia = (MensajeJava) new ObjectInputStream(new ByteArrayInputStream(datos)).readObject();
+        Mensaje msj = new Mensaje(copia.type, copia.idCliente, copia.numIteracion);
+        msj.idDestino = copia.idDestino;
+        msj.delta = copia.delta;
+        msj.x = copia.x;
+        msj.y = copia.y;
+        msj.z = copia.z;
+        msj.tiempoNs = copia.tiempoNs;
+        msj.mapa = copia.mapa;
+        return msj;
+    }
+
+    /** Los campos de Mensaje en una clase Serializable (solo para la comparativa). */
+    private static final class MensajeJava implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final Mensaje.messageType type;
+        final int idCliente, idDestino, numIteracion, x, y, z;
+        final boolean delta;
+        final long tiempoNs;
+        final long[] mapa;
+
+        MensajeJava(Mensaje m) {
+            type = m.type;
+            idCliente = m.idCliente;
+            idDestino = m.idDestino;
+            numIteracion = m.numIteracion;
+            delta = m.delta;
+            x = m.x;
+            y = m.y;
+            z = m.z;
+            tiempoNs = m.tiempoNs;
+            mapa = m.mapa;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Scanner;
+
+/**
+ * CLASE: Configuracion (Opciones del programa)
+ * * OBJETIVO:
+ * Leer en un único sitio todas las opciones: N, V, S, IP, puerto y las avanzadas (modos del
+ * servidor, tamaños, timeouts...). Se pueden dar de tres formas, de más a menos prioritaria:
+ * <pre>
+ *   1. Línea de comandos:  java ... Servidor --n=100 --v=5 --s=10 --modo=reactores
+ *   2. Fichero:            java ... Servidor --config=simulacion.properties
+ *   3. Propiedades JVM:    java -Darc.modo=reactores ... Servidor
+ * </pre>
+ * En la línea de comandos y en el fichero el prefijo "arc." es opcional (--modo = --arc.modo).
+ * Lo que no aparezca en ningún sitio y sea imprescindible (N, V, S...) se pregunta por
+ * teclado como siempre; el resto usa el valor por defecto que indique quien la pide.
+ */
+final class Configuracion {
+
+    private static final String PREFIJO = "arc.";
+
+    // Opciones de la línea de comandos y del fichero (ya con el prefijo "arc.").
+    private static final Map<String, String> opciones = new LinkedHashMap<>();
+
+    // Teclado: solo se abre si de verdad hay que preguntar algo.
+    private static Scanner teclado;
+
+    private Configuracion() {}
+
+    /**
+     * Lee los argumentos de main: "--clave=valor", "--clave valor" y "--config=fichero".
+     * Las claves de la línea de comandos pisan a las del fichero.
+     */
+    static void cargar(String[] args) {
+        Map<String, String> lineaComandos = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Argumento no reconocido: " + arg + " (se espera --clave=valor)");
+            }
+            String clave, valor;
+            int igual = arg.indexOf('=');
+            if (igual > 0) {
+                clave = arg.substring(2, igual);
+                valor = arg.substring(igual + 1);
+            } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                clave = arg.substring(2);
+                valor = args[++i];
+            } else {
+                clave = arg.substring(2);
+                valor = "true"; // Bandera sin valor: --fiable
+            }
+            lineaComandos.put(normalizar(clave), valor.trim());
+        }
+
+        String fichero = lineaComandos.remove(PREFIJO + "config");
+        if (fichero != null) {
+            Properties propiedades = new Properties();
+            try (Reader lector = new FileReader(fichero)) {
+                propiedades.load(lector);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("No se pudo leer el fichero de configuración " + fichero + ": " + e.getMessage());
+            }
+            for (String clave : propiedades.stringPropertyNames()) {
+                opciones.put(normalizar(clave), propiedades.getProperty(clave).trim());
+            }
+        }
+        opciones.putAll(lineaComandos);
+    }
+
+    /** Las opciones cargadas de la línea de comandos / fichero (para pasárselas a un proceso hijo). */
+    static Map<String, String> cargadas() {
+        return new LinkedHashMap<>(opciones);
+    }
+
+    static String texto(String clave, String porDefecto) {
+        String valor = opciones.get(clave);
+        if (valor == null) valor = System.getProperty(clave);
+        return (valor == null || valor.isBlank()) ? porDefecto : valor.trim();
+    }
+
+    static int entero(String clave, int porDefecto) {
+        String valor = texto(clave, null);
+        if (valor == null) return porDefecto;
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("La opción " + clave + " debe ser un entero: " + valor);
+        }
+    }
+
+    /** Opción imprescindible: si no está configurada, se pregunta por teclado. */
+    static String textoOPreguntar(String clave, String pregunta) {
+        String valor = texto(clave, null);
+        if (valor != null) return valor;
+        System.out.print(pregunta);
+        valor = teclado().next();
+        opciones.put(clave, valor); // Contestada una vez, ya está configurada (otro main del mismo proceso no repregunta).
+        return valor;
+    }
+
+    /** Opción imprescindible entera: si no está configurada, se pregunta por teclado. */
+    static int enteroOPreguntar(String clave, String pregunta) {
+        if (texto(clave, null) != null) return entero(clave, 0);
+        System.out.print(pregunta);
+        int valor = teclado().nextInt();
+        opciones.put(clave, String.valueOf(valor));
+        return valor;
+    }
+
+    /** Valor por defecto propio de un programa (p. ej. SimulacionLocal usa memoria): solo si nadie lo ha configurado. */
+    static void porDefecto(String clave, String valor) {
+        if (texto(clave, null) == null) opciones.put(clave, valor);
+    }
+
+    private static Scanner teclado() {
+        if (teclado == null) teclado = new Scanner(System.in);
+        return teclado;
+    }
+
+    private static String normalizar(String clave) {
+        return clave.startsWith(PREFIJO) ? clave : PREFIJO + clave;
+    }
+}
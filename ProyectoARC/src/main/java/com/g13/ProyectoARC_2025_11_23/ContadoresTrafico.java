@@ -0,0 +1,94 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CLASE: ContadoresTrafico (Lo que de verdad pasa por el socket)
+ * * OBJETIVO:
+ * Contar datagramas y bytes enviados y recibidos, por tipo de mensaje, en el punto exacto en
+ * que se llama a send()/receive(). Antes el throughput se estimaba como "mensajes x 1 KB",
+ * un tamaño inventado que además ignoraba todo el reparto (fan-out) que hace el servidor.
+ * * * POR QUÉ LongAdder:
+ * Muchos hilos (trabajadores del servidor, Personas) suman a la vez en el camino caliente.
+ * Un AtomicLong sería un único punto de contención; LongAdder reparte las sumas en celdas
+ * por hilo y solo las junta al leer (al final, o cuando Metricas muestrea).
+ * * Los bytes son los del datagrama UDP (cabecera del codec + payload), sin cabeceras IP/UDP.
+ */
+final class ContadoresTrafico {
+
+    private static final Mensaje.messageType[] TIPOS = Mensaje.messageType.values();
+
+    // Índice = ordinal del tipo de mensaje.
+    private final LongAdder[] datagramasEnviados = crear();
+    private final LongAdder[] bytesEnviados = crear();
+    private final LongAdder[] datagramasRecibidos = crear();
+    private final LongAdder[] bytesRecibidos = crear();
+    // send() que devolvió 0 en un canal no bloqueante: el datagrama no llegó a salir de la máquina.
+    private final LongAdder[] descartadosLocales = crear();
+
+    void enviado(Mensaje.messageType tipo, int bytes) {
+        datagramasEnviados[tipo.ordinal()].increment();
+        bytesEnviados[tipo.ordinal()].add(bytes);
+    }
+
+    /** Datagrama que no se pudo enviar (buffer del socket lleno): no cuenta como enviado. */
+    void descartadoLocal(Mensaje.messageType tipo) {
+        descartadosLocales[tipo.ordinal()].increment();
+    }
+
+    void recibido(Mensaje.messageType tipo, int bytes) {
+        datagramasRecibidos[tipo.ordinal()].increment();
+        bytesRecibidos[tipo.ordinal()].add(bytes);
+    }
+
+    long datagramasEnviados() { return total(datagramasEnviados); }
+    long bytesEnviados() { return total(bytesEnviados); }
+    long datagramasRecibidos() { return total(datagramasRecibidos); }
+    long bytesRecibidos() { return total(bytesRecibidos); }
+    long descartadosLocales() { return total(descartadosLocales); }
+
+    /** Suma cuentas que vienen de fuera (p. ej. los totales de otro proceso generador). */
+    void sumar(Mensaje.messageType tipo, long dgrEnviados, long bytesEnv, long dgrRecibidos, long bytesRec) {
+        int i = tipo.ordinal();
+        datagramasEnviados[i].add(dgrEnviados);
+        bytesEnviados[i].add(bytesEnv);
+        datagramasRecibidos[i].add(dgrRecibidos);
+        bytesRecibidos[i].add(bytesRec);
+    }
+
+    // Por tipo (para las métricas en vivo y para enviarlos a otro proceso).
+    long datagramasEnviados(Mensaje.messageType tipo) { return datagramasEnviados[tipo.ordinal()].sum(); }
+    long bytesEnviados(Mensaje.messageType tipo) { return bytesEnviados[tipo.ordinal()].sum(); }
+    long datagramasRecibidos(Mensaje.messageType tipo) { return datagramasRecibidos[tipo.ordinal()].sum(); }
+    long bytesRecibidos(Mensaje.messageType tipo) { return bytesRecibidos[tipo.ordinal()].sum(); }
+
+    /** Tabla por tipo de mensaje (solo los tipos que han aparecido) y totales. */
+    void imprimir(String titulo) {
+        System.out.println("--- " + titulo + " ---");
+        System.out.printf("%-22s %12s %14s %12s %14s%n", "Tipo", "Dgr. enviad.", "Bytes enviad.", "Dgr. recib.", "Bytes recib.");
+        for (Mensaje.messageType tipo : TIPOS) {
+            int i = tipo.ordinal();
+            if (datagramasEnviados[i].sum() == 0 && datagramasRecibidos[i].sum() == 0) continue;
+            System.out.printf("%-22s %12d %14d %12d %14d%n", tipo,
+                    datagramasEnviados[i].sum(), bytesEnviados[i].sum(),
+                    datagramasRecibidos[i].sum(), bytesRecibidos[i].sum());
+        }
+        System.out.printf("%-22s %12d %14d %12d %14d%n", "TOTAL",
+                datagramasEnviados(), bytesEnviados(), datagramasRecibidos(), bytesRecibidos());
+        if (descartadosLocales() > 0) {
+            System.out.println("Sin enviar (buffer del socket lleno): " + descartadosLocales() + " datagramas");
+        }
+    }
+
+    private static LongAdder[] crear() {
+        LongAdder[] contadores = new LongAdder[TIPOS.length];
+        for (int i = 0; i < contadores.length; i++) contadores[i] = new LongAdder();
+        return contadores;
+    }
+
+    private static long total(LongAdder[] contadores) {
+        long suma = 0;
+        for (LongAdder c : contadores) suma += c.sum();
+        return suma;
+    }
+}
@@ -0,0 +1,172 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CLASE: Coordinador (El Servidor que reparte, en modo clúster)
+ * * OBJETIVO:
+ * Un único proceso Servidor lleva todos los grupos, así que el techo es el heap y el GC de
+ * UNA JVM. En modo clúster (-Darc.rol=coordinador) el Servidor solo hace el registro TCP y
+ * reparte los grupos entre R procesos relé (-Darc.rol=rele) de la misma máquina, cada uno en
+ * su puerto (-Darc.reles=11000,12000,...). Esta clase es el lado del coordinador:
+ * - Se conecta a los relés y les dice N, V, S y qué grupos son suyos (g % R).
+ * - Durante el registro, responde a cada cliente con el puerto UDP del relé de su grupo.
+ * - Al terminar el registro, manda a cada relé la ficha de sus clientes. Desde ahí cada relé
+ *   da la salida, reenvía y cierra sus grupos por su cuenta.
+ * - Va juntando los GRUPO_TERMINADO de todos y, al final, los totales de tráfico de cada relé.
+ * * Como el cliente solo recibe un PUERTO (la IP es la del coordinador), los relés tienen que
+ * estar en la misma máquina que el coordinador.
+ */
+final class Coordinador {
+
+    private static final long ESPERA_CONEXION_MS = 30_000; // Los relés pueden arrancar después que nosotros.
+
+    /** Conexión con un relé y lo que nos contó al presentarse. */
+    private static final class Rele {
+        final int indice, puerto, numReactores;
+        final Socket socket;
+        final DataInputStream dis;
+        final DataOutputStream dos;
+        int grupos;
+        ProtocoloCluster.Totales totales; // null hasta que llega su FIN.
+
+        Rele(int indice, int puerto, int numReactores, Socket socket, DataInputStream dis, DataOutputStream dos) {
+            this.indice = indice;
+            this.puerto = puerto;
+            this.numReactores = numReactores;
+            this.socket = socket;
+            this.dis = dis;
+            this.dos = dos;
+        }
+    }
+
+    private final Rele[] reles;
+    private final int numGrupos;
+    private final AtomicInteger gruposTerminados = new AtomicInteger();
+    private long inicioNs;
+
+    private Coordinador(Rele[] reles, int numGrupos) {
+        this.reles = reles;
+        this.numGrupos = numGrupos;
+    }
+
+    /**
+     * Se conecta a los relés (lista de puertos TCP en esta máquina) y les manda su encargo.
+     * Reintenta durante un rato: da igual arrancar antes el coordinador o los relés.
+     */
+    static Coordinador conectar(String lista, int N, int V, int S, boolean directo) throws IOException, InterruptedException {
+        String[] puertos = lista.split(",");
+        if (puertos.length == 0 || lista.isBlank()) throw new IOException("arc.reles está vacío (ej. --reles=11000,12000)");
+        Rele[] reles = new Rele[puertos.length];
+        for (int r = 0; r < reles.length; r++) {
+            int puerto = Integer.parseInt(puertos[r].trim());
+            Socket socket = conectarConReintentos(puerto);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ProtocoloCluster.escribirEncargo(dos, new ProtocoloCluster.Encargo(N, V, S, directo, r, reles.length));
+            reles[r] = new Rele(r, puerto, dis.readInt(), socket, dis, dos);
+            System.out.println("Relé " + r + " conectado (puerto " + puerto + ", "
+                    + (reles[r].numReactores == 0 ? "pool" : reles[r].numReactores + " reactores") + ").");
+        }
+        Coordinador c = new Coordinador(reles, N / V);
+        for (int g = 0; g < N / V; g++) reles[ProtocoloCluster.releDeGrupo(g, reles.length)].grupos++;
+        return c;
+    }
+
+    private static Socket conectarConReintentos(int puerto) throws IOException, InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_CONEXION_MS;
+        while (true) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), puerto);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > limite) throw new IOException("El relé del puerto " + puerto + " no responde", e);
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    int numReles() { return reles.length; }
+
+    /** Puerto UDP al que deben hablar los clientes de este grupo (el de su relé, o el de su reactor). */
+    int puertoUDPDeGrupo(int idGrupo) {
+        Rele r = reles[ProtocoloCluster.releDeGrupo(idGrupo, reles.length)];
+        if (r.numReactores == 0) return r.puerto;
+        return r.puerto + 1 + ProtocoloCluster.reactorDeGrupo(idGrupo, reles.length, r.numReactores);
+    }
+
+    /** Manda a cada relé las fichas de los clientes de sus grupos: a partir de aquí, arrancan. */
+    void repartir(InfoCliente[] clientes) throws IOException {
+        List<List<InfoCliente>> porRele = new ArrayList<>();
+        for (int r = 0; r < reles.length; r++) porRele.add(new ArrayList<>());
+        for (InfoCliente c : clientes) porRele.get(ProtocoloCluster.releDeGrupo(c.idGrupo(), reles.length)).add(c);
+        inicioNs = System.nanoTime();
+        for (Rele r : reles) ProtocoloCluster.escribirClientes(r.dos, porRele.get(r.indice));
+        System.out.println("Clientes repartidos entre " + reles.length + " relés. Simulación en marcha.");
+    }
+
+    /** Espera a que todos los relés cierren sus grupos y manden sus totales, e imprime el resumen. */
+    void esperarFin() throws InterruptedException {
+        Thread[] lectores = new Thread[reles.length];
+        for (Rele r : reles) {
+            lectores[r.indice] = Thread.ofPlatform().name("coordinador-rele-" + r.indice).start(() -> escuchar(r));
+        }
+        for (Thread t : lectores) t.join();
+        double segundos = (System.nanoTime() - inicioNs) / 1e9;
+        imprimir(segundos);
+    }
+
+    // Un hilo por relé: lee sus eventos hasta el FIN (o hasta que se cae la conexión).
+    private void escuchar(Rele r) {
+        try (r.socket) {
+            while (true) {
+                int evento = r.dis.readInt();
+                if (evento == ProtocoloCluster.GRUPO_TERMINADO) {
+                    int idGrupo = r.dis.readInt();
+                    System.out.println("Grupo " + idGrupo + " FINALIZADO (relé " + r.indice + "). ("
+                            + gruposTerminados.incrementAndGet() + "/" + numGrupos + ")");
+                } else if (evento == ProtocoloCluster.FIN) {
+                    r.totales = ProtocoloCluster.leerTotales(r.dis);
+                    return;
+                } else {
+                    throw new IOException("Evento desconocido del relé: " + evento);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[Coordinador] Relé " + r.indice + " perdido: " + e.getMessage());
+        }
+    }
+
+    private void imprimir(double segundos) {
+        System.out.println("\n--- FIN DE LA SIMULACIÓN (CLÚSTER) ---");
+        System.out.printf("Grupos terminados: %d/%d en %.3f s%n", gruposTerminados.get(), numGrupos, segundos);
+        System.out.printf("%-6s %7s %7s %12s %14s %12s %14s %12s%n", "Relé", "Puerto", "Grupos",
+                "Dgr. enviad.", "Bytes enviad.", "Dgr. recib.", "Bytes recib.", "Dgr./s");
+        long[] total = new long[4];
+        for (Rele r : reles) {
+            if (r.totales == null) {
+                System.out.printf("%-6d %7d %7d %12s%n", r.indice, r.puerto, r.grupos, "(sin datos)");
+                continue;
+            }
+            ProtocoloCluster.Totales t = r.totales;
+            total[0] += t.datagramasEnviados();
+            total[1] += t.bytesEnviados();
+            total[2] += t.datagramasRecibidos();
+            total[3] += t.bytesRecibidos();
+            System.out.printf("%-6d %7d %7d %12d %14d %12d %14d %12.0f%n", r.indice, r.puerto, r.grupos,
+                    t.datagramasEnviados(), t.bytesEnviados(), t.datagramasRecibidos(), t.bytesRecibidos(),
+                    (t.datagramasEnviados() + t.datagramasRecibidos()) / segundos);
+        }
+        System.out.printf("%-6s %7s %7d %12d %14d %12d %14d %12.0f%n", "TOTAL", "", numGrupos,
+                total[0], total[1], total[2], total[3], (total[0] + total[2]) / segundos);
+    }
+}
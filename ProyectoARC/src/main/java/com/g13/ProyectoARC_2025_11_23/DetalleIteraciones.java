@@ -0,0 +1,83 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+/**
+ * CLASE: DetalleIteraciones (Una fila por iteración, sin estorbar a la medida)
+ * * OBJETIVO:
+ * Con -Darc.detalle=true, guardar la latencia de CADA iteración de CADA cliente, y además un
+ * agregado por grupo e iteración (cuántas muestras, media y máximo: el máximo es lo que tarda
+ * el grupo entero en completar esa iteración).
+ * * El cliente solo hace SumideroCSV.ofrecer (un CAS y cuatro escrituras, sin bloquear ni crear
+ * objetos). Las filas y el agregado por grupo se construyen en el hilo escritor del sumidero.
+ * * Ficheros (en data/, rotan al pasar de -Darc.detalleMaxMB):
+ * - MuestrasPorIteracion.csv: NumeroClientes;IdCliente;IdGrupo;Iteracion;LatenciaNs
+ * - MuestrasPorGrupo.csv:     NumeroClientes;IdGrupo;Iteracion;Muestras;MediaNs;MaxNs
+ */
+final class DetalleIteraciones {
+
+    // Iteraciones por grupo que se agregan a la vez. Un cliente solo espera los ACKs de sus vecinos
+    // (no que terminen su iteración), así que los miembros pueden ir bastante desfasados: guardamos
+    // hasta S iteraciones por grupo, con un tope para no disparar la memoria con S enormes.
+    private static final int VENTANA_MAXIMA = 1024;
+    private final int ventana;
+
+    private final SumideroCSV sumidero;
+    private final int destino;
+
+    // Agregado por (grupo, iteración % ventana). Solo lo toca el hilo escritor.
+    private final int[] iteracionDe;
+    private final long[] muestras, suma, maximo;
+
+    DetalleIteraciones(SumideroCSV sumidero, String dir, int numClientes, int V, int S, long maxBytes) {
+        this.sumidero = sumidero;
+        int numGrupos = Math.max(1, numClientes / V);
+        this.ventana = Math.max(1, Math.min(S, VENTANA_MAXIMA));
+        this.iteracionDe = new int[numGrupos * ventana];
+        this.muestras = new long[numGrupos * ventana];
+        this.suma = new long[numGrupos * ventana];
+        this.maximo = new long[numGrupos * ventana];
+
+        SumideroCSV.Archivo porCliente = sumidero.abrir(dir + "/MuestrasPorIteracion.csv",
+                "NumeroClientes;IdCliente;IdGrupo;Iteracion;LatenciaNs", maxBytes);
+        SumideroCSV.Archivo porGrupo = sumidero.abrir(dir + "/MuestrasPorGrupo.csv",
+                "NumeroClientes;IdGrupo;Iteracion;Muestras;MediaNs;MaxNs", maxBytes);
+
+        this.destino = sumidero.registrar((idCliente, idGrupo, iteracion, ns) -> {
+            porCliente.campo(numClientes).campo(idCliente).campo(idGrupo).campo(iteracion).campo(ns).finFila();
+            if (idGrupo < 0 || idGrupo >= numGrupos) return;
+
+            int h = (int) idGrupo * ventana + (int) (iteracion % ventana);
+            if (muestras[h] > 0 && iteracionDe[h] != iteracion) {
+                escribirGrupo(porGrupo, numClientes, h, idGrupo); // Se quedó a medias (alguna muestra perdida).
+            }
+            iteracionDe[h] = (int) iteracion;
+            muestras[h]++;
+            suma[h] += ns;
+            maximo[h] = Math.max(maximo[h], ns);
+            if (muestras[h] == V) escribirGrupo(porGrupo, numClientes, h, idGrupo);
+        });
+
+        // Al cerrar, lo que quede a medias también se escribe.
+        sumidero.alCerrar(() -> {
+            for (int h = 0; h < muestras.length; h++) {
+                if (muestras[h] > 0) escribirGrupo(porGrupo, numClientes, h, h / ventana);
+            }
+        });
+    }
+
+    /** Apunta la latencia de una iteración. No bloquea; si el escritor va saturado, se descarta. */
+    void registrar(int idCliente, int idGrupo, int iteracion, long ns) {
+        sumidero.ofrecer(destino, idCliente, idGrupo, iteracion, ns);
+    }
+
+    long descartadas() {
+        return sumidero.descartados();
+    }
+
+    private void escribirGrupo(SumideroCSV.Archivo archivo, int numClientes, int h, long idGrupo) {
+        archivo.campo(numClientes).campo(idGrupo).campo(iteracionDe[h]).campo(muestras[h])
+                .campo(suma[h] / muestras[h]).campo(maximo[h]).finFila();
+        muestras[h] = 0;
+        suma[h] = 0;
+        maximo[h] = 0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+/**
+ * Lo que el reporte final de Cliente necesita saber de cada cliente simulado.
+ * * La implementan tanto Persona (un hilo por cliente) como los clientes simulados de
+ * MultiplexorPersonas (muchos clientes sobre pocos sockets), así el reporte no depende
+ * del motor que se haya usado.
+ */
+public interface EstadisticasPersona {
+    double getTiempoMedioFinal();
+    boolean isFinalizadoConExito();
+    int getCantidadTimeouts();
+    int getIdCliente();
+    int getIdGrupo();
+    int getRespuestasCorrectas();
+    /** System.nanoTime() del momento en que el servidor le asignó identidad (0 si no llegó a registrarse). */
+    long getInstanteRegistro();
+    /** Datagramas de coordenadas reenviados por la capa de fiabilidad (0 si está desactivada). */
+    int getRetransmisiones();
+    /** Tiempo de cada iteración en ns. Se lee cuando el cliente ya ha terminado. */
+    HistogramaLatencia getHistograma();
+    /** true si intercambió coordenadas y ACKs directamente con sus vecinos (sin pasar por el servidor). */
+    boolean isIntercambioDirecto();
+}
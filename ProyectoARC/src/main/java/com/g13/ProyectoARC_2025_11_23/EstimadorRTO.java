@@ -0,0 +1,54 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+/**
+ * CLASE: EstimadorRTO (Cuánto esperar antes de retransmitir)
+ * * OBJETIVO:
+ * Calcular el tiempo de retransmisión (RTO) a partir de los tiempos de ida y vuelta (RTT)
+ * que vamos midiendo, igual que hace TCP (algoritmo de Jacobson/Karels, RFC 6298):
+ * <pre>
+ *   SRTT   = 7/8 * SRTT   + 1/8 * muestra
+ *   RTTVAR = 3/4 * RTTVAR + 1/4 * |SRTT - muestra|
+ *   RTO    = SRTT + 4 * RTTVAR          (acotado entre RTO_MINIMO y RTO_MAXIMO)
+ * </pre>
+ * * Reglas de Karn: las iteraciones que han necesitado retransmisión NO aportan muestra (no
+ * sabemos a qué envío corresponde el ACK), y cada retransmisión dobla el RTO (backoff).
+ * * Lo usa un único hilo (el principal de Persona o el bucle de MultiplexorPersonas), así que
+ * no lleva sincronización.
+ */
+final class EstimadorRTO {
+
+    static final long RTO_INICIAL_NS = 100_000_000L; // 100 ms hasta tener la primera muestra.
+    static final long RTO_MINIMO_NS = 10_000_000L;   // 10 ms: por debajo, retransmitiríamos por simple cola.
+    static final long RTO_MAXIMO_NS = 2_000_000_000L;
+
+    private long srtt = -1; // -1 = sin muestras todavía.
+    private long rttvar;
+    private long rto = RTO_INICIAL_NS;
+
+    /** Apunta un RTT medido (en ns) de una iteración que NO se retransmitió. */
+    void muestra(long rttNs) {
+        if (srtt < 0) {
+            srtt = rttNs;
+            rttvar = rttNs / 2;
+        } else {
+            rttvar += (Math.abs(srtt - rttNs) - rttvar) / 4;
+            srtt += (rttNs - srtt) / 8;
+        }
+        rto = acotar(srtt + 4 * rttvar);
+    }
+
+    /** RTO actual en nanosegundos. */
+    long rtoNs() {
+        return rto;
+    }
+
+    /** Tras una retransmisión: dobla el RTO (backoff exponencial) y devuelve el nuevo. */
+    long backoff() {
+        rto = acotar(rto * 2);
+        return rto;
+    }
+
+    private static long acotar(long ns) {
+        return Math.max(RTO_MINIMO_NS, Math.min(RTO_MAXIMO_NS, ns));
+    }
+}
@@ -0,0 +1,147 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * CLASE: EtapasServidor (¿En qué se va el tiempo de un reenvío?)
+ * * OBJETIVO:
+ * Cuando sube la latencia del relé no sabíamos qué parte del camino de un paquete era la
+ * culpable. Con -Darc.etapas=true el servidor cronometra (System.nanoTime) cada etapa:
+ * - ENTREGA     : del receive() a dejarlo en la cola (incluye esperar si la cola está llena).
+ * - COLA        : tiempo esperando en la cola hasta que lo toma un trabajador (de ColaTrabajo).
+ * - DECODIFICAR : CodecMensaje.decodificar.
+ * - BUSCAR      : buscarCliente (quién lo manda).
+ * - LOGICA      : procesarMensaje sin contar los envíos (deduplicar, agrupar, codificar respuestas...).
+ * - ENVIO       : cada send() por separado.
+ * - TOTAL       : del paquete ya en manos del trabajador (o reactor) hasta terminar de procesarlo.
+ * El tiempo bloqueado en receive() no se mide: es tiempo sin paquetes, no coste del paquete.
+ * * * BARATO:
+ * - Un histograma por hilo y etapa (HistogramaLatencia, sin sincronizar): cada hilo escribe
+ *   solo en los suyos y se juntan al final (y en cada muestreo de Metricas).
+ * - Muestreo 1 de cada K paquetes (-Darc.etapasMuestreo), con un contador por hilo: los demás
+ *   paquetes solo pagan una comprobación. La espera en COLA ya la mide ColaTrabajo para todos.
+ * * Las lecturas en vivo juntan histogramas que otros hilos siguen escribiendo: pueden ir una
+ * muestra por detrás, pero los cubos son int y no se rompen. El reporte final se imprime con
+ * los trabajadores ya parados.
+ */
+final class EtapasServidor {
+
+    enum Etapa { ENTREGA, COLA, DECODIFICAR, BUSCAR, LOGICA, ENVIO, TOTAL }
+
+    private static final Etapa[] ETAPAS = Etapa.values();
+
+    /** Estado de un hilo: sus histogramas y si el paquete que está atendiendo se cronometra. */
+    static final class Hilo {
+        private final HistogramaLatencia[] porEtapa = new HistogramaLatencia[ETAPAS.length];
+        private long paquetes;
+        private boolean midiendo;
+        private long nsEnvios; // Envíos del paquete en curso (se restan de LOGICA).
+
+        private Hilo() {
+            for (int i = 0; i < porEtapa.length; i++) porEtapa[i] = new HistogramaLatencia();
+        }
+    }
+
+    private final int cadaK;
+    private final List<Hilo> hilos = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Hilo> delHilo = ThreadLocal.withInitial(() -> {
+        Hilo h = new Hilo();
+        hilos.add(h);
+        return h;
+    });
+    private Supplier<HistogramaLatencia> esperaCola; // null en modo reactores (no hay cola).
+    private volatile HistogramaLatencia[] instantanea = vacia();
+
+    EtapasServidor(int cadaK) {
+        this.cadaK = Math.max(1, cadaK);
+    }
+
+    /** De dónde sacar la etapa COLA (la mide ColaTrabajo para todos los paquetes). */
+    void setEsperaCola(Supplier<HistogramaLatencia> esperaCola) {
+        this.esperaCola = esperaCola;
+    }
+
+    int cadaK() { return cadaK; }
+
+    // --- CAMINO CALIENTE ---
+
+    /** Estado del hilo actual (llamar una vez por paquete y pasarlo a los demás métodos). */
+    Hilo hilo() {
+        return delHilo.get();
+    }
+
+    /**
+     * Decide si este paquete se cronometra (1 de cada K en este hilo).
+     * @return el instante de inicio, o 0 si no se mide.
+     */
+    long empezar(Hilo h) {
+        h.midiendo = (++h.paquetes % cadaK == 0);
+        if (!h.midiendo) return 0;
+        h.nsEnvios = 0;
+        return System.nanoTime();
+    }
+
+    /** Apunta la etapa que empezó en 'desde' y devuelve el instante actual (el inicio de la siguiente). */
+    long marcar(Hilo h, Etapa etapa, long desde) {
+        long ahora = System.nanoTime();
+        h.porEtapa[etapa.ordinal()].registrar(ahora - desde);
+        return ahora;
+    }
+
+    /** ¿Se está cronometrando el paquete en curso de este hilo? */
+    boolean midiendo(Hilo h) {
+        return h.midiendo;
+    }
+
+    /** Un send() del paquete en curso (cuenta en ENVIO y se descuenta de LOGICA). */
+    void envio(Hilo h, long ns) {
+        h.porEtapa[Etapa.ENVIO.ordinal()].registrar(ns);
+        h.nsEnvios += ns;
+    }
+
+    /** Cierra el paquete: LOGICA = desde 'inicioLogica' menos los envíos; TOTAL = desde 'inicio'. */
+    void terminar(Hilo h, long inicio, long inicioLogica) {
+        long ahora = System.nanoTime();
+        h.porEtapa[Etapa.LOGICA.ordinal()].registrar(Math.max(0, ahora - inicioLogica - h.nsEnvios));
+        h.porEtapa[Etapa.TOTAL.ordinal()].registrar(ahora - inicio);
+        h.midiendo = false;
+    }
+
+    // --- LECTURA ---
+
+    /** Junta los histogramas de todos los hilos (y la espera en cola). Lo llama el muestreo de Metricas. */
+    void actualizar() {
+        HistogramaLatencia[] juntos = vacia();
+        for (Hilo h : hilos) {
+            for (int i = 0; i < juntos.length; i++) juntos[i].sumar(h.porEtapa[i]);
+        }
+        if (esperaCola != null) juntos[Etapa.COLA.ordinal()].sumar(esperaCola.get());
+        instantanea = juntos;
+    }
+
+    /** Distribución de una etapa en el último actualizar(). */
+    HistogramaLatencia etapa(Etapa etapa) {
+        return instantanea[etapa.ordinal()];
+    }
+
+    /** Tabla por etapa al final de la ejecución (en microsegundos). */
+    void imprimir(String titulo) {
+        actualizar();
+        System.out.println("--- " + titulo + " (1 de cada " + cadaK + " paquetes" + (esperaCola != null ? "; COLA, todos" : "") + ") ---");
+        System.out.printf("%-12s %10s %10s %10s %10s %10s %10s%n", "Etapa", "Muestras", "Media us", "p50 us", "p99 us", "p99.9 us", "Máx us");
+        for (Etapa etapa : ETAPAS) {
+            HistogramaLatencia h = etapa(etapa);
+            if (h.total() == 0) continue;
+            System.out.printf("%-12s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", etapa, h.total(), h.media() / 1e3,
+                    h.percentil(50) / 1e3, h.percentil(99) / 1e3, h.percentil(99.9) / 1e3, h.maximo() / 1e3);
+        }
+    }
+
+    private static HistogramaLatencia[] vacia() {
+        HistogramaLatencia[] v = new HistogramaLatencia[ETAPAS.length];
+        for (int i = 0; i < v.length; i++) v[i] = new HistogramaLatencia();
+        return v;
+    }
+}
@@ -0,0 +1,283 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * CLASE: GeneradorDistribuido (Varios procesos Cliente, un solo reporte)
+ * * OBJETIVO:
+ * Para pasar de lo que aguanta una JVM repartimos los N clientes entre G procesos Cliente
+ * (-Darc.generadores=G, cada uno con su -Darc.generador=k). Antes cada proceso sacaba su propio
+ * reporte y sus filas de CSV, con medias y throughput de solo su trozo. Ahora:
+ * - Cada generador lanza su porción (N/G, los primeros N % G uno más).
+ * - La salida ya es conjunta: el servidor no manda INICIAR_SIMULACION hasta tener los N registrados.
+ * - Los generadores k > 0 mandan al líder (k = 0) sus datos EN BRUTO: por cliente, su histograma
+ *   completo, timeouts, retransmisiones y si terminó; y el tráfico por tipo de mensaje.
+ * - El líder lo junta todo con lo suyo y saca UN reporte y UNA fila de CSV por ejecución, con
+ *   las mismas cuentas que Cliente (ResultadoSimulacion).
+ * * Todos comparten un identificador de ejecución (-Darc.idEjecucion): el líder ignora los
+ * resultados que traigan otro, para no mezclar dos ejecuciones.
+ * * * RELOJES:
+ * System.nanoTime() no se puede comparar entre procesos. Los instantes viajan en "nanosegundos
+ * de época" (nanoTime + el desfase con currentTimeMillis de quien los manda) y el líder los
+ * pasa a su propio nanoTime. La precisión es la del reloj del sistema (ms), de sobra para
+ * duraciones de segundos.
+ */
+final class GeneradorDistribuido {
+
+    private static final int MAGIA = 0x41524347; // "ARCG": para no confundir una conexión cualquiera.
+
+    /** Lo que llega de un generador, ya en el reloj del líder. */
+    private record Parcial(int indice, List<EstadisticasPersona> clientes, ContadoresTrafico trafico,
+                           long tiempoInicio, long tiempoFin, long muestrasDescartadas) {}
+
+    /** Estadísticas de un cliente de otro proceso (lo mínimo para ResultadoSimulacion). */
+    private static final class ClienteRemoto implements EstadisticasPersona {
+        int idCliente, idGrupo, cantidadTimeouts, respuestasCorrectas, retransmisiones;
+        boolean finalizadoConExito, intercambioDirecto;
+        double tiempoMedioFinal;
+        long instanteRegistro;
+        HistogramaLatencia histograma;
+
+        @Override public double getTiempoMedioFinal() { return tiempoMedioFinal; }
+        @Override public boolean isFinalizadoConExito() { return finalizadoConExito; }
+        @Override public int getCantidadTimeouts() { return cantidadTimeouts; }
+        @Override public int getIdCliente() { return idCliente; }
+        @Override public int getIdGrupo() { return idGrupo; }
+        @Override public int getRespuestasCorrectas() { return respuestasCorrectas; }
+        @Override public long getInstanteRegistro() { return instanteRegistro; }
+        @Override public int getRetransmisiones() { return retransmisiones; }
+        @Override public HistogramaLatencia getHistograma() { return histograma; }
+        @Override public boolean isIntercambioDirecto() { return intercambioDirecto; }
+    }
+
+    private GeneradorDistribuido() {}
+
+    /** Clientes que lanza el generador k de G (la suma de todas las porciones es N). */
+    static int porcion(int N, int G, int k) {
+        return N / G + (k < N % G ? 1 : 0);
+    }
+
+    /** Cliente.main con -Darc.generadores > 1. */
+    static void ejecutar(String ipServidor, int puertoServidor, int N, int V, int S, CSVWriter csvWriter) {
+        int G = Configuracion.entero("arc.generadores", 1);
+        int k = Configuracion.entero("arc.generador", 0);
+        String idEjecucion = Configuracion.texto("arc.idEjecucion", "arc");
+        String[] lider = Configuracion.texto("arc.lider", "127.0.0.1:10600").split(":");
+        if (k < 0 || k >= G) {
+            System.err.println("[Generador] arc.generador debe estar entre 0 y " + (G - 1) + " (es " + k + ").");
+            return;
+        }
+        int mios = porcion(N, G, k);
+        System.out.println("[Generador " + k + "/" + G + "] Ejecución '" + idEjecucion + "': " + mios + " de " + N + " clientes.");
+
+        if (k > 0) {
+            ResultadoSimulacion propio = Cliente.ejecutar(ipServidor, puertoServidor, mios, V, S, csvWriter);
+            if (propio != null) {
+                System.out.println("[Generador " + k + "] " + propio.exitosos + "/" + mios + " clientes terminados.");
+            }
+            try {
+                enviar(lider[0], Integer.parseInt(lider[1]), idEjecucion, k, propio);
+                System.out.println("[Generador " + k + "] Resultados enviados al líder (" + lider[0] + ":" + lider[1] + ").");
+            } catch (IOException | InterruptedException e) {
+                System.err.println("[Generador " + k + "] No se pudieron enviar los resultados: " + e.getMessage());
+            }
+            return;
+        }
+
+        // LÍDER: escuchamos desde el principio (hay generadores que acaban antes que nosotros).
+        Map<Integer, Parcial> recibidos = new ConcurrentSkipListMap<>();
+        ServerSocket escucha;
+        try {
+            escucha = new ServerSocket(Integer.parseInt(lider[1]));
+        } catch (IOException e) {
+            System.err.println("[Generador 0] No se puede escuchar en el puerto " + lider[1] + ": " + e.getMessage());
+            return;
+        }
+        Thread receptor = Thread.ofPlatform().name("lider-resultados").daemon()
+                .start(() -> recibir(escucha, idEjecucion, G, recibidos));
+
+        ResultadoSimulacion propio = Cliente.ejecutar(ipServidor, puertoServidor, mios, V, S, csvWriter);
+        try {
+            receptor.join(Configuracion.entero("arc.esperaGeneradoresMs", 120_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try { escucha.close(); } catch (IOException e) {}
+
+        List<Parcial> partes = new ArrayList<>(recibidos.values());
+        if (propio != null) {
+            partes.add(0, new Parcial(0, propio.clientes, propio.trafico, propio.tiempoInicio, propio.tiempoFin, propio.muestrasDescartadas));
+        }
+        List<Integer> faltan = new ArrayList<>();
+        for (int g = 0; g < G; g++) {
+            if (g == 0 ? propio == null : !recibidos.containsKey(g)) faltan.add(g);
+        }
+        if (partes.isEmpty()) {
+            System.err.println("[Generador 0] Ningún generador terminó: no hay reporte.");
+            return;
+        }
+
+        ResultadoSimulacion conjunto = juntar(N, V, S, partes);
+        System.out.println("\n[Generador 0] Resultados de " + partes.size() + "/" + G + " generadores (ejecución '" + idEjecucion + "').");
+        if (!faltan.isEmpty()) System.out.println(" -> Sin resultados de los generadores: " + faltan);
+        conjunto.escribirCSV(csvWriter);
+        conjunto.imprimir();
+    }
+
+    private static ResultadoSimulacion juntar(int N, int V, int S, List<Parcial> partes) {
+        List<EstadisticasPersona> clientes = new ArrayList<>();
+        ContadoresTrafico trafico = new ContadoresTrafico();
+        long inicio = Long.MAX_VALUE, fin = Long.MIN_VALUE, descartadas = 0;
+        for (Parcial p : partes) {
+            clientes.addAll(p.clientes());
+            for (Mensaje.messageType tipo : Mensaje.messageType.values()) {
+                trafico.sumar(tipo, p.trafico().datagramasEnviados(tipo), p.trafico().bytesEnviados(tipo),
+                        p.trafico().datagramasRecibidos(tipo), p.trafico().bytesRecibidos(tipo));
+            }
+            inicio = Math.min(inicio, p.tiempoInicio());
+            fin = Math.max(fin, p.tiempoFin());
+            descartadas += p.muestrasDescartadas();
+        }
+        return new ResultadoSimulacion(N, V, S, clientes, trafico, inicio, fin, descartadas);
+    }
+
+    // Diferencia entre "nanosegundos de época" y System.nanoTime() en este proceso.
+    private static long desfase() {
+        return System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    }
+
+    // --- GENERADOR k > 0 ---
+
+    private static void enviar(String host, int puerto, String idEjecucion, int indice, ResultadoSimulacion r)
+            throws IOException, InterruptedException {
+        try (Socket socket = conectarConReintentos(host, puerto)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            long desfase = desfase();
+            dos.writeInt(MAGIA);
+            dos.writeUTF(idEjecucion);
+            dos.writeInt(indice);
+            if (r == null) { // No llegó a arrancar: el líder lo sabrá y lo avisará en el reporte.
+                dos.writeBoolean(false);
+                dos.flush();
+                return;
+            }
+            dos.writeBoolean(true);
+            dos.writeLong(r.tiempoInicio + desfase);
+            dos.writeLong(r.tiempoFin + desfase);
+            dos.writeLong(r.muestrasDescartadas);
+            for (Mensaje.messageType tipo : Mensaje.messageType.values()) {
+                dos.writeLong(r.trafico.datagramasEnviados(tipo));
+                dos.writeLong(r.trafico.bytesEnviados(tipo));
+                dos.writeLong(r.trafico.datagramasRecibidos(tipo));
+                dos.writeLong(r.trafico.bytesRecibidos(tipo));
+            }
+            dos.writeInt(r.clientes.size());
+            for (EstadisticasPersona p : r.clientes) {
+                dos.writeInt(p.getIdCliente());
+                dos.writeInt(p.getIdGrupo());
+                dos.writeBoolean(p.isFinalizadoConExito());
+                dos.writeBoolean(p.isIntercambioDirecto());
+                dos.writeInt(p.getCantidadTimeouts());
+                dos.writeInt(p.getRespuestasCorrectas());
+                dos.writeInt(p.getRetransmisiones());
+                dos.writeDouble(p.getTiempoMedioFinal());
+                dos.writeLong(p.getInstanteRegistro() == 0 ? 0 : p.getInstanteRegistro() + desfase);
+                p.getHistograma().escribir(dos);
+            }
+            dos.flush();
+        }
+    }
+
+    private static Socket conectarConReintentos(String host, int puerto) throws IOException, InterruptedException {
+        long limite = System.currentTimeMillis() + 30_000; // El líder puede seguir arrancando.
+        while (true) {
+            try {
+                return new Socket(host, puerto);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > limite) throw e;
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    // --- LÍDER ---
+
+    // Acepta conexiones hasta que han informado los G-1 generadores (con resultados o diciendo que
+    // no arrancaron) o hasta que cierran el socket. Cada índice cuenta una sola vez.
+    private static void recibir(ServerSocket escucha, String idEjecucion, int G, Map<Integer, Parcial> recibidos) {
+        Set<Integer> informados = new HashSet<>();
+        while (informados.size() < G - 1) {
+            try (Socket socket = escucha.accept()) {
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (dis.readInt() != MAGIA) continue;
+                String id = dis.readUTF();
+                int indice = dis.readInt();
+                if (!id.equals(idEjecucion)) {
+                    System.err.println("[Generador 0] Ignorados resultados de otra ejecución ('" + id + "', generador " + indice + ").");
+                    continue;
+                }
+                if (indice < 1 || indice >= G) {
+                    System.err.println("[Generador 0] Ignorados resultados de un generador fuera de rango (" + indice + ", hay " + G + ").");
+                    continue;
+                }
+                if (!informados.add(indice)) {
+                    System.err.println("[Generador 0] Ignorados resultados repetidos del generador " + indice + ".");
+                    continue;
+                }
+                if (!dis.readBoolean()) {
+                    System.err.println("[Generador 0] El generador " + indice + " no llegó a arrancar.");
+                    continue;
+                }
+                recibidos.put(indice, leerParcial(dis, indice));
+                InetSocketAddress origen = (InetSocketAddress) socket.getRemoteSocketAddress();
+                System.out.println("[Generador 0] Resultados del generador " + indice + " (" + origen.getAddress().getHostAddress() + ").");
+            } catch (IOException e) {
+                if (escucha.isClosed()) return;
+                System.err.println("[Generador 0] Resultados ilegibles: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Parcial leerParcial(DataInputStream dis, int indice) throws IOException {
+        long desfase = desfase();
+        long inicio = dis.readLong() - desfase;
+        long fin = dis.readLong() - desfase;
+        long descartadas = dis.readLong();
+        ContadoresTrafico trafico = new ContadoresTrafico();
+        for (Mensaje.messageType tipo : Mensaje.messageType.values()) {
+            trafico.sumar(tipo, dis.readLong(), dis.readLong(), dis.readLong(), dis.readLong());
+        }
+        int n = dis.readInt();
+        List<EstadisticasPersona> clientes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ClienteRemoto c = new ClienteRemoto();
+            c.idCliente = dis.readInt();
+            c.idGrupo = dis.readInt();
+            c.finalizadoConExito = dis.readBoolean();
+            c.intercambioDirecto = dis.readBoolean();
+            c.cantidadTimeouts = dis.readInt();
+            c.respuestasCorrectas = dis.readInt();
+            c.retransmisiones = dis.readInt();
+            c.tiempoMedioFinal = dis.readDouble();
+            long registro = dis.readLong();
+            c.instanteRegistro = (registro == 0) ? 0 : registro - desfase;
+            c.histograma = HistogramaLatencia.leer(dis);
+            clientes.add(c);
+        }
+        return new Parcial(indice, clientes, trafico, inicio, fin, descartadas);
+    }
+}
@@ -0,0 +1,142 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * CLASE: HistogramaLatencia (Todas las latencias, en memoria fija)
+ * * OBJETIVO:
+ * Guardar la distribución completa de tiempos de iteración (en nanosegundos) para poder dar
+ * percentiles (p50, p99, p99.9...) y no solo la media. Antes cada Persona truncaba a ms enteros
+ * en una lista: en loopback casi todo salía 0 ms y las colas (lo que de verdad duele) no se veían.
+ * * * CÓMO (log-lineal, estilo HdrHistogram):
+ * - Valores menores que 128 ns: un cubo por valor (exactos).
+ * - A partir de ahí, cada potencia de 2 se parte en 64 cubos iguales. El error relativo de
+ *   cualquier valor es, como mucho, 1/64 (~1,6 %), midamos 200 ns o 8 s.
+ * - Tamaño fijo (~8 KB): registrar() no reserva memoria y es una cuenta + un incremento.
+ * - Dos histogramas se suman cubo a cubo, así que se pueden juntar por grupo o por ejecución
+ *   (o viajar a otro proceso con escribir/leer y sumarse allí sin perder nada).
+ * * No es seguro para hilos: cada histograma lo escribe un único hilo (el principal de Persona
+ * o el bucle de MultiplexorPersonas) y se lee cuando ese hilo ya ha terminado.
+ */
+final class HistogramaLatencia {
+
+    private static final int BITS_SUBCUBO = 7;                       // 2^7 = 128 cubos exactos.
+    private static final int MITAD = 1 << (BITS_SUBCUBO - 1);         // 64 cubos por potencia de 2.
+    private static final int BITS_MAXIMOS = 36;                       // 2^36 ns ~ 68 s (más que cualquier timeout).
+    static final long VALOR_MAXIMO = (1L << BITS_MAXIMOS) - 1;
+    static final int NUM_CUBOS = indice(VALOR_MAXIMO) + 1;
+
+    private final int[] cuentas = new int[NUM_CUBOS];
+    private long total = 0;
+    private long suma = 0;
+    private long minimo = Long.MAX_VALUE;
+    private long maximo = 0;
+
+    /** Apunta una latencia en nanosegundos (los valores fuera de rango se recortan). */
+    void registrar(long ns) {
+        long v = Math.max(0, Math.min(ns, VALOR_MAXIMO));
+        cuentas[indice(v)]++;
+        total++;
+        suma += v;
+        if (v < minimo) minimo = v;
+        if (v > maximo) maximo = v;
+    }
+
+    /** Suma 'otro' a este histograma (para agregar por grupo o por ejecución). */
+    void sumar(HistogramaLatencia otro) {
+        for (int i = 0; i < NUM_CUBOS; i++) cuentas[i] += otro.cuentas[i];
+        total += otro.total;
+        suma += otro.suma;
+        minimo = Math.min(minimo, otro.minimo);
+        maximo = Math.max(maximo, otro.maximo);
+    }
+
+    /**
+     * Suma 'cuenta' muestras a un cubo entero (para reconstruir un histograma a partir de otro
+     * guardado solo por cubos, como HistogramaVentana). La suma y los extremos quedan con la
+     * precisión del cubo.
+     */
+    void sumarCubo(int indice, long cuenta) {
+        if (cuenta <= 0) return;
+        long valor = limiteSuperior(indice);
+        cuentas[indice] += (int) cuenta;
+        total += cuenta;
+        suma += valor * cuenta;
+        if (valor < minimo) minimo = valor;
+        if (valor > maximo) maximo = valor;
+    }
+
+    /** Formato compacto y exacto: extremos, suma y solo los cubos no vacíos ([índice] [cuenta]). */
+    void escribir(DataOutputStream dos) throws IOException {
+        dos.writeLong(total);
+        dos.writeLong(suma);
+        dos.writeLong(minimo);
+        dos.writeLong(maximo);
+        int noVacios = 0;
+        for (int c : cuentas) if (c != 0) noVacios++;
+        dos.writeInt(noVacios);
+        for (int i = 0; i < NUM_CUBOS; i++) {
+            if (cuentas[i] == 0) continue;
+            dos.writeShort(i);
+            dos.writeInt(cuentas[i]);
+        }
+    }
+
+    static HistogramaLatencia leer(DataInputStream dis) throws IOException {
+        HistogramaLatencia h = new HistogramaLatencia();
+        h.total = dis.readLong();
+        h.suma = dis.readLong();
+        h.minimo = dis.readLong();
+        h.maximo = dis.readLong();
+        int noVacios = dis.readInt();
+        for (int k = 0; k < noVacios; k++) {
+            int i = dis.readUnsignedShort();
+            if (i >= NUM_CUBOS) throw new IOException("Cubo fuera de rango: " + i);
+            h.cuentas[i] = dis.readInt();
+        }
+        return h;
+    }
+
+    long total() { return total; }
+
+    long maximo() { return maximo; }
+
+    long minimo() { return total == 0 ? 0 : minimo; }
+
+    /** Media exacta (se lleva la suma aparte, no sale de los cubos). */
+    double media() {
+        return total == 0 ? 0.0 : (double) suma / total;
+    }
+
+    /**
+     * Valor por debajo del cual queda el 'p' por ciento de las muestras (p entre 0 y 100).
+     * Devuelve el extremo superior del cubo (nunca por encima del máximo real).
+     */
+    long percentil(double p) {
+        if (total == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long acumulado = 0;
+        for (int i = 0; i < NUM_CUBOS; i++) {
+            acumulado += cuentas[i];
+            if (acumulado >= objetivo) return Math.min(limiteSuperior(i), maximo);
+        }
+        return maximo;
+    }
+
+    // --- CUBOS ---
+
+    static int indice(long v) {
+        int desplazamiento = Math.max(0, (64 - Long.numberOfLeadingZeros(v)) - BITS_SUBCUBO);
+        // Con desplazamiento 0 el valor es su propio cubo; si no, (v >>> desp) cae en [64, 128).
+        return (desplazamiento << (BITS_SUBCUBO - 1)) + (int) (v >>> desplazamiento);
+    }
+
+    private static long limiteSuperior(int indice) {
+        if (indice < 2 * MITAD) return indice;
+        int desplazamiento = (indice >> (BITS_SUBCUBO - 1)) - 1;
+        long sub = MITAD + (indice & (MITAD - 1));
+        return ((sub + 1) << desplazamiento) - 1;
+    }
+}
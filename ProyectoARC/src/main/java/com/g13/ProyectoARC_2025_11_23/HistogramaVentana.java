@@ -0,0 +1,49 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * CLASE: HistogramaVentana (Percentiles "de ahora mismo", con muchos hilos escribiendo)
+ * * OBJETIVO:
+ * HistogramaLatencia da la distribución de TODA la ejecución y solo se lee al final. Para las
+ * métricas en vivo queremos los percentiles del último intervalo (p. ej. el último segundo) mientras
+ * miles de Personas siguen registrando.
+ * * * CÓMO:
+ * Mismos cubos que HistogramaLatencia, pero en dos AtomicLongArray: en uno se escribe y el otro
+ * es la ventana anterior. rotar() (lo llama el hilo de muestreo de Metricas) cambia cuál es cuál,
+ * convierte el de la ventana que acaba en un HistogramaLatencia y lo deja a cero.
+ * registrar() es un incremento atómico de un cubo, sin locks ni objetos.
+ * * Un registro que coincida justo con la rotación puede caer en la ventana siguiente o perderse:
+ * son métricas en vivo, no el reporte final (que sigue saliendo de los histogramas de cada cliente).
+ */
+final class HistogramaVentana {
+
+    private final AtomicLongArray[] cubos = {
+            new AtomicLongArray(HistogramaLatencia.NUM_CUBOS), new AtomicLongArray(HistogramaLatencia.NUM_CUBOS) };
+    private volatile int actual = 0;
+    private volatile HistogramaLatencia ultimaVentana = new HistogramaLatencia();
+
+    /** Apunta una latencia en nanosegundos (seguro desde cualquier hilo). */
+    void registrar(long ns) {
+        long v = Math.max(0, Math.min(ns, HistogramaLatencia.VALOR_MAXIMO));
+        cubos[actual].getAndIncrement(HistogramaLatencia.indice(v));
+    }
+
+    /** Cierra la ventana en curso: a partir de aquí, ultimaVentana() devuelve lo registrado en ella. */
+    void rotar() {
+        int cerrada = actual;
+        actual = 1 - cerrada;
+        AtomicLongArray c = cubos[cerrada];
+        HistogramaLatencia h = new HistogramaLatencia();
+        for (int i = 0; i < c.length(); i++) {
+            long n = c.getAndSet(i, 0);
+            if (n > 0) h.sumarCubo(i, n);
+        }
+        ultimaVentana = h;
+    }
+
+    /** Distribución de la última ventana cerrada (no se modifica: se puede leer sin más). */
+    HistogramaLatencia ultimaVentana() {
+        return ultimaVentana;
+    }
+}
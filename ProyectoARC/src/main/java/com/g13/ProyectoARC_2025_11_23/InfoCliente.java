@@ -0,0 +1,20 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Ficha de un cliente registrado: quién es, a qué grupo pertenece y dónde escucha por UDP.
+ * * Guardamos el endpoint ya construido (InetSocketAddress) para no crear uno nuevo
+ * en cada envío.
+ */
+record InfoCliente(int idCliente, int idGrupo, InetSocketAddress endpoint) {
+
+    InfoCliente(int idCliente, int idGrupo, InetAddress direccion, int puerto) {
+        this(idCliente, idGrupo, new InetSocketAddress(direccion, puerto));
+    }
+
+    InetAddress direccion() { return endpoint.getAddress(); }
+
+    int puerto() { return endpoint.getPort(); }
+}
@@ -1,5 +1,5 @@
 package com.g13.ProyectoARC_2025_11_23;
-import java.io.Serializable; // Importación CRÍTICA: Permite convertir objetos en bytes.
+import java.util.Arrays;
 
 /**
  * CLASE: Mensaje (El Protocolo de Comunicación)
@@ -10,16 +10,12 @@ import java.io.Serializable; // Importación CRÍTICA: Permite convertir objetos
  * mismo sobre para entenderse.
  * * * CONCEPTOS CLAVE:
  * 
- * 1. Serializable: Implementar esta interfaz es obligatorio para poder enviar
- * una clase compleja (no un simple texto o número) a través de Sockets.
- * Java "congela" (serializa) el objeto en una ristra de ceros y unos, lo envía
- * por el cable, y el receptor lo "descongela" (deserializa) para reconstruir el objeto original.
+ * 1. Bytes en la red: Mensaje es solo el objeto en memoria. Quien lo convierte en bytes (y al
+ * revés) es {@link CodecMensaje}, con un formato binario fijo y compacto. Antes se usaba la
+ * serialización de Java (Serializable), pero escribía cientos de bytes por paquete y creaba
+ * varios objetos en cada envío: ya no se usa.
  */
-public class Mensaje implements Serializable {
-    
-    // El serialVersionUID se usa para verificar que el emisor y el receptor 
-    // tienen la misma versión de la clase. Si cambias el código de Mensaje, 
-    // es recomendable regenerarlo, aunque Java lo puede calcular automáticamente.
+public class Mensaje {
     
     /**
      * ENUM: Tipos de Mensaje (El "Asunto" de la carta)
@@ -57,7 +53,21 @@ public class Mensaje implements Serializable {
         
         /** El servidor autoriza: "Todos en tu grupo han terminado, ya puedes desconectarte". 
          * Evita que un cliente se vaya antes de tiempo y deje colgados a sus vecinos. */
-        GROUP_DONE;
+        GROUP_DONE,
+
+        // --- AGRUPACIÓN EN EL SERVIDOR (-Darc.agrupar=true) ---
+        // Van al final para no cambiar el ordinal (el byte de tipo en el paquete) de los anteriores.
+
+        /** Las coordenadas de todo el grupo en una iteración, en un solo datagrama (campo 'agrupadas';
+         * incluye las del propio destinatario, que las ignora). */
+        COORDENADAS_AGRUPADAS,
+
+        /** Un único ACK para todo un COORDENADAS_AGRUPADAS: "he recibido las de esta iteración". */
+        ACK_AGRUPADO,
+
+        /** (-Darc.agruparAcks=true) Todos los ACKs de una iteración para un cliente en un solo
+         * paquete: un bit por miembro del grupo que ha confirmado (campo 'mapa'). */
+        ACK_MAPA;
     }
     
     // --- DATOS DEL MENSAJE (El contenido del sobre) ---
@@ -65,13 +75,38 @@ public class Mensaje implements Serializable {
     /** Identificador del cliente implicado (generalmente quien envía el mensaje). */
     public int idCliente;
     
-    /** * La carga útil (Payload). Es un String genérico que cambia de significado según el 'type'.
-     * - Si es COMPARTIR_COORDENADAS: Contiene "(10, 20, 30)"
-     * - Si es ACK: Contiene el ID del destinatario.
-     * - Si es TIEMPOS_SIMULACION: Contiene el valor del tiempo "150.5".
+    /** Valor de idDestino cuando el mensaje no va dirigido a un cliente concreto. */
+    public static final int SIN_DESTINO = -1;
+
+    /** * Cliente al que va dirigido el mensaje (lo rellena el servidor al reenviar).
+     * Imprescindible cuando varios clientes simulados comparten el mismo socket
+     * (MultiplexorPersonas): es lo único que dice a cuál de ellos le toca el paquete.
      */
-    public String mensaje; 
+    public int idDestino = SIN_DESTINO;
     
+    /** * Solo en ACK_MAPA: bit p = el miembro en la posición p del grupo (idCliente % V) ha confirmado. */
+    public long[] mapa;
+
+    /** Unidades de posición por unidad del mundo: las coordenadas viajan en centésimas, como enteros. */
+    public static final int ESCALA = 100;
+
+    /** * Solo en COMPARTIR_COORDENADAS: posición del cliente, cuantizada (multiplicada por ESCALA).
+     * Si 'delta' es true, no es la posición sino lo que se ha movido desde su iteración anterior.
+     */
+    public int x, y, z;
+
+    /** * Coordenadas en delta (ver x, y, z): ocupan 1-2 bytes por eje en vez de 4. */
+    public boolean delta;
+
+    /** * Solo en TIEMPOS_SIMULACION: tiempo medio de iteración del cliente, en nanosegundos. */
+    public long tiempoNs;
+
+    /** * Solo en COORDENADAS_AGRUPADAS: las coordenadas de cada miembro, tal como las mandó. */
+    public Coordenada[] agrupadas;
+
+    /** Las coordenadas de un cliente dentro de un COORDENADAS_AGRUPADAS. */
+    public record Coordenada(int idCliente, boolean delta, int x, int y, int z) {}
+
     /** * Número de ciclo/iteración al que pertenece este mensaje.
      * IMPORTANTE: Sirve para no mezclar un ACK del ciclo 1 con una coordenada del ciclo 2
      * si llegan desordenados por la red UDP.
@@ -83,14 +118,13 @@ public class Mensaje implements Serializable {
     
     /**
      * Constructor de la clase Mensaje.
+     * El contenido propio de cada tipo (coordenadas, tiempo, mapa...) se rellena en sus campos.
      * @param tipoMensaje El "Asunto" (enum).
      * @param idCliente Quién lo envía.
-     * @param mensaje El dato concreto (Payload).
      * @param numIter En qué vuelta del bucle estamos (0 si no aplica).
      */
-    public Mensaje(messageType tipoMensaje, int idCliente, String mensaje, int numIter) {
+    public Mensaje(messageType tipoMensaje, int idCliente, int numIter) {
         this.idCliente = idCliente;
-        this.mensaje = mensaje;
         this.numIteracion = numIter;
         this.type = tipoMensaje;
     }
@@ -101,7 +135,17 @@ public class Mensaje implements Serializable {
      */
     @Override
     public String toString() {
-        return "Mensaje{" + "idCliente= " + idCliente + ", Mensaje= " + mensaje + ", numIteracion= " + numIteracion + ", tipoMensaje= " + type + '}';
+        return "Mensaje{" + "idCliente= " + idCliente + ", idDestino= " + idDestino + ", numIteracion= " + numIteracion + ", tipoMensaje= " + type + contenido() + '}';
+    }
+
+    private String contenido() {
+        return switch (type) {
+            case COMPARTIR_COORDENADAS -> (delta ? ", delta= (" : ", posicion= (") + x + ", " + y + ", " + z + ")";
+            case TIEMPOS_SIMULACION -> ", tiempoNs= " + tiempoNs;
+            case COORDENADAS_AGRUPADAS -> ", agrupadas= " + Arrays.toString(agrupadas);
+            case ACK_MAPA -> ", mapa= " + Arrays.toString(mapa);
+            default -> "";
+        };
     }
     
     
@@ -0,0 +1,356 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * CLASE: Metricas (Lo que pasa AHORA, visto desde fuera)
+ * * OBJETIVO:
+ * Durante una ejecución larga solo teníamos líneas sueltas por consola ("Cliente X terminó").
+ * Esta clase publica, mientras la simulación corre, las métricas que le registran Servidor y
+ * Cliente por dos vías:
+ * - JMX: un MBean "com.g13.ProyectoARC:type=Servidor" (o Cliente), visible con jconsole/VisualVM.
+ *   Con -Darc.jmx=false no se registra.
+ * - HTTP (opcional, -Darc.metricasPuerto=P): texto plano en http://127.0.0.1:P/metrics, una línea
+ *   por serie con el formato de exposición de Prometheus. El Cliente usa el puerto P+1, para que
+ *   servidor y clientes puedan ir en la misma máquina (o en la misma JVM, con SimulacionLocal).
+ * * * BARATO:
+ * Nadie escribe aquí desde el camino caliente. Las métricas son funciones que LEEN contadores
+ * que ya existen (ContadoresTrafico, ColaTrabajo, LongAdder...) y solo se evalúan cuando alguien
+ * consulta. Un hilo de muestreo (-Darc.metricasIntervaloMs, 1 s) calcula los "por segundo" de los
+ * contadores y rota las ventanas de latencia. Sin consultas, el coste es ese hilo despertando.
+ */
+final class Metricas implements DynamicMBean {
+
+    private static final Mensaje.messageType[] TIPOS = Mensaje.messageType.values();
+
+    private final String componente; // "servidor" / "cliente": prefijo de las series y tipo del MBean.
+    private final List<Serie> series = new ArrayList<>();
+    private final List<Vector> vectores = new ArrayList<>();
+    private final List<Runnable> alMuestrear = new ArrayList<>();
+
+    private final long intervaloNs = Configuracion.entero("arc.metricasIntervaloMs", 1000) * 1_000_000L;
+    private Thread muestreo;
+    private HttpServer http;
+    private ObjectName nombreJmx;
+    private volatile boolean cerradas = false;
+
+    /** Una serie escalar. Si es contador, el muestreo calcula además su ritmo por segundo. */
+    private static final class Serie {
+        final String nombre, etiqueta, valorEtiqueta, ayuda;
+        final DoubleSupplier valor;
+        final boolean contador;
+        double anterior;
+        volatile double porSegundo;
+
+        Serie(String nombre, String etiqueta, String valorEtiqueta, String ayuda, DoubleSupplier valor, boolean contador) {
+            this.nombre = nombre;
+            this.etiqueta = etiqueta;
+            this.valorEtiqueta = valorEtiqueta;
+            this.ayuda = ayuda;
+            this.valor = valor;
+            this.contador = contador;
+        }
+
+        // Nombre del atributo JMX: nombre, y el valor de la etiqueta si la hay (ACK, 3...).
+        String atributo() {
+            return (etiqueta == null) ? nombre : nombre + "_" + valorEtiqueta;
+        }
+    }
+
+    /** Una serie por posición de un array (p. ej. finalizados por grupo): un atributo long[] en JMX. */
+    private record Vector(String nombre, String etiqueta, String ayuda, Supplier<long[]> valores) {}
+
+    Metricas(String componente) {
+        this.componente = componente;
+    }
+
+    // --- REGISTRO (antes de arrancar) ---
+
+    /** Contador que solo crece: se publica su total y su ritmo por segundo. */
+    Metricas contador(String nombre, String ayuda, LongSupplier valor) {
+        series.add(new Serie(nombre, null, null, ayuda, valor::getAsLong, true));
+        return this;
+    }
+
+    /** Un contador por tipo de mensaje (etiqueta tipo="..."). */
+    Metricas contadorPorTipo(String nombre, String ayuda, ToLongFunction<Mensaje.messageType> valor) {
+        for (Mensaje.messageType tipo : TIPOS) {
+            series.add(new Serie(nombre, "tipo", tipo.name(), ayuda, () -> valor.applyAsLong(tipo), true));
+        }
+        return this;
+    }
+
+    /** Valor instantáneo (sube y baja). */
+    Metricas medida(String nombre, String ayuda, DoubleSupplier valor) {
+        series.add(new Serie(nombre, null, null, ayuda, valor, false));
+        return this;
+    }
+
+    /** Valor instantáneo con una etiqueta (p. ej. etapa="ENVIO"). Las del mismo nombre, seguidas. */
+    Metricas medida(String nombre, String etiqueta, String valorEtiqueta, String ayuda, DoubleSupplier valor) {
+        series.add(new Serie(nombre, etiqueta, valorEtiqueta, ayuda, valor, false));
+        return this;
+    }
+
+    /** Varios valores con una etiqueta numérica (su posición en el array). */
+    Metricas vector(String nombre, String etiqueta, String ayuda, Supplier<long[]> valores) {
+        vectores.add(new Vector(nombre, etiqueta, ayuda, valores));
+        return this;
+    }
+
+    /**
+     * Ritmo de un acumulado (incremento por segundo en el último intervalo, dividido entre escala).
+     * P. ej. ns ocupados de los trabajadores / (1e9 x trabajadores) = fracción de tiempo ocupados.
+     */
+    Metricas ritmo(String nombre, String ayuda, LongSupplier acumulado, DoubleSupplier escala) {
+        Ritmo r = new Ritmo();
+        r.anterior = acumulado.getAsLong();
+        r.instante = System.nanoTime();
+        alMuestrear(() -> {
+            long ahora = System.nanoTime();
+            long v = acumulado.getAsLong();
+            double e = escala.getAsDouble();
+            r.valor = (e <= 0) ? 0 : (v - r.anterior) / ((ahora - r.instante) / 1e9) / e;
+            r.anterior = v;
+            r.instante = ahora;
+        });
+        return medida(nombre, ayuda, () -> r.valor);
+    }
+
+    // Estado de un ritmo: lo escribe el hilo de muestreo, lo leen HTTP/JMX.
+    private static final class Ritmo {
+        long anterior, instante;
+        volatile double valor;
+    }
+
+    /** Tarea que el hilo de muestreo ejecuta en cada intervalo (p. ej. rotar una HistogramaVentana). */
+    Metricas alMuestrear(Runnable tarea) {
+        alMuestrear.add(tarea);
+        return this;
+    }
+
+    /** Percentiles de la última ventana (en ms) como medidas latencia_p50_ms, latencia_p99_ms... */
+    Metricas percentiles(String nombre, String ayuda, HistogramaVentana ventana) {
+        alMuestrear(ventana::rotar);
+        for (double p : new double[] {50, 90, 99, 99.9}) {
+            String sufijo = (p == 99.9) ? "p999" : "p" + (int) p;
+            medida(nombre + "_" + sufijo + "_ms", ayuda + " (" + sufijo + ")", () -> ventana.ultimaVentana().percentil(p) / 1e6);
+        }
+        medida(nombre + "_muestras", "Iteraciones medidas en el último intervalo", () -> ventana.ultimaVentana().total());
+        return this;
+    }
+
+    // --- PUBLICACIÓN ---
+
+    /**
+     * Registra el MBean, arranca el muestreo y, si hay puerto, el servidor HTTP.
+     * Un fallo aquí no debe tumbar la simulación: se avisa y se sigue sin métricas.
+     */
+    Metricas arrancar(int puertoHttp) {
+        if (Boolean.parseBoolean(Configuracion.texto("arc.jmx", "true"))) {
+            try {
+                MBeanServer servidorJmx = ManagementFactory.getPlatformMBeanServer();
+                nombreJmx = new ObjectName("com.g13.ProyectoARC:type=" + Character.toUpperCase(componente.charAt(0)) + componente.substring(1));
+                if (servidorJmx.isRegistered(nombreJmx)) servidorJmx.unregisterMBean(nombreJmx); // Ejecución anterior (Barrido).
+                servidorJmx.registerMBean(this, nombreJmx);
+            } catch (JMException e) {
+                System.err.println("[Metricas] No se pudo registrar el MBean: " + e.getMessage());
+                nombreJmx = null;
+            }
+        }
+        if (puertoHttp > 0) {
+            try {
+                http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), puertoHttp), 0);
+                http.createContext("/metrics", intercambio -> {
+                    byte[] cuerpo = texto().getBytes(StandardCharsets.UTF_8);
+                    intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    intercambio.sendResponseHeaders(200, cuerpo.length);
+                    try (OutputStream os = intercambio.getResponseBody()) {
+                        os.write(cuerpo);
+                    }
+                });
+                http.start(); // Hilo propio del HttpServer: solo trabaja cuando alguien consulta.
+                System.out.println("[Metricas] " + componente + " en http://127.0.0.1:" + puertoHttp + "/metrics");
+            } catch (IOException e) {
+                System.err.println("[Metricas] No se pudo abrir el puerto HTTP " + puertoHttp + ": " + e.getMessage());
+                http = null;
+            }
+        }
+        muestreo = Thread.ofPlatform().name("metricas-" + componente).daemon().start(this::muestrear);
+        return this;
+    }
+
+    /** Para el muestreo y el HTTP y quita el MBean (Barrido ejecuta varias veces en el mismo proceso). */
+    void cerrar() {
+        cerradas = true;
+        if (muestreo != null) muestreo.interrupt();
+        if (http != null) http.stop(0);
+        if (nombreJmx != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombreJmx);
+            } catch (JMException e) {
+                // Ya no estaba: nada que hacer.
+            }
+        }
+    }
+
+    private void muestrear() {
+        long anterior = System.nanoTime();
+        while (!cerradas) {
+            try {
+                Thread.sleep(intervaloNs / 1_000_000, (int) (intervaloNs % 1_000_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long ahora = System.nanoTime();
+            double segundos = (ahora - anterior) / 1e9;
+            anterior = ahora;
+            for (Serie s : series) {
+                if (!s.contador) continue;
+                double v = s.valor.getAsDouble();
+                s.porSegundo = (v - s.anterior) / segundos;
+                s.anterior = v;
+            }
+            for (Runnable tarea : alMuestrear) tarea.run();
+        }
+    }
+
+    // --- FORMATO DE TEXTO (HTTP) ---
+
+    /** Todas las series en el formato de exposición de Prometheus. */
+    String texto() {
+        StringBuilder sb = new StringBuilder(4096);
+        String prefijo = "arc_" + componente + "_";
+        String ultimo = null;
+        for (Serie s : series) {
+            String nombre = prefijo + s.nombre + (s.contador ? "_total" : "");
+            if (!nombre.equals(ultimo)) {
+                sb.append("# HELP ").append(nombre).append(' ').append(s.ayuda).append('\n');
+                sb.append("# TYPE ").append(nombre).append(s.contador ? " counter\n" : " gauge\n");
+                ultimo = nombre;
+            }
+            sb.append(nombre).append(etiquetas(s)).append(' ').append(formatear(s.valor.getAsDouble())).append('\n');
+        }
+        ultimo = null;
+        for (Serie s : series) { // Los ritmos, aparte: son otra familia de series.
+            if (!s.contador) continue;
+            String nombre = prefijo + s.nombre + "_por_segundo";
+            if (!nombre.equals(ultimo)) {
+                sb.append("# HELP ").append(nombre).append(' ').append(s.ayuda).append(" (por segundo, último intervalo)\n");
+                sb.append("# TYPE ").append(nombre).append(" gauge\n");
+                ultimo = nombre;
+            }
+            sb.append(nombre).append(etiquetas(s)).append(' ').append(formatear(s.porSegundo)).append('\n');
+        }
+        for (Vector v : vectores) {
+            String nombre = prefijo + v.nombre();
+            sb.append("# HELP ").append(nombre).append(' ').append(v.ayuda()).append('\n');
+            sb.append("# TYPE ").append(nombre).append(" gauge\n");
+            long[] valores = v.valores().get();
+            for (int i = 0; i < valores.length; i++) {
+                sb.append(nombre).append('{').append(v.etiqueta()).append("=\"").append(i).append("\"} ")
+                        .append(valores[i]).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String etiquetas(Serie s) {
+        return (s.etiqueta == null) ? "" : "{" + s.etiqueta + "=\"" + s.valorEtiqueta + "\"}";
+    }
+
+    private static String formatear(double v) {
+        return (v == Math.rint(v) && Math.abs(v) < 1e15) ? Long.toString((long) v) : Double.toString(v);
+    }
+
+    // --- JMX (DynamicMBean: los atributos son las series registradas) ---
+
+    // Atributo -> cómo leerlo. Se construye una vez: el registro termina antes de arrancar().
+    private Map<String, Supplier<Object>> atributos;
+
+    private Map<String, Supplier<Object>> atributos() {
+        if (atributos == null) {
+            Map<String, Supplier<Object>> mapa = new LinkedHashMap<>();
+            for (Serie s : series) {
+                mapa.put(s.atributo(), () -> s.valor.getAsDouble());
+                if (s.contador) mapa.put(s.atributo() + "_por_segundo", () -> s.porSegundo);
+            }
+            for (Vector v : vectores) mapa.put(v.nombre(), () -> v.valores().get());
+            atributos = mapa;
+        }
+        return atributos;
+    }
+
+    @Override
+    public Object getAttribute(String atributo) throws AttributeNotFoundException {
+        Supplier<Object> lector = atributos().get(atributo);
+        if (lector == null) throw new AttributeNotFoundException(atributo);
+        return lector.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] nombres) {
+        AttributeList lista = new AttributeList();
+        for (String nombre : nombres) {
+            Supplier<Object> lector = atributos().get(nombre);
+            if (lector != null) lista.add(new Attribute(nombre, lector.get()));
+        }
+        return lista;
+    }
+
+    @Override
+    public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Las métricas son de solo lectura: " + atributo.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList atributos) {
+        return new AttributeList(); // Solo lectura.
+    }
+
+    @Override
+    public Object invoke(String operacion, Object[] parametros, String[] firma) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(operacion), "Sin operaciones: " + operacion);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> info = new ArrayList<>();
+        for (Serie s : series) {
+            info.add(new MBeanAttributeInfo(s.atributo(), "java.lang.Double", s.ayuda, true, false, false));
+            if (s.contador) {
+                info.add(new MBeanAttributeInfo(s.atributo() + "_por_segundo", "java.lang.Double",
+                        s.ayuda + " (por segundo)", true, false, false));
+            }
+        }
+        for (Vector v : vectores) {
+            info.add(new MBeanAttributeInfo(v.nombre(), "[J", v.ayuda(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Métricas en vivo del " + componente,
+                info.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
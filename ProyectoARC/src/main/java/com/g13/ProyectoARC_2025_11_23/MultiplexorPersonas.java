@@ -0,0 +1,348 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * CLASE: MultiplexorPersonas (Muchos clientes, pocos sockets, un solo hilo)
+ * * OBJETIVO:
+ * Simular miles de clientes sin crear un hilo (ni un socket) por cliente.
+ * Con Persona, N clientes son 2N hilos del sistema y N sockets UDP: a partir de unos pocos
+ * miles, el que no da abasto es el generador de carga, no el servidor.
+ * * * CÓMO FUNCIONA:
+ * - Abrimos unos pocos DatagramChannel (por defecto 4) y repartimos los clientes entre ellos.
+ *   Varios clientes comparten así la misma IP y puerto.
+ * - Un único hilo espera en un Selector a que llegue algo a cualquiera de los canales.
+ * - Cada paquete trae 'idDestino' (lo rellena el servidor), que nos dice a cuál de nuestros
+ *   clientes simulados va dirigido. Cada cliente es una pequeña máquina de estados
+ *   (iteración actual, ACKs recibidos, cronómetro) en vez de un hilo bloqueado.
+ * * Sigue exactamente el mismo protocolo que Persona: registro TCP (en lote, una sola conexión), INICIAR_SIMULACION,
+ * S iteraciones de COMPARTIR_COORDENADAS + (V-1) ACKs, TIEMPOS_SIMULACION y GROUP_DONE.
+ * Con intercambio directo, las coordenadas y los ACKs van al endpoint del vecino (que puede ser
+ * uno de nuestros propios sockets) con su idDestino ya puesto, y se demultiplexan igual.
+ */
+public class MultiplexorPersonas {
+
+    private static final long INTERVALO_REVISION_MS = 100; // Cada cuánto miramos si alguien ha caducado.
+    private static final int TAM_BUFER_SOCKET = 4 * 1024 * 1024;
+
+    // Mismo criterio que Persona.esperarAcks: si no están todos los ACKs a tiempo, seguimos (con timeout).
+    private final long timeoutAcksNs = Configuracion.entero("arc.timeoutAcksMs", 10_000) * 1_000_000L;
+
+    // Capa de fiabilidad opcional, igual que en Persona (-Darc.fiable=true).
+    private final boolean fiable = Boolean.parseBoolean(Configuracion.texto("arc.fiable", "false"));
+
+    private final String ipServidor;
+    private final int puertoServidor;
+    private final int numClientes, V_vecinos, S_iteraciones, numCanales;
+
+    private final List<ClienteSimulado> clientes = new ArrayList<>();
+    private ClienteSimulado[] porId; // idCliente (asignado por el servidor) -> cliente simulado.
+    private int clientesTerminados = 0;
+    private ContadoresTrafico trafico = new ContadoresTrafico();
+    private DetalleIteraciones detalle; // Salida por iteración (-Darc.detalle=true). null = desactivada.
+    private ProgresoClientes progreso; // Métricas en vivo del Cliente. null = no se publica.
+
+    // Un único hilo usa estos buffers: basta con uno de cada.
+    private final ByteBuffer buferRecepcion = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+    private final ByteBuffer buferEnvio = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+
+    public MultiplexorPersonas(String ip, int puerto, int numClientes, int v, int s, int numCanales) {
+        this.ipServidor = ip;
+        this.puertoServidor = puerto;
+        this.numClientes = numClientes;
+        this.V_vecinos = v;
+        this.S_iteraciones = s;
+        this.numCanales = Math.max(1, Math.min(numCanales, numClientes));
+    }
+
+    /**
+     * Registra a todos los clientes y ejecuta la simulación completa.
+     * Bloquea hasta que todos reciben GROUP_DONE.
+     */
+    public void ejecutar() throws IOException {
+        InetAddress direccionServidor = InetAddress.getByName(ipServidor);
+        DatagramChannel[] canales = new DatagramChannel[numCanales];
+        try (Selector selector = Selector.open()) {
+            // 1. PREPARACIÓN UDP: pocos canales, no bloqueantes, todos en el mismo Selector.
+            for (int k = 0; k < numCanales; k++) {
+                canales[k] = DatagramChannel.open();
+                canales[k].setOption(StandardSocketOptions.SO_RCVBUF, TAM_BUFER_SOCKET);
+                canales[k].setOption(StandardSocketOptions.SO_SNDBUF, TAM_BUFER_SOCKET);
+                canales[k].bind(new InetSocketAddress(0));
+                canales[k].configureBlocking(false);
+                canales[k].register(selector, SelectionKey.OP_READ);
+            }
+
+            // 2. FASE 1: REGISTRO (TCP), todos los clientes simulados en un único lote.
+            int[] puertos = new int[numClientes];
+            for (int i = 0; i < numClientes; i++) {
+                puertos[i] = ((InetSocketAddress) canales[i % numCanales].getLocalAddress()).getPort();
+            }
+            List<ProtocoloRegistro.Asignacion> asignaciones =
+                    ProtocoloRegistro.registrarLote(direccionServidor, puertoServidor, puertos);
+            long instanteRegistro = System.nanoTime();
+            int maxId = 0;
+            for (int i = 0; i < numClientes; i++) {
+                ProtocoloRegistro.Asignacion a = asignaciones.get(i);
+                ClienteSimulado c = new ClienteSimulado(a.idCliente(), a.idGrupo(), canales[i % numCanales],
+                        new InetSocketAddress(direccionServidor, a.puertoUDPServidor()), a.vecinos(), V_vecinos, instanteRegistro);
+                clientes.add(c);
+                maxId = Math.max(maxId, c.idCliente);
+                if (progreso != null) progreso.clienteArrancado();
+            }
+            porId = new ClienteSimulado[maxId + 1];
+            for (ClienteSimulado c : clientes) porId[c.idCliente] = c;
+            System.out.println("[Multiplexor] " + numClientes + " clientes registrados sobre " + numCanales + " sockets.");
+
+            // 3. FASE 2 y 3: BUCLE DE EVENTOS
+            while (clientesTerminados < numClientes) {
+                // En modo fiable revisamos más a menudo: las retransmisiones van en escala de RTO, no de segundos.
+                selector.select(fiable ? EstimadorRTO.RTO_MINIMO_NS / 2_000_000 : INTERVALO_REVISION_MS);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    DatagramChannel canal = (DatagramChannel) it.next().channel();
+                    it.remove();
+                    // Vaciamos el canal entero: puede haber muchos datagramas esperando.
+                    buferRecepcion.clear();
+                    while (canal.receive(buferRecepcion) != null) {
+                        buferRecepcion.flip();
+                        try {
+                            Mensaje msj = CodecMensaje.decodificar(buferRecepcion);
+                            trafico.recibido(msj.type, buferRecepcion.limit());
+                            atender(msj);
+                        } catch (IOException e) {
+                            System.err.println("[Multiplexor] Paquete inválido descartado: " + e.getMessage());
+                        }
+                        buferRecepcion.clear();
+                    }
+                }
+                revisarTimeouts(System.nanoTime());
+            }
+        } finally {
+            for (DatagramChannel canal : canales) {
+                if (canal != null) canal.close();
+            }
+        }
+    }
+
+    void setDetalle(DetalleIteraciones detalle) {
+        this.detalle = detalle;
+    }
+
+    /** Usa estos contadores en vez de los propios (Cliente los publica en vivo). */
+    void setTrafico(ContadoresTrafico trafico) {
+        this.trafico = trafico;
+    }
+
+    void setProgreso(ProgresoClientes progreso) {
+        this.progreso = progreso;
+    }
+
+    public List<EstadisticasPersona> getPersonas() {
+        return new ArrayList<>(clientes);
+    }
+
+    /**
+     * Demultiplexa por idDestino y avanza la máquina de estados del cliente correspondiente.
+     */
+    private void atender(Mensaje msj) throws IOException {
+        ClienteSimulado c = (msj.idDestino >= 0 && msj.idDestino < porId.length) ? porId[msj.idDestino] : null;
+        if (c == null) return; // No es para ninguno de los nuestros.
+
+        switch (msj.type) {
+            case INICIAR_SIMULACION:
+                if (c.iteracion == 0) {
+                    c.iteracion = 1;
+                    enviarCoordenadas(c);
+                }
+                break;
+
+            case COMPARTIR_COORDENADAS:
+                // Igual que Persona: respondemos al momento con un ACK indicando a quién confirmamos.
+                Mensaje msjAck = new Mensaje(Mensaje.messageType.ACK, c.idCliente, msj.numIteracion);
+                msjAck.idDestino = msj.idCliente;
+                enviar(c, msjAck, (c.vecinos == null) ? c.servidorUDP : c.vecinos[Math.floorMod(msj.idCliente, V_vecinos)]);
+                break;
+
+            case COORDENADAS_AGRUPADAS:
+                // Todo el grupo en un paquete (servidor con arc.agrupar): se confirma con un único ACK.
+                enviar(c, new Mensaje(Mensaje.messageType.ACK_AGRUPADO, c.idCliente, msj.numIteracion));
+                break;
+
+            case ACK:
+                // Solo cuentan los ACKs de la iteración en curso y una vez por vecino
+                // (los tardíos de una anterior y los duplicados se ignoran).
+                if (!c.enviadoFinal && c.acks.registrar(msj.numIteracion, msj.idCliente)) {
+                    completarIteracion(c, System.nanoTime(), false);
+                }
+                break;
+
+            case ACK_MAPA:
+                // Servidor con arc.agruparAcks: todos los que han confirmado, en un bitmap.
+                if (!c.enviadoFinal && c.acks.registrarMapa(msj.numIteracion, msj.mapa)) {
+                    completarIteracion(c, System.nanoTime(), false);
+                }
+                break;
+
+            case GROUP_DONE:
+                if (c.enviadoFinal && !c.finalizadoConExito) {
+                    c.finalizadoConExito = true;
+                    clientesTerminados++;
+                    if (progreso != null) progreso.clienteTerminado();
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void enviarCoordenadas(ClienteSimulado c) throws IOException {
+        c.acks.iniciar(c.iteracion);
+        if (progreso != null) progreso.iteracionIniciada();
+        c.inicioIteracion = System.nanoTime(); // Cronómetro ON
+        c.msjCoords = c.trayectoria.siguiente(c.idCliente, c.iteracion);
+        c.retransmitida = false;
+        c.esperaRto = c.rto.rtoNs();
+        c.proximaRetransmision = c.inicioIteracion + c.esperaRto;
+        if (c.vecinos == null) {
+            enviar(c, c.msjCoords);
+        } else {
+            // Intercambio directo: una copia a cada vecino, con su idDestino.
+            int miPosicion = Math.floorMod(c.idCliente, V_vecinos);
+            for (int pos = 0; pos < c.vecinos.length; pos++) {
+                if (pos == miPosicion) continue;
+                c.msjCoords.idDestino = c.idGrupo * V_vecinos + pos;
+                enviar(c, c.msjCoords, c.vecinos[pos]);
+            }
+            c.msjCoords.idDestino = Mensaje.SIN_DESTINO;
+        }
+        if (V_vecinos <= 1) completarIteracion(c, System.nanoTime(), false); // Sin vecinos no hay ACKs que esperar.
+    }
+
+    private void completarIteracion(ClienteSimulado c, long ahora, boolean porTimeout) throws IOException {
+        if (porTimeout) c.cantidadTimeouts++;
+        else if (fiable && !c.retransmitida) c.rto.muestra(ahora - c.inicioIteracion); // Karn: sin retransmisión.
+        c.histograma.registrar(ahora - c.inicioIteracion); // Cronómetro OFF (en ns, como Persona).
+        if (progreso != null) progreso.iteracionTerminada(ahora - c.inicioIteracion, porTimeout);
+        if (detalle != null) detalle.registrar(c.idCliente, c.idGrupo, c.iteracion, ahora - c.inicioIteracion);
+        c.respuestasCorrectas++;
+
+        if (c.iteracion < S_iteraciones) {
+            c.iteracion++;
+            enviarCoordenadas(c);
+        } else {
+            c.tiempoMedioFinal = c.histograma.media() / 1_000_000.0;
+            c.enviadoFinal = true;
+            Mensaje msjFinal = new Mensaje(Mensaje.messageType.TIEMPOS_SIMULACION, c.idCliente, S_iteraciones);
+            msjFinal.tiempoNs = Math.round(c.histograma.media());
+            enviar(c, msjFinal);
+        }
+    }
+
+    private void revisarTimeouts(long ahora) throws IOException {
+        for (ClienteSimulado c : clientes) {
+            if (c.iteracion == 0 || c.enviadoFinal) continue;
+            if (ahora - c.inicioIteracion > timeoutAcksNs) {
+                completarIteracion(c, ahora, true);
+            } else if (fiable && ahora - c.proximaRetransmision >= 0) {
+                retransmitir(c, ahora);
+            }
+        }
+    }
+
+    /**
+     * Reenvía las coordenadas de la iteración en curso solo a los vecinos que no han confirmado
+     * (mismo mecanismo que Persona.esperarAcks en modo fiable) y dobla la espera.
+     */
+    private void retransmitir(ClienteSimulado c, long ahora) throws IOException {
+        for (int pos : c.acks.faltantes(c.iteracion, Math.floorMod(c.idCliente, V_vecinos))) {
+            c.msjCoords.idDestino = c.idGrupo * V_vecinos + pos;
+            enviar(c, c.msjCoords, (c.vecinos == null) ? c.servidorUDP : c.vecinos[pos]);
+            c.retransmisiones++;
+            if (progreso != null) progreso.retransmision();
+        }
+        c.retransmitida = true;
+        c.esperaRto = c.rto.backoff();
+        c.proximaRetransmision = ahora + c.esperaRto;
+    }
+
+    private void enviar(ClienteSimulado c, Mensaje msj) throws IOException {
+        enviar(c, msj, c.servidorUDP);
+    }
+
+    private void enviar(ClienteSimulado c, Mensaje msj, InetSocketAddress destino) throws IOException {
+        buferEnvio.clear();
+        CodecMensaje.codificar(msj, buferEnvio);
+        buferEnvio.flip();
+        // Canal no bloqueante: si el buffer del socket estuviera lleno, send devuelve 0 y el
+        // datagrama se pierde (como cualquier pérdida UDP; lo cubre el timeout de la iteración).
+        // Ese no ha salido: se cuenta aparte, no como enviado.
+        int bytes = c.canal.send(buferEnvio, destino);
+        if (bytes > 0) trafico.enviado(msj.type, bytes);
+        else trafico.descartadoLocal(msj.type);
+    }
+
+    /**
+     * Estado de un cliente simulado. Lo toca únicamente el hilo del bucle de eventos.
+     */
+    private static final class ClienteSimulado implements EstadisticasPersona {
+        final int idCliente, idGrupo;
+        final DatagramChannel canal;
+        final InetSocketAddress servidorUDP;
+        final InetSocketAddress[] vecinos; // Intercambio directo (índice = posición en el grupo). null = vía servidor.
+
+        int iteracion = 0; // 0 = esperando INICIAR_SIMULACION.
+        final SeguimientoAcks acks;
+        long inicioIteracion;
+        final Trayectoria trayectoria = new Trayectoria(); // Su posición (la de cada COMPARTIR_COORDENADAS).
+
+        // Capa fiable: lo enviado en esta iteración (para reenviarlo) y cuándo toca reenviar.
+        final EstimadorRTO rto = new EstimadorRTO();
+        Mensaje msjCoords;
+        boolean retransmitida;
+        long esperaRto, proximaRetransmision;
+        final HistogramaLatencia histograma = new HistogramaLatencia();
+        boolean enviadoFinal = false;
+
+        // --- ESTADÍSTICAS (las mismas que Persona) ---
+        double tiempoMedioFinal = 0.0;
+        boolean finalizadoConExito = false;
+        int cantidadTimeouts = 0;
+        int respuestasCorrectas = 0;
+        int retransmisiones = 0;
+        final long instanteRegistro;
+
+        ClienteSimulado(int idCliente, int idGrupo, DatagramChannel canal, InetSocketAddress servidorUDP,
+                        InetSocketAddress[] vecinos, int V, long instanteRegistro) {
+            this.acks = new SeguimientoAcks(V, 1);
+            this.idCliente = idCliente;
+            this.idGrupo = idGrupo;
+            this.canal = canal;
+            this.servidorUDP = servidorUDP;
+            this.vecinos = vecinos;
+            this.instanteRegistro = instanteRegistro;
+        }
+
+        @Override public double getTiempoMedioFinal() { return tiempoMedioFinal; }
+        @Override public boolean isFinalizadoConExito() { return finalizadoConExito; }
+        @Override public int getCantidadTimeouts() { return cantidadTimeouts; }
+        @Override public int getIdCliente() { return idCliente; }
+        @Override public int getIdGrupo() { return idGrupo; }
+        @Override public int getRespuestasCorrectas() { return respuestasCorrectas; }
+        @Override public long getInstanteRegistro() { return instanteRegistro; }
+        @Override public int getRetransmisiones() { return retransmisiones; }
+        @Override public HistogramaLatencia getHistograma() { return histograma; }
+        @Override public boolean isIntercambioDirecto() { return vecinos != null; }
+    }
+}
@@ -1,20 +1,12 @@
 package com.g13.ProyectoARC_2025_11_23;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ThreadLocalRandom;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * CLASE: Persona (El Cliente Inteligente)
@@ -23,36 +15,85 @@ import java.util.concurrent.ThreadLocalRandom;
  * * LÓGICA HÍBRIDA:
  * Implementa la lógica de conectarse primero por TCP (para asegurar el registro) y luego
  * conmutar a UDP (para la velocidad de la simulación).
+ * * Si el servidor trabaja con intercambio directo, el registro trae también los endpoints de
+ * los vecinos y las coordenadas (y los ACKs) van a ellos sin pasar por el servidor.
+ * * BUCLE ABIERTO (-Darc.tasaHz=R):
+ * Por defecto cada iteración espera a sus ACKs antes de mandar la siguiente (bucle cerrado): si
+ * el servidor se atasca, los clientes simplemente mandan menos y la latencia medida esconde la
+ * cola que vería un usuario real. Con una tasa fija, las coordenadas salen cada 1/R segundos
+ * pase lo que pase, con varias iteraciones en vuelo (se distinguen por numIteracion), y la
+ * latencia se mide desde el instante en que TOCABA enviar, no desde el envío real
+ * (corrección de la "omisión coordinada"): si el emisor va con retraso, ese retraso cuenta.
+ * En bucle abierto no hay retransmisiones (arc.fiable): lo que no llega a tiempo es un timeout.
  */
-public class Persona extends Thread {
+public class Persona extends Thread implements EstadisticasPersona {
     // --- DATOS DE CONEXIÓN ---
     private String ipServidor;
     private int puertoServidor;
+    private int puertoUDPServidor; // Lo decide el servidor en el registro (en modo reactores cambia por grupo).
     private int V_vecinos, S_iteraciones;
 
     // --- DATOS DEL CLIENTE ---
     private int idCliente, idGrupo; // Asignados por el servidor.
-    private DatagramSocket socketUDP; // El "buzón" para enviar/recibir paquetes rápidos.
+    private Transporte canalUDP; // El "buzón" para enviar/recibir paquetes rápidos (UDP o en memoria).
+    private InetSocketAddress servidorUDP; // Dónde escucha el servidor por UDP (nos lo dice en el registro).
+    private InetSocketAddress[] vecinos; // Intercambio directo: endpoint de cada miembro del grupo (null = vía servidor).
     
     // --- SINCRONIZACIÓN ---
-    // Cola "Thread-Safe" para recibir los ACKs del hilo de escucha sin bloqueos.
-    private final ConcurrentLinkedQueue<Mensaje> acksRecibidos = new ConcurrentLinkedQueue<>();
+    // Qué vecinos han confirmado cada iteración. El hilo de escucha apunta los ACKs y el
+    // hilo principal se despierta en cuanto llega el último (sin sondear cada 10 ms).
+    private final SeguimientoAcks seguimientoAcks;
+
+    // Tiempo máximo de espera de los ACKs de una iteración (-Darc.timeoutAcksMs, 10 s por defecto).
+    private final long timeoutAcksMs = Configuracion.entero("arc.timeoutAcksMs", 10_000);
+
+    // Capa de fiabilidad opcional (-Darc.fiable=true): retransmisión selectiva con RTO adaptativo
+    // en vez de esperar el timeout completo cuando se pierde un datagrama.
+    private final boolean fiable = Boolean.parseBoolean(Configuracion.texto("arc.fiable", "false"));
+    private final EstimadorRTO estimadorRTO = new EstimadorRTO();
+
+    // Bucle abierto (-Darc.tasaHz, iteraciones por segundo y cliente). 0 = bucle cerrado.
+    private final double tasaHz = Double.parseDouble(Configuracion.texto("arc.tasaHz", "0"));
+    private final int ventana; // Iteraciones que pueden estar en vuelo a la vez (1 en bucle cerrado).
     
     // "Volatile" asegura que si el hilo de escucha cambia esta variable, el hilo principal
     // se entere inmediatamente (evita caché de CPU). Es el "interruptor de apagado".
     private volatile boolean grupoHaTerminado = false;
 
+    // Fábrica para el hilo de escucha. Por defecto hilos normales; con el motor "virtual"
+    // de Cliente, hilos virtuales (así 10.000 Personas no son 20.000 hilos del sistema).
+    private ThreadFactory fabricaHilos = Thread::new;
+
+    // Contadores de tráfico. Cliente pasa los mismos a todas sus Personas (setTrafico) para
+    // tener el total del proceso; LongAdder aguanta bien que miles de hilos sumen a la vez.
+    private ContadoresTrafico trafico = new ContadoresTrafico();
+
+    // Salida por iteración (-Darc.detalle=true). null = desactivada.
+    private DetalleIteraciones detalle;
+
+    // Progreso en vivo para las métricas del Cliente (compartido, como trafico). null = no se publica.
+    private ProgresoClientes progreso;
+
     // --- ESTADÍSTICAS (Para el reporte final) ---
     private double tiempoMedioFinal = 0.0;
     private boolean finalizadoConExito = false;
     private int cantidadTimeouts = 0;
     private int respuestasCorrectas = 0;
+    private int retransmisiones = 0;
+    private final HistogramaLatencia histograma = new HistogramaLatencia(); // Tiempo de cada iteración (ns).
+    private long instanteRegistro = 0; // System.nanoTime() al recibir la asignación del servidor.
+
+    // Posición del cliente: la que se manda en cada COMPARTIR_COORDENADAS.
+    private final Trayectoria trayectoria = new Trayectoria();
 
     public Persona(String ip, int puerto, int v, int s) {
         this.ipServidor = ip;
         this.puertoServidor = puerto;
         this.V_vecinos = v;
         this.S_iteraciones = s;
+        // En bucle abierto caben en vuelo todas las iteraciones que se envían durante un timeout.
+        this.ventana = (tasaHz > 0) ? Math.max(1, (int) Math.min(s, Math.ceil(tasaHz * timeoutAcksMs / 1000.0) + 1)) : 1;
+        this.seguimientoAcks = new SeguimientoAcks(v, ventana);
     }
 
     /**
@@ -60,19 +101,22 @@ public class Persona extends Thread {
      */
     @Override
     public void run() {
+        if (progreso != null) progreso.clienteArrancado();
         try {
             // 1. PREPARACIÓN UDP
             // Abrimos el socket UDP primero para saber en qué puerto local estamos escuchando.
             // Necesitamos decirle este puerto al servidor durante el registro TCP.
-            socketUDP = new DatagramSocket();
-            //socketUDP.setSoTimeout(300000); // Si no llega nada en 5 minutos, cortamos.
-            
-            int miPuertoUDP = socketUDP.getLocalPort();
             InetAddress direccionServidor = InetAddress.getByName(ipServidor);
+            if (canalUDP == null) {
+                canalUDP = abrirCanalUDP();
+                int miPuertoUDP = canalUDP.direccionLocal().getPort();
 
-            // 2. FASE 1: REGISTRO (TCP)
-            // Llamamos a un método auxiliar que gestiona la conexión fiable TCP.
-            registrarPorTCP(direccionServidor, miPuertoUDP);
+                // 2. FASE 1: REGISTRO (TCP)
+                // Llamamos a un método auxiliar que gestiona la conexión fiable TCP.
+                // (Si Cliente ya nos registró en lote con asignarRegistro, nos lo saltamos.)
+                registrarPorTCP(direccionServidor, miPuertoUDP);
+            }
+            servidorUDP = new InetSocketAddress(direccionServidor, puertoUDPServidor);
             
             // 3. FASE DE ESPERA (UDP)
             // Ahora esperamos la señal de "Pistoletazo de Salida" por UDP.
@@ -81,58 +125,22 @@ public class Persona extends Thread {
             // 4. INICIO DEL HILO DE ESCUCHA (SECUNDARIO)
             // Lanzamos un segundo hilo cuya ÚNICA misión es escuchar mensajes entrantes (ACKs, Coordenadas).
             // Esto permite al hilo principal dedicarse a enviar y medir tiempos sin bloquearse leyendo.
-            Thread hiloEscucha = new Thread(this::escucharAlServidor);
+            Thread hiloEscucha = fabricaHilos.newThread(this::escucharAlServidor);
             hiloEscucha.start();
 
             // 5. FASE 2: SIMULACIÓN (BUCLE PRINCIPAL)
-            List<Long> tiemposDeRespuesta = new ArrayList<>();
-            
-            for (int i = 0; i < S_iteraciones; i++) {
-                acksRecibidos.clear(); // Limpiamos la bandeja de entrada para el nuevo ciclo.
-
-                // Generamos coordenadas aleatorias (simulación de movimiento).
-                String coordsStr = "(" + ThreadLocalRandom.current().nextInt(0, 101) + ")"; 
-                
-                // Creamos el mensaje.
-                Mensaje msjCoords = new Mensaje(
-                    Mensaje.messageType.COMPARTIR_COORDENADAS,
-                    idCliente,
-                    coordsStr,
-                    (i + 1)
-                );
-
-                // Serializamos (convertimos a bytes) y enviamos.
-                byte[] datosEnvio = serializarMensaje(msjCoords);
-                DatagramPacket paqueteEnvio = new DatagramPacket(datosEnvio, datosEnvio.length, direccionServidor, puertoServidor);
-                
-                long tiempoInicio = System.nanoTime(); // Cronómetro ON
-                socketUDP.send(paqueteEnvio);
-
-                // Esperamos a tener los ACKs de todos los vecinos (V-1).
-                esperarAcks();
-
-                long tiempoFin = System.nanoTime(); // Cronómetro OFF
-                long duracion = (tiempoFin - tiempoInicio) / 1_000_000; // Convertir a ms.
-                tiemposDeRespuesta.add(duracion);
-                respuestasCorrectas++;
-
-            }
+            if (tasaHz > 0) iterarBucleAbierto();
+            else iterarBucleCerrado();
 
             // 6. FASE 3: FINALIZACIÓN Y REPORTE
-            // Calculamos la media de todos los ciclos.
-            double tiempoPromedio = tiemposDeRespuesta.stream().mapToLong(val -> val).average().orElse(0.0);
-            this.tiempoMedioFinal = tiempoPromedio;
+            // Calculamos la media de todos los ciclos (en ms, con decimales).
+            this.tiempoMedioFinal = histograma.media() / 1_000_000.0;
             
-            // Enviamos nuestro resultado final al servidor.
-            Mensaje msjFinalizado = new Mensaje(
-                Mensaje.messageType.TIEMPOS_SIMULACION,
-                idCliente,
-                String.valueOf(tiempoPromedio),
-                S_iteraciones
-            );
-
-            byte[] datosFinales = serializarMensaje(msjFinalizado);
-            socketUDP.send(new DatagramPacket(datosFinales, datosFinales.length, direccionServidor, puertoServidor));
+            // Enviamos nuestro resultado final al servidor (la media en ns, como entero).
+            Mensaje msjFinalizado = new Mensaje(Mensaje.messageType.TIEMPOS_SIMULACION, idCliente, S_iteraciones);
+            msjFinalizado.tiempoNs = Math.round(histograma.media());
+
+            trafico.enviado(msjFinalizado.type, canalUDP.enviar(serializarMensaje(msjFinalizado), servidorUDP));
             
             // --- ESPERA ACTIVA DE CIERRE DE GRUPO ---
             // No podemos desconectarnos aún. Debemos esperar a que el servidor nos diga (GROUP_DONE)
@@ -157,9 +165,116 @@ public class Persona extends Thread {
             System.err.println("[Cliente " + idCliente + "] Error Fatal: " + e.getMessage());
             this.finalizadoConExito = false;
         } finally {
-            if (socketUDP != null && !socketUDP.isClosed()) {
-                socketUDP.close();
+            if (canalUDP != null) {
+                try { canalUDP.close(); } catch (IOException e) {}
             }
+            if (progreso != null) progreso.clienteTerminado();
+        }
+    }
+
+    /**
+     * Bucle cerrado (por defecto): cada iteración manda sus coordenadas y espera los ACKs de
+     * todos sus vecinos (o el timeout) antes de empezar la siguiente.
+     */
+    private void iterarBucleCerrado() throws IOException {
+        for (int i = 0; i < S_iteraciones; i++) {
+            // Empezamos a seguir esta iteración: a partir de aquí solo cuentan sus ACKs.
+            seguimientoAcks.iniciar(i + 1);
+            if (progreso != null) progreso.iteracionIniciada();
+
+            // Nos movemos y creamos el mensaje con la nueva posición (o lo que nos hemos movido).
+            Mensaje msjCoords = trayectoria.siguiente(idCliente, i + 1);
+
+            // Serializamos (convertimos a bytes) en el buffer de este hilo.
+            ByteBuffer datosEnvio = serializarMensaje(msjCoords);
+            
+            long tiempoInicio = System.nanoTime(); // Cronómetro ON
+            enviarCoordenadas(datosEnvio);
+
+            // Esperamos a tener los ACKs de todos los vecinos (V-1).
+            int timeoutsAntes = cantidadTimeouts;
+            esperarAcks(msjCoords, tiempoInicio);
+
+            long tiempoFin = System.nanoTime(); // Cronómetro OFF
+            histograma.registrar(tiempoFin - tiempoInicio); // En ns, sin truncar.
+            if (progreso != null) progreso.iteracionTerminada(tiempoFin - tiempoInicio, cantidadTimeouts > timeoutsAntes);
+            if (detalle != null) detalle.registrar(idCliente, idGrupo, i + 1, tiempoFin - tiempoInicio);
+            respuestasCorrectas++;
+        }
+    }
+
+    /**
+     * Bucle abierto: la iteración i sale en inicio + (i-1)/R, haya llegado o no lo anterior.
+     * Cada iteración se cierra cuando tiene sus V-1 ACKs (latencia = ACK que la completó menos el
+     * instante previsto) o cuando vence su timeout (cuenta como timeout, con latencia = timeout).
+     * Todo lo que se apunta (histograma, progreso, detalle) lo apunta este hilo, en orden.
+     */
+    private void iterarBucleAbierto() throws IOException {
+        long periodo = Math.round(1_000_000_000.0 / tasaHz);
+        long timeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutAcksMs);
+        long[] previsto = new long[ventana]; // Instante previsto de cada iteración en vuelo (mismo hueco que SeguimientoAcks).
+        int masAntigua = 1; // La primera iteración aún sin cerrar.
+
+        long inicio = System.nanoTime();
+        for (int i = 1; i <= S_iteraciones; i++) {
+            long instante = inicio + (i - 1) * periodo;
+            for (long espera; (espera = instante - System.nanoTime()) > 0; ) LockSupport.parkNanos(espera);
+
+            // Antes de reutilizar su hueco, la iteración i - ventana tiene que estar cerrada.
+            masAntigua = cerrarIteraciones(masAntigua, i, i - ventana, previsto, timeoutNs);
+
+            seguimientoAcks.iniciar(i);
+            previsto[Math.floorMod(i, ventana)] = instante;
+            if (progreso != null) progreso.iteracionIniciada();
+            enviarCoordenadas(serializarMensaje(trayectoria.siguiente(idCliente, i)));
+        }
+
+        // Ya no sale nada más: esperamos a las que quedan en vuelo (cada una, hasta su timeout).
+        while (masAntigua <= S_iteraciones) {
+            long restante = previsto[Math.floorMod(masAntigua, ventana)] + timeoutNs - System.nanoTime();
+            seguimientoAcks.esperar(masAntigua, Math.max(0, restante), TimeUnit.NANOSECONDS);
+            masAntigua = cerrarIteraciones(masAntigua, S_iteraciones + 1, masAntigua, previsto, timeoutNs);
+        }
+    }
+
+    /**
+     * Cierra, en orden, las iteraciones de [desde, hasta) que ya están completas o han vencido
+     * (y todas las que sean <= 'forzarHasta', como timeout si les faltan ACKs).
+     * @return la primera iteración que sigue abierta.
+     */
+    private int cerrarIteraciones(int desde, int hasta, int forzarHasta, long[] previsto, long timeoutNs) {
+        int j = desde;
+        for (; j < hasta; j++) {
+            long instante = previsto[Math.floorMod(j, previsto.length)];
+            long completada = seguimientoAcks.instanteCompleta(j);
+            if (completada == 0 && j > forzarHasta && System.nanoTime() - instante < timeoutNs) break;
+
+            // Como en bucle cerrado: si el último ACK llegó pasado el timeout, no cuenta.
+            boolean porTimeout = (completada == 0 || completada - instante >= timeoutNs);
+
+            long ns = porTimeout ? timeoutNs : completada - instante;
+            if (porTimeout) cantidadTimeouts++;
+            histograma.registrar(ns);
+            if (progreso != null) progreso.iteracionTerminada(ns, porTimeout);
+            if (detalle != null) detalle.registrar(idCliente, idGrupo, j, ns);
+            respuestasCorrectas++;
+        }
+        return j;
+    }
+
+    // Manda las coordenadas ya serializadas: al servidor, o a cada vecino con intercambio directo.
+    private void enviarCoordenadas(ByteBuffer datosEnvio) throws IOException {
+        if (vecinos == null) {
+            trafico.enviado(Mensaje.messageType.COMPARTIR_COORDENADAS, canalUDP.enviar(datosEnvio, servidorUDP));
+            return;
+        }
+        // Intercambio directo: el mismo paquete a cada vecino, cambiando solo el destinatario.
+        int miPosicion = Math.floorMod(idCliente, V_vecinos);
+        for (int pos = 0; pos < vecinos.length; pos++) {
+            if (pos == miPosicion) continue;
+            CodecMensaje.escribirDestino(datosEnvio, idGrupo * V_vecinos + pos);
+            datosEnvio.position(0);
+            trafico.enviado(Mensaje.messageType.COMPARTIR_COORDENADAS, canalUDP.enviar(datosEnvio, vecinos[pos]));
         }
     }
 
@@ -168,56 +283,101 @@ public class Persona extends Thread {
      * Es sincrónico y bloqueante (espera respuesta) porque es crítico.
      */
     private void registrarPorTCP(InetAddress direccionServidor, int miPuertoUDP) throws IOException {
-        Socket socketTCP = new Socket(direccionServidor, puertoServidor);
-        DataOutputStream dos = new DataOutputStream(socketTCP.getOutputStream());
-        DataInputStream dis = new DataInputStream(socketTCP.getInputStream());
-
-        // Enviamos nuestro puerto UDP para que el servidor sepa dónde contestarnos.
-        dos.writeInt(miPuertoUDP);
-
-        // Recibimos nuestra identidad.
-        this.idCliente = dis.readInt();
-        this.idGrupo = dis.readInt();
-        int vRecibido = dis.readInt(); 
-        
+        aplicarAsignacion(ProtocoloRegistro.registrar(direccionServidor, puertoServidor, miPuertoUDP));
         System.out.println("[Cliente " + idCliente + "] Registrado por TCP. Grupo: " + idGrupo);
-        socketTCP.close(); // Cerramos TCP inmediatamente.
+    }
+
+    /**
+     * Abre el canal UDP del cliente. Es estático para que Cliente pueda abrir todos los canales
+     * de antemano y registrarlos de una vez (registro en lote).
+     */
+    static Transporte abrirCanalUDP() throws IOException {
+        // Cada iteración nos llegan hasta 2*(V-1) paquetes casi a la vez (coordenadas + ACKs).
+        return Transporte.abrir(0, 1024 * 1024); // Puerto libre cualquiera.
+    }
+
+    /**
+     * Entrega a la Persona un canal ya registrado (registro en lote hecho por Cliente).
+     * Llamar antes de start(): run() se salta entonces la fase TCP.
+     */
+    void asignarRegistro(Transporte canal, ProtocoloRegistro.Asignacion asignacion) {
+        this.canalUDP = canal;
+        aplicarAsignacion(asignacion);
+    }
+
+    private void aplicarAsignacion(ProtocoloRegistro.Asignacion asignacion) {
+        this.idCliente = asignacion.idCliente();
+        this.idGrupo = asignacion.idGrupo();
+        this.puertoUDPServidor = asignacion.puertoUDPServidor();
+        this.vecinos = asignacion.vecinos();
+        this.instanteRegistro = System.nanoTime();
     }
     
-    private void esperarSenalInicio() throws IOException, ClassNotFoundException {
-        byte[] bufer = new byte[4096];
-        DatagramPacket paqueteRespuesta = new DatagramPacket(bufer, bufer.length);
-        socketUDP.receive(paqueteRespuesta); 
+    private void esperarSenalInicio() throws IOException {
+        ByteBuffer bufer = ByteBuffer.allocate(CodecMensaje.TAM_MAXIMO);
+        while (true) {
+            bufer.clear();
+            InetSocketAddress origen = canalUDP.recibir(bufer);
+            bufer.flip();
 
-        Mensaje msj = deserializarMensaje(paqueteRespuesta.getData(), paqueteRespuesta.getLength());
+            Mensaje msj = deserializarMensaje(bufer);
+            trafico.recibido(msj.type, bufer.limit());
 
-        if (msj.type == Mensaje.messageType.INICIAR_SIMULACION) {
-            System.out.println("[Cliente " + idCliente + "] Señal de inicio recibida.");
-        } else {
-            throw new IOException("Señal de inicio inesperada: " + msj.type);
+            if (msj.type == Mensaje.messageType.INICIAR_SIMULACION) {
+                System.out.println("[Cliente " + idCliente + "] Señal de inicio recibida.");
+                return;
+            }
+            // En modo directo un vecino que recibió antes su señal puede mandarnos ya sus coordenadas
+            // (el servidor no las retiene hasta que todos han empezado): se le contesta como siempre.
+            if (vecinos == null || msj.type != Mensaje.messageType.COMPARTIR_COORDENADAS) {
+                throw new IOException("Señal de inicio inesperada: " + msj.type);
+            }
+            atenderMensaje(msj, origen);
         }
     }
 
     /**
-     * Bucle de espera de ACKs.
-     * Se queda aquí hasta recibir (V-1) confirmaciones o hasta que salta el Timeout.
+     * Espera de ACKs.
+     * Se queda aquí hasta recibir (V-1) confirmaciones distintas de esta iteración o hasta que
+     * salta el Timeout. El hilo duerme y lo despierta el hilo de escucha al llegar el último ACK.
      */
-    private void esperarAcks() {
-        long inicioEspera = System.currentTimeMillis();
-        // Esperamos hasta tener ACKs de todos los vecinos (V-1).
-        while (acksRecibidos.size() < (V_vecinos - 1)) {
-            try {
-                Thread.sleep(10); // Pequeña pausa para no saturar.
-                
-                // Si pasan más de 10s, asumimos pérdida de paquetes y continuamos (con error).
-                if (System.currentTimeMillis() - inicioEspera > 10000) { 
-                    this.cantidadTimeouts++; 
-                    break;
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+    private void esperarAcks(Mensaje msjCoords, long tiempoInicio) throws IOException {
+        int numIteracion = msjCoords.numIteracion;
+        if (!fiable) {
+            // Si pasa el timeout, asumimos pérdida de paquetes y continuamos (con error).
+            if (!seguimientoAcks.esperar(numIteracion, timeoutAcksMs, TimeUnit.MILLISECONDS)) {
+                this.cantidadTimeouts++;
+            }
+            return;
+        }
+
+        // MODO FIABLE: esperamos un RTO; si faltan ACKs, reenviamos las coordenadas SOLO a los
+        // vecinos que faltan y volvemos a esperar (con el RTO doblado), hasta el timeout de siempre.
+        long limite = tiempoInicio + TimeUnit.MILLISECONDS.toNanos(timeoutAcksMs);
+        long espera = estimadorRTO.rtoNs();
+        boolean retransmitida = false;
+        while (true) {
+            long restante = limite - System.nanoTime();
+            if (restante <= 0) {
+                this.cantidadTimeouts++;
+                return;
             }
+            if (seguimientoAcks.esperar(numIteracion, Math.min(espera, restante), TimeUnit.NANOSECONDS)) {
+                // Karn: solo medimos el RTT si no hubo retransmisión (si no, es ambiguo).
+                if (!retransmitida) estimadorRTO.muestra(System.nanoTime() - tiempoInicio);
+                return;
+            }
+            for (int pos : seguimientoAcks.faltantes(numIteracion, Math.floorMod(idCliente, V_vecinos))) {
+                // idDestino en un COMPARTIR_COORDENADAS = "reenvíalo solo a este vecino".
+                // En modo directo se lo mandamos nosotros mismos.
+                msjCoords.idDestino = idGrupo * V_vecinos + pos;
+                InetSocketAddress destino = (vecinos == null) ? servidorUDP : vecinos[pos];
+                trafico.enviado(msjCoords.type, canalUDP.enviar(serializarMensaje(msjCoords), destino));
+                retransmisiones++;
+                if (progreso != null) progreso.retransmision();
+            }
+            retransmitida = true;
+            espera = estimadorRTO.backoff();
         }
     }
     
@@ -226,69 +386,99 @@ public class Persona extends Thread {
      * Procesa mensajes entrantes y actúa inmediatamente.
      */
     private void escucharAlServidor() {
+        // Un único buffer de recepción para todo el bucle: cada paquete se decodifica antes del siguiente.
+        ByteBuffer bufer = ByteBuffer.allocate(CodecMensaje.TAM_MAXIMO);
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                byte[] bufer = new byte[4096];
-                DatagramPacket paqueteRecibido = new DatagramPacket(bufer, bufer.length);
-                socketUDP.receive(paqueteRecibido);
-
-                Mensaje msjRecibido = deserializarMensaje(paqueteRecibido.getData(), paqueteRecibido.getLength());
-
-                switch (msjRecibido.type) {
-                    case COMPARTIR_COORDENADAS:
-                        // Si un vecino nos manda coordenadas, le respondemos con un ACK inmediatamente.
-                        Mensaje msjAck = new Mensaje(
-                            Mensaje.messageType.ACK,
-                            this.idCliente, 
-                            String.valueOf(msjRecibido.idCliente), 
-                            msjRecibido.numIteracion
-                        );
-                        byte[] datosAck = serializarMensaje(msjAck);
-                        DatagramPacket paqueteAck = new DatagramPacket(datosAck, datosAck.length, paqueteRecibido.getAddress(), paqueteRecibido.getPort());
-                        socketUDP.send(paqueteAck);
-                        break;
-
-                    case ACK:
-                        // Si recibimos un ACK, lo guardamos en la cola para que el hilo principal lo cuente.
-                        acksRecibidos.add(msjRecibido);
-                        break;
-
-                    case GROUP_DONE:
-                        // Señal de apagado recibida. Cambiamos el flag para liberar al hilo principal.
-                        grupoHaTerminado = true;
-                        break; 
-
-                    default:
-                        break;
-                }
+                bufer.clear();
+                InetSocketAddress origen = canalUDP.recibir(bufer);
+                bufer.flip();
+
+                Mensaje msjRecibido = deserializarMensaje(bufer);
+                trafico.recibido(msjRecibido.type, bufer.limit());
+                atenderMensaje(msjRecibido, origen);
             } catch (IOException e) {
                 // Es normal que salte al cerrar el socket al final.
-                if (socketUDP.isClosed() || Thread.currentThread().isInterrupted()) break;
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+                if (!canalUDP.abierto() || Thread.currentThread().isInterrupted()) break;
             }
         }
     }
+
+    /**
+     * Actúa ante un mensaje recibido. 'origen' es quien lo envió: el servidor, o el propio vecino
+     * con intercambio directo (en los dos casos, a donde hay que contestar el ACK).
+     */
+    private void atenderMensaje(Mensaje msjRecibido, InetSocketAddress origen) throws IOException {
+        switch (msjRecibido.type) {
+            case COMPARTIR_COORDENADAS:
+                // Si un vecino nos manda coordenadas, le respondemos con un ACK inmediatamente.
+                // Quién confirma va en idCliente y a quién, en idDestino (nada de texto que parsear).
+                Mensaje msjAck = new Mensaje(Mensaje.messageType.ACK, this.idCliente, msjRecibido.numIteracion);
+                msjAck.idDestino = msjRecibido.idCliente;
+                trafico.enviado(msjAck.type, canalUDP.enviar(serializarMensaje(msjAck), origen));
+                break;
+
+            case COORDENADAS_AGRUPADAS:
+                // Las de todo el grupo en un solo paquete (servidor con arc.agrupar): un único ACK.
+                Mensaje msjAckAgrupado = new Mensaje(Mensaje.messageType.ACK_AGRUPADO, this.idCliente, msjRecibido.numIteracion);
+                trafico.enviado(msjAckAgrupado.type, canalUDP.enviar(serializarMensaje(msjAckAgrupado), origen));
+                break;
+
+            case ACK:
+                // Si recibimos un ACK, lo apuntamos (idCliente = el vecino que confirma).
+                // Si era el último que faltaba, esto despierta al hilo principal.
+                seguimientoAcks.registrar(msjRecibido.numIteracion, msjRecibido.idCliente);
+                break;
+
+            case ACK_MAPA:
+                // Servidor con arc.agruparAcks: todos los que han confirmado, en un bitmap.
+                seguimientoAcks.registrarMapa(msjRecibido.numIteracion, msjRecibido.mapa);
+                break;
+
+            case GROUP_DONE:
+                // Señal de apagado recibida. Cambiamos el flag para liberar al hilo principal.
+                grupoHaTerminado = true;
+                break; 
+
+            default:
+                break;
+        }
+    }
     
     // --- MÉTODOS DE SERIALIZACIÓN (Convertir Objeto <-> Bytes) ---
-    private byte[] serializarMensaje(Mensaje msj) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(msj);
-        return bos.toByteArray();
+    // Usamos el formato binario de CodecMensaje (el mismo que el servidor).
+    // Cada hilo que envía (el principal y el de escucha) tiene su propio buffer para no pisarse.
+    private final ThreadLocal<ByteBuffer> buferCodificacion =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(CodecMensaje.TAM_MAXIMO));
+
+    // Devuelve el buffer del hilo ya preparado para 'send'.
+    private ByteBuffer serializarMensaje(Mensaje msj) {
+        ByteBuffer bufer = buferCodificacion.get();
+        bufer.clear();
+        CodecMensaje.codificar(msj, bufer);
+        bufer.flip();
+        return bufer;
     }
 
-    private Mensaje deserializarMensaje(byte[] datos, int longitud) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(datos, 0, longitud);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        return (Mensaje) ois.readObject();
+    private Mensaje deserializarMensaje(ByteBuffer datos) throws IOException {
+        return CodecMensaje.decodificar(datos);
     }
 
+    /** Cambia cómo se crea el hilo de escucha (llamar antes de arrancar la Persona). */
+    public void setFabricaHilos(ThreadFactory fabricaHilos) { this.fabricaHilos = fabricaHilos; }
+    void setTrafico(ContadoresTrafico trafico) { this.trafico = trafico; }
+    void setDetalle(DetalleIteraciones detalle) { this.detalle = detalle; }
+    void setProgreso(ProgresoClientes progreso) { this.progreso = progreso; }
+
     // --- GETTERS PARA ESTADÍSTICAS ---
-    public double getTiempoMedioFinal() { return tiempoMedioFinal; }
-    public boolean isFinalizadoConExito() { return finalizadoConExito; }
-    public int getCantidadTimeouts() { return cantidadTimeouts; }
-    public int getIdCliente() { return idCliente; }
-    public int getIdGrupo() { return idGrupo; }
-    public int getRespuestasCorrectas() { return respuestasCorrectas; }
+    @Override public double getTiempoMedioFinal() { return tiempoMedioFinal; }
+    @Override public boolean isFinalizadoConExito() { return finalizadoConExito; }
+    @Override public int getCantidadTimeouts() { return cantidadTimeouts; }
+    @Override public int getIdCliente() { return idCliente; }
+    @Override public int getIdGrupo() { return idGrupo; }
+    @Override public int getRespuestasCorrectas() { return respuestasCorrectas; }
+    @Override public long getInstanteRegistro() { return instanteRegistro; }
+    @Override public int getRetransmisiones() { return retransmisiones; }
+    @Override public HistogramaLatencia getHistograma() { return histograma; }
+    @Override public boolean isIntercambioDirecto() { return vecinos != null; }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * CLASE: PoolBuferes (Almacén de buffers reutilizables)
+ * * OBJETIVO:
+ * Evitar crear un buffer nuevo por cada paquete recibido. Se crean todos al arrancar
+ * (buffers "directos", fuera del heap, que el kernel puede rellenar sin copia intermedia)
+ * y se van prestando: el hilo receptor toma uno, lo rellena con el datagrama y se lo pasa
+ * a un trabajador; cuando el trabajador termina, lo devuelve.
+ * * * ACOTADO:
+ * Si todos los buffers están prestados (los trabajadores van por detrás), 'tomar()' bloquea
+ * al receptor. Los paquetes esperan en el buffer del socket en vez de llenar la memoria.
+ */
+final class PoolBuferes {
+
+    private final ArrayBlockingQueue<ByteBuffer> libres;
+
+    PoolBuferes(int cantidad, int tamBufer) {
+        libres = new ArrayBlockingQueue<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            libres.add(ByteBuffer.allocateDirect(tamBufer));
+        }
+    }
+
+    /** Saca un buffer vacío (listo para escribir). Bloquea si no queda ninguno libre. */
+    ByteBuffer tomar() throws InterruptedException {
+        ByteBuffer bufer = libres.take();
+        bufer.clear();
+        return bufer;
+    }
+
+    /** Devuelve un buffer al pool. Llamar exactamente una vez por cada tomar(). */
+    void devolver(ByteBuffer bufer) {
+        libres.offer(bufer);
+    }
+
+    int disponibles() {
+        return libres.size();
+    }
+}
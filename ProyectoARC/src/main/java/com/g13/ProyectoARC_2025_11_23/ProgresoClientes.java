@@ -0,0 +1,50 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CLASE: ProgresoClientes (Cómo va la flota, mientras va)
+ * * OBJETIVO:
+ * EstadisticasPersona solo se lee cuando cada cliente ha terminado. Para las métricas en vivo
+ * del Cliente (Metricas) necesitamos saber AHORA cuántos clientes siguen activos, cuántas
+ * iteraciones hay en vuelo, cuántos timeouts van y cómo está la latencia del último intervalo.
+ * * Cliente crea uno y se lo pasa a todas sus Personas (o al multiplexor), como ContadoresTrafico.
+ * * * BARATO:
+ * LongAdder en los contadores (muchas Personas suman a la vez) y HistogramaVentana para la
+ * latencia: un incremento por evento, sin locks. Las Personas sin ProgresoClientes (null) no
+ * apuntan nada.
+ */
+final class ProgresoClientes {
+
+    private final LongAdder arrancados = new LongAdder();
+    private final LongAdder terminados = new LongAdder();
+    private final LongAdder iteracionesEnCurso = new LongAdder();
+    private final LongAdder iteraciones = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retransmisiones = new LongAdder();
+    private final HistogramaVentana latencia = new HistogramaVentana();
+
+    void clienteArrancado() { arrancados.increment(); }
+
+    void clienteTerminado() { terminados.increment(); }
+
+    void iteracionIniciada() { iteracionesEnCurso.increment(); }
+
+    /** Fin de una iteración (con todos los ACKs o por timeout), con su duración en ns. */
+    void iteracionTerminada(long ns, boolean porTimeout) {
+        iteracionesEnCurso.decrement();
+        iteraciones.increment();
+        if (porTimeout) timeouts.increment();
+        latencia.registrar(ns);
+    }
+
+    void retransmision() { retransmisiones.increment(); }
+
+    long activos() { return arrancados.sum() - terminados.sum(); }
+    long terminados() { return terminados.sum(); }
+    long iteracionesEnCurso() { return iteracionesEnCurso.sum(); }
+    long iteraciones() { return iteraciones.sum(); }
+    long timeouts() { return timeouts.sum(); }
+    long retransmisiones() { return retransmisiones.sum(); }
+    HistogramaVentana latencia() { return latencia; }
+}
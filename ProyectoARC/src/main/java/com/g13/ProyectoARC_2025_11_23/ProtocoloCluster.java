@@ -0,0 +1,126 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * CLASE: ProtocoloCluster (La conversación TCP entre el coordinador y sus relés)
+ * * OBJETIVO:
+ * En modo clúster (-Darc.rol=coordinador / rele) el coordinador hace el registro TCP de los
+ * clientes y reparte los grupos entre varios procesos Servidor "relé" (grupo g -> relé g % R).
+ * Cada relé mueve el UDP de sus grupos. Como ProtocoloRegistro, aquí está todo el formato de
+ * esa conversación, para que coordinador y relé no se desincronicen.
+ * * * CONVERSACIÓN (una conexión TCP por relé, la abre el coordinador):
+ * <pre>
+ *   coord -> relé : [N] [V] [S] [intercambio] [índice del relé] [R]
+ *   relé -> coord : [nº de reactores del relé (0 = pool)]
+ *   ...           (el coordinador registra a los clientes)
+ *   coord -> relé : [k] k × ([idCliente] [idGrupo] [longitud IP (byte)] [IP] [puertoUDP])
+ *   relé -> coord : [GRUPO_TERMINADO] [idGrupo]      (uno por grupo, según van acabando)
+ *   relé -> coord : [FIN] [dgr. enviados] [bytes enviados] [dgr. recibidos] [bytes recibidos]
+ * </pre>
+ * INICIAR_SIMULACION y GROUP_DONE los manda cada relé a sus propios clientes: un grupo entero
+ * vive en un solo relé, así que su cierre no necesita a nadie más.
+ */
+final class ProtocoloCluster {
+
+    /** Eventos del relé al coordinador. */
+    static final int GRUPO_TERMINADO = 1;
+    static final int FIN = 2;
+
+    /** Lo que el coordinador le encarga a un relé. */
+    record Encargo(int N, int V, int S, boolean directo, int indice, int numReles) {
+
+        /** ¿Este grupo es de este relé? */
+        boolean esPropio(int idGrupo) {
+            return idGrupo % numReles == indice;
+        }
+    }
+
+    /** Totales de tráfico con los que un relé cierra la conversación. */
+    record Totales(long datagramasEnviados, long bytesEnviados, long datagramasRecibidos, long bytesRecibidos) {}
+
+    private ProtocoloCluster() {}
+
+    /** Qué relé lleva el grupo. */
+    static int releDeGrupo(int idGrupo, int numReles) {
+        return idGrupo % numReles;
+    }
+
+    /**
+     * Qué reactor del relé atiende el grupo. Se numeran los grupos DENTRO del relé (g / R):
+     * con g % K, un relé con grupos todos pares y K par dejaría reactores sin trabajo.
+     * Con un solo relé (servidor normal) es el g % K de siempre.
+     */
+    static int reactorDeGrupo(int idGrupo, int numReles, int numReactores) {
+        return (numReactores == 0) ? 0 : (idGrupo / numReles) % numReactores;
+    }
+
+    // --- COORDINADOR ---
+
+    static void escribirEncargo(DataOutputStream dos, Encargo e) throws IOException {
+        dos.writeInt(e.N());
+        dos.writeInt(e.V());
+        dos.writeInt(e.S());
+        dos.writeInt(e.directo() ? ProtocoloRegistro.DIRECTO : ProtocoloRegistro.VIA_SERVIDOR);
+        dos.writeInt(e.indice());
+        dos.writeInt(e.numReles());
+        dos.flush();
+    }
+
+    static void escribirClientes(DataOutputStream dos, List<InfoCliente> clientes) throws IOException {
+        dos.writeInt(clientes.size());
+        for (InfoCliente c : clientes) {
+            dos.writeInt(c.idCliente());
+            dos.writeInt(c.idGrupo());
+            byte[] ip = c.direccion().getAddress();
+            dos.writeByte(ip.length);
+            dos.write(ip);
+            dos.writeInt(c.puerto());
+        }
+        dos.flush();
+    }
+
+    static Totales leerTotales(DataInputStream dis) throws IOException {
+        return new Totales(dis.readLong(), dis.readLong(), dis.readLong(), dis.readLong());
+    }
+
+    // --- RELÉ ---
+
+    static Encargo leerEncargo(DataInputStream dis) throws IOException {
+        return new Encargo(dis.readInt(), dis.readInt(), dis.readInt(),
+                dis.readInt() == ProtocoloRegistro.DIRECTO, dis.readInt(), dis.readInt());
+    }
+
+    /** Los clientes de los grupos del relé, en un array de N posiciones (null = de otro relé). */
+    static InfoCliente[] leerClientes(DataInputStream dis, int N) throws IOException {
+        InfoCliente[] clientes = new InfoCliente[N];
+        int k = dis.readInt();
+        for (int i = 0; i < k; i++) {
+            int idCliente = dis.readInt();
+            int idGrupo = dis.readInt();
+            byte[] ip = new byte[dis.readUnsignedByte()];
+            dis.readFully(ip);
+            clientes[idCliente] = new InfoCliente(idCliente, idGrupo, InetAddress.getByAddress(ip), dis.readInt());
+        }
+        return clientes;
+    }
+
+    static void escribirGrupoTerminado(DataOutputStream dos, int idGrupo) throws IOException {
+        dos.writeInt(GRUPO_TERMINADO);
+        dos.writeInt(idGrupo);
+        dos.flush();
+    }
+
+    static void escribirFin(DataOutputStream dos, ContadoresTrafico trafico) throws IOException {
+        dos.writeInt(FIN);
+        dos.writeLong(trafico.datagramasEnviados());
+        dos.writeLong(trafico.bytesEnviados());
+        dos.writeLong(trafico.datagramasRecibidos());
+        dos.writeLong(trafico.bytesRecibidos());
+        dos.flush();
+    }
+}
@@ -0,0 +1,160 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CLASE: ProtocoloRegistro (La conversación TCP del registro)
+ * * OBJETIVO:
+ * Reunir en un único sitio el formato de la fase de registro, que usan el Servidor, Persona
+ * y MultiplexorPersonas. Así, si cambia algo, cambia para todos a la vez.
+ * * * PETICIÓN (cliente -> servidor):
+ * <pre>
+ *   Registro simple:  [puertoUDP]                          (un int >= 0)
+ *   Registro en lote: [LOTE] [k] [puertoUDP_1] ... [puertoUDP_k]
+ * </pre>
+ * * * RESPUESTA (servidor -> cliente), una por cada puerto pedido y en el mismo orden:
+ * <pre>
+ *   [idCliente] [idGrupo] [V] [puertoUDP del servidor] [intercambio]
+ * </pre>
+ * * * TABLA DE VECINOS (solo con intercambio DIRECTO, -Darc.intercambio=directo):
+ * Tras las asignaciones, la conexión sigue abierta y el servidor manda, en cuanto cada grupo
+ * está completo, los endpoints UDP de sus miembros (una tabla por grupo distinto de la petición,
+ * en el orden en que aparecen):
+ * <pre>
+ *   [idGrupo] V × ([longitud IP (byte)] [bytes de la IP] [puertoUDP])    (en orden de posición: idCliente % V)
+ * </pre>
+ * El lote permite que un único generador de carga registre miles de endpoints UDP con
+ * una sola conexión TCP, en vez de un handshake completo por cliente.
+ */
+final class ProtocoloRegistro {
+
+    /** Marca de "viene un lote" (un puerto UDP real nunca es negativo). */
+    static final int LOTE = -1;
+
+    /** Valores del campo [intercambio]: coordenadas y ACKs vía servidor, o directamente entre vecinos. */
+    static final int VIA_SERVIDOR = 0;
+    static final int DIRECTO = 1;
+
+    /**
+     * Lo que el servidor asigna a cada endpoint registrado.
+     * @param vecinos Endpoints UDP de los miembros del grupo (índice = idCliente % V), o null si
+     *                el intercambio es vía servidor. Los miembros de un mismo grupo comparten el array.
+     */
+    record Asignacion(int idCliente, int idGrupo, int V, int puertoUDPServidor, InetSocketAddress[] vecinos) {
+
+        boolean directo() {
+            return vecinos != null;
+        }
+    }
+
+    private ProtocoloRegistro() {}
+
+    // --- LADO CLIENTE ---
+
+    /** Registra un único endpoint UDP. */
+    static Asignacion registrar(InetAddress servidor, int puertoTCP, int puertoUDP) throws IOException {
+        try (Socket socketTCP = new Socket(servidor, puertoTCP)) {
+            DataOutputStream dos = new DataOutputStream(socketTCP.getOutputStream());
+            DataInputStream dis = new DataInputStream(socketTCP.getInputStream());
+
+            // Enviamos nuestro puerto UDP para que el servidor sepa dónde contestarnos.
+            dos.writeInt(puertoUDP);
+            dos.flush();
+            return leerRespuesta(dis, 1).get(0);
+        }
+    }
+
+    /** Registra varios endpoints UDP con una sola conexión. Las respuestas vienen en el mismo orden. */
+    static List<Asignacion> registrarLote(InetAddress servidor, int puertoTCP, int[] puertosUDP) throws IOException {
+        try (Socket socketTCP = new Socket(servidor, puertoTCP)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socketTCP.getOutputStream()));
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socketTCP.getInputStream()));
+
+            dos.writeInt(LOTE);
+            dos.writeInt(puertosUDP.length);
+            for (int puerto : puertosUDP) dos.writeInt(puerto);
+            dos.flush();
+
+            return leerRespuesta(dis, puertosUDP.length);
+        }
+    }
+
+    // Las k asignaciones y, si el intercambio es directo, las tablas de vecinos de sus grupos.
+    private static List<Asignacion> leerRespuesta(DataInputStream dis, int k) throws IOException {
+        int[][] campos = new int[k][];
+        boolean directo = false;
+        for (int i = 0; i < k; i++) {
+            campos[i] = new int[] {dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt()};
+            directo |= dis.readInt() == DIRECTO;
+        }
+
+        Map<Integer, InetSocketAddress[]> tablas = new HashMap<>();
+        if (directo) {
+            Set<Integer> grupos = new HashSet<>();
+            for (int[] c : campos) grupos.add(c[1]);
+            // Llegan según se completan los grupos: puede tardar hasta que se registre el último vecino.
+            for (int t = 0; t < grupos.size(); t++) {
+                int idGrupo = dis.readInt();
+                InetSocketAddress[] vecinos = new InetSocketAddress[campos[0][2]];
+                for (int pos = 0; pos < vecinos.length; pos++) {
+                    byte[] ip = new byte[dis.readUnsignedByte()];
+                    dis.readFully(ip);
+                    vecinos[pos] = new InetSocketAddress(InetAddress.getByAddress(ip), dis.readInt());
+                }
+                tablas.put(idGrupo, vecinos);
+            }
+        }
+
+        List<Asignacion> asignaciones = new ArrayList<>(k);
+        for (int[] c : campos) {
+            asignaciones.add(new Asignacion(c[0], c[1], c[2], c[3], directo ? tablas.get(c[1]) : null));
+        }
+        return asignaciones;
+    }
+
+    // --- LADO SERVIDOR ---
+
+    /** Lee la petición y devuelve los puertos UDP pedidos (uno si es registro simple). */
+    static int[] leerPeticion(DataInputStream dis) throws IOException {
+        int primero = dis.readInt();
+        if (primero != LOTE) return new int[] {primero};
+
+        int k = dis.readInt();
+        if (k <= 0) throw new IOException("Lote de registro vacío o inválido: " + k);
+        int[] puertos = new int[k];
+        for (int i = 0; i < k; i++) puertos[i] = dis.readInt();
+        return puertos;
+    }
+
+    static void escribirAsignacion(DataOutputStream dos, Asignacion a, boolean directo) throws IOException {
+        dos.writeInt(a.idCliente());
+        dos.writeInt(a.idGrupo());
+        dos.writeInt(a.V());
+        dos.writeInt(a.puertoUDPServidor()); // A qué puerto UDP debe hablarnos.
+        dos.writeInt(directo ? DIRECTO : VIA_SERVIDOR);
+    }
+
+    /** Tabla de vecinos de un grupo ya completo (miembros en orden de posición dentro del grupo). */
+    static void escribirVecinos(DataOutputStream dos, int idGrupo, InfoCliente[] miembros) throws IOException {
+        dos.writeInt(idGrupo);
+        for (InfoCliente m : miembros) {
+            byte[] ip = m.direccion().getAddress();
+            dos.writeByte(ip.length);
+            dos.write(ip);
+            dos.writeInt(m.puerto());
+        }
+    }
+}
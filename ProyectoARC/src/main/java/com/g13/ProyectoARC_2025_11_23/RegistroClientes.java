@@ -0,0 +1,151 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLASE: RegistroClientes (La "Guía Telefónica" del Servidor)
+ * * OBJETIVO:
+ * Responder en tiempo constante a las dos preguntas que el servidor se hace en cada paquete:
+ * 1. "¿Quién me habla?"      -> índice dirección (IP + puerto) -> cliente.
+ * 2. "¿A quién se lo reenvío?" -> array de miembros de cada grupo, ya precalculado.
+ * * * INMUTABLE:
+ * Se construye una única vez, cuando termina la fase de registro TCP, y a partir de ahí
+ * solo se lee. Como todos sus campos son 'final', cualquier hilo del pool puede consultarlo
+ * sin locks ni ConcurrentHashMap.
+ * * * ÍNDICE POR DIRECCIÓN:
+ * Para IPv4 la clave es un long (IP << 16 | puerto) en una tabla hash de direccionamiento
+ * abierto con arrays primitivos: buscar no crea ningún objeto. Para IPv6 (raro en nuestras
+ * pruebas) usamos un HashMap normal como respaldo.
+ * * * ENDPOINTS COMPARTIDOS:
+ * Con MultiplexorPersonas varios clientes usan el mismo socket (misma IP y puerto). Esas
+ * direcciones se marcan como COMPARTIDAS y, para ellas, el remitente se identifica por el
+ * idCliente que viene en el mensaje (comprobando que de verdad está registrado en esa dirección).
+ */
+final class RegistroClientes {
+
+    private static final long VACIO = -1L; // Ninguna clave real vale -1 (IP << 16 | puerto es >= 0).
+    private static final int COMPARTIDO = -1; // Valor de la tabla para direcciones con varios clientes.
+    private static final InfoCliente COMPARTIDO_IPV6 = new InfoCliente(COMPARTIDO, COMPARTIDO, new InetSocketAddress(0));
+
+    private final InfoCliente[] porId;
+    private final InfoCliente[][] miembrosPorGrupo;
+
+    // Tabla hash abierta (sondeo lineal). Tamaño potencia de 2 para usar '&' en vez de '%'.
+    private final long[] claves;
+    private final int[] valores;
+    private final int mascara;
+
+    private final Map<InetSocketAddress, InfoCliente> respaldoIPv6 = new HashMap<>();
+
+    /**
+     * @param clientes Array indexado por idCliente (clientes[i].idCliente() == i). En un relé del
+     *                 clúster, los clientes de otros relés son null (porId devuelve null).
+     * @param numGrupos Número total de grupos (N / V).
+     */
+    RegistroClientes(InfoCliente[] clientes, int numGrupos) {
+        this.porId = clientes.clone();
+
+        // 1. Miembros por grupo (contamos primero para crear arrays del tamaño exacto).
+        int[] tamGrupo = new int[numGrupos];
+        for (InfoCliente c : porId) if (c != null) tamGrupo[c.idGrupo()]++;
+        miembrosPorGrupo = new InfoCliente[numGrupos][];
+        for (int g = 0; g < numGrupos; g++) miembrosPorGrupo[g] = new InfoCliente[tamGrupo[g]];
+        int[] relleno = new int[numGrupos];
+        for (InfoCliente c : porId) if (c != null) miembrosPorGrupo[c.idGrupo()][relleno[c.idGrupo()]++] = c;
+
+        // 2. Índice por dirección. Capacidad >= 2N para que las cadenas de sondeo sean cortas.
+        int capacidad = Integer.highestOneBit(Math.max(2, porId.length * 2 - 1)) << 1;
+        claves = new long[capacidad];
+        valores = new int[capacidad];
+        mascara = capacidad - 1;
+        Arrays.fill(claves, VACIO);
+
+        for (InfoCliente c : porId) {
+            if (c == null) continue;
+            long clave = clave(c.direccion(), c.puerto());
+            if (clave == VACIO) {
+                respaldoIPv6.merge(c.endpoint(), c, (anterior, nuevo) -> COMPARTIDO_IPV6);
+                continue;
+            }
+            int i = mezclar(clave) & mascara;
+            while (claves[i] != VACIO && claves[i] != clave) i = (i + 1) & mascara;
+            valores[i] = (claves[i] == clave) ? COMPARTIDO : c.idCliente();
+            claves[i] = clave;
+        }
+    }
+
+    /** Cliente con ese ID, o null si no existe. */
+    InfoCliente porId(int idCliente) {
+        return (idCliente >= 0 && idCliente < porId.length) ? porId[idCliente] : null;
+    }
+
+    /**
+     * Busca al remitente de un paquete por su IP y puerto. Devuelve null si no está registrado
+     * o si esa dirección la comparten varios clientes (en ese caso, usar la versión con idDeclarado).
+     */
+    InfoCliente buscar(InetAddress ip, int puerto) {
+        return buscar(ip, puerto, COMPARTIDO);
+    }
+
+    InfoCliente buscar(InetSocketAddress origen) {
+        return buscar(origen.getAddress(), origen.getPort(), COMPARTIDO);
+    }
+
+    /**
+     * Igual que buscar(), pero si la dirección es compartida devuelve el cliente 'idDeclarado'
+     * (el idCliente que trae el mensaje), siempre que esté registrado en esa misma dirección.
+     */
+    InfoCliente buscar(InetSocketAddress origen, int idDeclarado) {
+        return buscar(origen.getAddress(), origen.getPort(), idDeclarado);
+    }
+
+    private InfoCliente buscar(InetAddress ip, int puerto, int idDeclarado) {
+        long clave = clave(ip, puerto);
+        if (clave == VACIO) {
+            InfoCliente c = respaldoIPv6.get(new InetSocketAddress(ip, puerto));
+            if (c != COMPARTIDO_IPV6) return c;
+            InfoCliente declarado = porId(idDeclarado);
+            return (declarado != null && declarado.direccion().equals(ip) && declarado.puerto() == puerto) ? declarado : null;
+        }
+
+        int i = mezclar(clave) & mascara;
+        while (claves[i] != VACIO) {
+            if (claves[i] == clave) {
+                if (valores[i] != COMPARTIDO) return porId[valores[i]];
+                InfoCliente declarado = porId(idDeclarado);
+                return (declarado != null && clave(declarado.direccion(), declarado.puerto()) == clave) ? declarado : null;
+            }
+            i = (i + 1) & mascara;
+        }
+        return null;
+    }
+
+    /** Miembros del grupo (incluido el propio remitente: quien recorra el array lo salta). */
+    InfoCliente[] miembros(int idGrupo) {
+        return miembrosPorGrupo[idGrupo];
+    }
+
+    int numClientes() { return porId.length; }
+
+    int numGrupos() { return miembrosPorGrupo.length; }
+
+    // Inet4Address.hashCode() es exactamente la IP como int, así que no hace falta
+    // getAddress() (que clona un byte[] en cada llamada).
+    private static long clave(InetAddress ip, int puerto) {
+        if (!(ip instanceof Inet4Address)) return VACIO;
+        return ((ip.hashCode() & 0xFFFFFFFFL) << 16) | (puerto & 0xFFFF);
+    }
+
+    // Finalizador de MurmurHash3: reparte bien claves parecidas (puertos consecutivos).
+    private static int mezclar(long clave) {
+        clave ^= clave >>> 33;
+        clave *= 0xff51afd7ed558ccdL;
+        clave ^= clave >>> 33;
+        return (int) clave;
+    }
+}
@@ -0,0 +1,129 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CLASE PRINCIPAL: ReproductorTraza (Volver a pasar una ejecución por el servidor)
+ * * OBJETIVO:
+ * Pruebas de regresión de rendimiento reproducibles: coger una traza capturada con
+ * -Darc.traza (ver TrazaPaquetes) y meter sus datagramas RECIBIDOS, en el mismo orden, por el
+ * mismo camino que en el servidor (Servidor.atenderPaquete -> procesarMensaje), sin red y sin
+ * clientes. Lo que el servidor envía va a un canal que solo lo cuenta.
+ * * Velocidad (-Darc.velocidad): 1 = ritmo original, 10 = diez veces más rápido, 0 = lo más
+ * rápido posible (cada datagrama en cuanto termina el anterior).
+ * * Ejemplo:
+ * <pre>
+ *   java ... Servidor --n=1000 --v=10 --s=100 --traza=data/traza.bin
+ *   java ... ReproductorTraza --traza=data/traza.bin --velocidad=0 --etapas=true
+ * </pre>
+ * Se reproduce con un solo hilo: el orden es siempre el de la traza, así que dos pasadas sobre
+ * el mismo código hacen exactamente el mismo trabajo. Al final se comparan los envíos con los
+ * de la captura (INICIAR_SIMULACION no sale: es de antes de la FASE 2). Con arc.agrupar, los
+ * plazos de agrupación siguen siendo de tiempo real, así que acelerando pueden salir distintos.
+ */
+public class ReproductorTraza {
+
+    public static void main(String[] args) throws IOException {
+        Configuracion.cargar(args);
+        String ruta = Configuracion.textoOPreguntar("arc.traza", "Fichero de traza: ");
+        double velocidad = Double.parseDouble(Configuracion.texto("arc.velocidad", "1"));
+
+        TrazaPaquetes.Contenido traza = TrazaPaquetes.leer(Path.of(ruta));
+        ContadoresTrafico capturado = new ContadoresTrafico();
+        int entradas = 0;
+        for (TrazaPaquetes.Registro r : traza.registros()) {
+            Mensaje.messageType tipo = tipo(r.datos());
+            if (r.sentido() == TrazaPaquetes.ENTRADA) {
+                capturado.recibido(tipo, r.datos().length);
+                entradas++;
+            } else {
+                capturado.enviado(tipo, r.datos().length);
+            }
+        }
+        System.out.println("--- REPRODUCTOR DE TRAZA ---");
+        System.out.println("Traza " + ruta + ": N=" + traza.N() + " V=" + traza.V() + " S=" + traza.S() + ", "
+                + entradas + " datagramas recibidos, " + (traza.registros().size() - entradas) + " enviados.");
+        System.out.println("Velocidad: " + (velocidad > 0 ? velocidad + "x" : "máxima"));
+
+        CanalNulo canal = new CanalNulo();
+        Servidor.prepararReproduccion(traza.N(), traza.V(), traza.S(), traza.clientes(), canal);
+        AtomicInteger clientesFinalizados = new AtomicInteger();
+        HistogramaLatencia porPaquete = new HistogramaLatencia(); // Lo que tarda atenderPaquete.
+        HistogramaLatencia retraso = new HistogramaLatencia();    // Cuánto tarde sale cada uno respecto al plan.
+        ByteBuffer bufer = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+
+        long primero = traza.registros().isEmpty() ? 0 : traza.registros().get(0).tiempoNs();
+        long inicio = System.nanoTime();
+        for (TrazaPaquetes.Registro r : traza.registros()) {
+            if (r.sentido() != TrazaPaquetes.ENTRADA) continue;
+            if (velocidad > 0) {
+                long previsto = inicio + (long) ((r.tiempoNs() - primero) / velocidad);
+                for (long espera; (espera = previsto - System.nanoTime()) > 0; ) LockSupport.parkNanos(espera);
+                retraso.registrar(System.nanoTime() - previsto);
+            }
+            bufer.clear();
+            bufer.put(r.datos()).flip();
+            long t = System.nanoTime();
+            Servidor.atenderPaquete(canal, bufer, r.extremo(), clientesFinalizados);
+            porPaquete.registrar(System.nanoTime() - t);
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        System.out.println("\n--- FIN DE LA REPRODUCCIÓN ---");
+        System.out.printf("Datagramas: %d en %.3f s (%.0f/s). Clientes terminados: %d%n",
+                entradas, segundos, entradas / segundos, clientesFinalizados.get());
+        System.out.printf("atenderPaquete (us): media %.2f, p50/p99/p99.9/máx %.2f / %.2f / %.2f / %.2f%n",
+                porPaquete.media() / 1e3, porPaquete.percentil(50) / 1e3, porPaquete.percentil(99) / 1e3,
+                porPaquete.percentil(99.9) / 1e3, porPaquete.maximo() / 1e3);
+        if (velocidad > 0) {
+            System.out.printf("Retraso sobre el plan (us): p50/p99/máx %.2f / %.2f / %.2f%n",
+                    retraso.percentil(50) / 1e3, retraso.percentil(99) / 1e3, retraso.maximo() / 1e3);
+        }
+        Servidor.trafico.imprimir("TRÁFICO REPRODUCIDO");
+        capturado.imprimir("TRÁFICO CAPTURADO");
+        Servidor.imprimirEtapas("ETAPAS (REPRODUCCIÓN)");
+    }
+
+    // El tipo va en el segundo byte de la cabecera de CodecMensaje.
+    private static Mensaje.messageType tipo(byte[] datos) {
+        Mensaje.messageType[] tipos = Mensaje.messageType.values();
+        int t = (datos.length > 1) ? datos[1] : -1;
+        return (t >= 0 && t < tipos.length) ? tipos[t] : tipos[0];
+    }
+
+    /** Transporte que no envía nada: solo consume los bytes (el servidor los cuenta en su tráfico). */
+    private static final class CanalNulo implements Transporte {
+        private volatile boolean abierto = true;
+
+        @Override
+        public int enviar(ByteBuffer datos, InetSocketAddress destino) throws IOException {
+            if (!abierto) throw new ClosedChannelException();
+            int n = datos.remaining();
+            datos.position(datos.limit());
+            return n;
+        }
+
+        @Override
+        public InetSocketAddress recibir(ByteBuffer destino) throws IOException {
+            throw new IOException("El canal de reproducción no recibe: los datagramas salen de la traza");
+        }
+
+        @Override
+        public InetSocketAddress direccionLocal() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        }
+
+        @Override
+        public boolean abierto() { return abierto; }
+
+        @Override
+        public void close() { abierto = false; }
+    }
+}
@@ -0,0 +1,144 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CLASE: ResultadoSimulacion (Lo que sale de una ejecución de Cliente)
+ * * OBJETIVO:
+ * Juntar las estadísticas de todos los clientes de una ejecución en un único objeto, para que
+ * tanto Cliente.main (que lo imprime y lo vuelca a CSV) como Barrido (que repite ejecuciones y
+ * calcula intervalos de confianza) usen exactamente las mismas cuentas.
+ */
+final class ResultadoSimulacion {
+
+    final int numeroClientes, numeroVecinos, numeroIteraciones;
+    final int exitosos, fallidos;
+    final List<Integer> idsFallidos = new ArrayList<>();
+    final double tiempoMedioGlobalMs;
+    final double tiempoArranqueMs;
+    final double tiempoTotalSegundos;
+    final int totalTimeouts;
+    final long totalRetransmisiones;
+    final double throughput; // bits/s medidos en los sockets de los clientes.
+    final boolean intercambioDirecto; // Coordenadas y ACKs entre vecinos, sin pasar por el servidor.
+    final double tasaHz; // Bucle abierto: iteraciones por segundo y cliente (0 = bucle cerrado).
+
+    // Distribución completa de latencias (ns): de toda la ejecución y de cada grupo.
+    final HistogramaLatencia histogramaGlobal = new HistogramaLatencia();
+    final Map<Integer, HistogramaLatencia> histogramaGrupo = new TreeMap<>();
+
+    final ContadoresTrafico trafico;
+    final long muestrasDescartadas; // Del detalle por iteración (0 si está desactivado).
+
+    // Datos en bruto (para que GeneradorDistribuido los mande al líder y se junten allí).
+    final List<EstadisticasPersona> clientes;
+    final long tiempoInicio, tiempoFin; // System.nanoTime() de este proceso.
+
+    ResultadoSimulacion(int N, int V, int S, List<EstadisticasPersona> clientes, ContadoresTrafico trafico,
+                        long tiempoInicio, long tiempoFin, long muestrasDescartadas) {
+        this.numeroClientes = N;
+        this.numeroVecinos = V;
+        this.numeroIteraciones = S;
+        this.trafico = trafico;
+        this.muestrasDescartadas = muestrasDescartadas;
+        this.clientes = clientes;
+        this.tiempoInicio = tiempoInicio;
+        this.tiempoFin = tiempoFin;
+        this.tasaHz = Double.parseDouble(Configuracion.texto("arc.tasaHz", "0"));
+        this.tiempoTotalSegundos = (tiempoFin - tiempoInicio) / 1_000_000_000.0;
+
+        int ok = 0, ko = 0, timeouts = 0;
+        long retransmisiones = 0;
+        double sumaTiempos = 0;
+        long ultimoRegistro = tiempoInicio;
+        boolean directo = false;
+        for (EstadisticasPersona p : clientes) {
+            directo |= p.isIntercambioDirecto();
+            if (p.isFinalizadoConExito()) {
+                ok++;
+                sumaTiempos += p.getTiempoMedioFinal();
+                histogramaGlobal.sumar(p.getHistograma());
+                histogramaGrupo.computeIfAbsent(p.getIdGrupo(), k -> new HistogramaLatencia()).sumar(p.getHistograma());
+            } else {
+                ko++;
+                idsFallidos.add(p.getIdCliente());
+            }
+            ultimoRegistro = Math.max(ultimoRegistro, p.getInstanteRegistro());
+            timeouts += p.getCantidadTimeouts();
+            retransmisiones += p.getRetransmisiones();
+        }
+        this.exitosos = ok;
+        this.fallidos = ko;
+        this.totalTimeouts = timeouts;
+        this.totalRetransmisiones = retransmisiones;
+        this.intercambioDirecto = directo;
+        this.tiempoMedioGlobalMs = (ok > 0) ? (sumaTiempos / ok) : 0.0;
+
+        // Tiempo de arranque: desde que lanzamos los clientes hasta que el último tiene identidad.
+        this.tiempoArranqueMs = (ultimoRegistro - tiempoInicio) / 1_000_000.0;
+
+        // Throughput medido: bytes reales que han pasado por los sockets de los clientes (en ambos sentidos).
+        long bytesTotales = trafico.bytesEnviados() + trafico.bytesRecibidos();
+        this.throughput = (bytesTotales * 8) / tiempoTotalSegundos;
+    }
+
+    boolean exitoTotal() {
+        return exitosos == numeroClientes;
+    }
+
+    /** Percentil global en ms. */
+    double percentilMs(double p) {
+        return histogramaGlobal.percentil(p) / 1e6;
+    }
+
+    void escribirCSV(CSVWriter csvWriter) {
+        csvWriter.writeLatenciaPorClientes(numeroClientes, tiempoMedioGlobalMs);
+        csvWriter.writeLatenciaPorGrupos(numeroClientes / numeroVecinos, tiempoMedioGlobalMs);
+        csvWriter.writeThroughput(numeroClientes, throughput);
+        csvWriter.writeTrafico(numeroClientes, trafico, throughput);
+        csvWriter.writePercentilesPorClientes(numeroClientes, histogramaGlobal);
+        for (Map.Entry<Integer, HistogramaLatencia> e : histogramaGrupo.entrySet()) {
+            csvWriter.writePercentilesPorGrupo(numeroClientes, e.getKey(), e.getValue());
+        }
+    }
+
+    void imprimir() {
+        double porcentajeExito = (numeroClientes > 0) ? ((double) exitosos / numeroClientes) * 100.0 : 0.0;
+        System.out.println("\n==================================================");
+        System.out.println("       REPORTE FINAL DE LA SIMULACIÓN");
+        System.out.println("==================================================");
+        System.out.printf("Intercambio:            %s\n", intercambioDirecto ? "directo entre vecinos (1 salto)" : "vía servidor (2 saltos)");
+        if (tasaHz > 0) {
+            System.out.printf("Carga:                  abierta, %.2f Hz por cliente (%.0f coordenadas/s ofrecidas)\n", tasaHz, tasaHz * numeroClientes);
+        } else {
+            System.out.println("Carga:                  bucle cerrado (cada iteración espera sus ACKs)");
+        }
+        System.out.printf("Clientes Totales:       %d\n", numeroClientes);
+        System.out.printf("Clientes Exitosos:      %d (%.2f%%)\n", exitosos, porcentajeExito);
+        System.out.printf("Clientes Fallidos:      %d\n", fallidos);
+        if (fallidos > 0) {
+            System.out.println(" -> IDs Fallidos: " + idsFallidos);
+        }
+        System.out.println("--------------------------------------------------");
+        System.out.printf("Tiempo de Arranque:     %.2f ms (registro de todos los clientes)\n", tiempoArranqueMs);
+        System.out.printf("Tiempo Medio Global:    %.4f ms\n", tiempoMedioGlobalMs);
+        System.out.printf("Latencia p50/p90/p99:   %.3f / %.3f / %.3f ms\n",
+                percentilMs(50), percentilMs(90), percentilMs(99));
+        System.out.printf("Latencia p99.9 / Máx:   %.3f / %.3f ms\n",
+                percentilMs(99.9), histogramaGlobal.maximo() / 1e6);
+        System.out.printf("Total Timeouts (UDP):   %d\n", totalTimeouts);
+        System.out.printf("Retransmisiones:        %d\n", totalRetransmisiones);
+        System.out.printf("Throughput:             %.2f bits/s (medido en los sockets)\n", throughput);
+        trafico.imprimir("TRÁFICO UDP DE LOS CLIENTES");
+        System.out.println("==================================================");
+        if (muestrasDescartadas > 0) {
+            System.out.println("Muestras de detalle descartadas (escritor saturado): " + muestrasDescartadas);
+        }
+        String estado = exitoTotal() ? "ÉXITO TOTAL" : "CON ERRORES";
+        System.out.println(" ESTADO: " + estado);
+        System.out.println("==================================================");
+    }
+}
@@ -0,0 +1,186 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CLASE: SeguimientoAcks (Quién me ha confirmado qué)
+ * * OBJETIVO:
+ * Saber, para cada iteración, qué vecinos han confirmado ya nuestras coordenadas, y despertar
+ * al hilo que espera en el mismo instante en que llega el último ACK.
+ * * * POR QUÉ:
+ * Antes el hilo principal miraba el tamaño de una cola cada 10 ms (Thread.sleep(10)). Eso
+ * añadía hasta 10 ms de latencia falsa en cada iteración, y como la cola se vaciaba al empezar
+ * cada ciclo, un ACK tardío de la iteración i podía contarse para la i+1.
+ * * * CÓMO:
+ * - Cada iteración tiene un bitset con un bit por miembro del grupo (posición = idVecino % V).
+ *   Un ACK repetido del mismo vecino para la misma iteración encuentra el bit ya puesto y no cuenta.
+ * - Los ACKs de una iteración que no es la que estamos siguiendo se ignoran.
+ * - Se guardan las últimas 'ventana' iteraciones (anillo), por si hay varias en vuelo a la vez.
+ * - La espera usa un Condition: el hilo duerme y el que registra el último ACK lo despierta.
+ * - Se apunta el instante (nanoTime) en que cada iteración queda completa: en bucle abierto
+ *   nadie está esperando en ese momento y la latencia se calcula después con ese instante.
+ */
+final class SeguimientoAcks {
+
+    private final int V_vecinos;
+    private final int esperados; // V-1: todos los del grupo menos yo.
+
+    // Anillo de iteraciones en seguimiento. Cada hueco: su iteración, sus bits y cuántos lleva.
+    private final int[] iteracionDeHueco;
+    private final long[][] bits;
+    private final int[] recibidos;
+    private final long[] completadaEn; // 0 = aún no completa.
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition completada = lock.newCondition();
+
+    /**
+     * @param V Tamaño del grupo.
+     * @param ventana Cuántas iteraciones distintas pueden estar en vuelo a la vez (1 = bucle cerrado).
+     */
+    SeguimientoAcks(int V, int ventana) {
+        this.V_vecinos = V;
+        this.esperados = V - 1;
+        this.iteracionDeHueco = new int[ventana];
+        this.bits = new long[ventana][(V + 63) / 64];
+        this.recibidos = new int[ventana];
+        this.completadaEn = new long[ventana];
+        Arrays.fill(iteracionDeHueco, -1);
+    }
+
+    /** Empieza a seguir una iteración (llamar ANTES de enviar las coordenadas). */
+    void iniciar(int numIteracion) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            iteracionDeHueco[h] = numIteracion;
+            Arrays.fill(bits[h], 0L);
+            recibidos[h] = 0;
+            completadaEn[h] = (esperados == 0) ? System.nanoTime() : 0; // V = 1: nadie a quien esperar.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apunta el ACK de 'idVecino' para 'numIteracion'.
+     * @return true si con este ACK la iteración queda completa (solo la primera vez).
+     */
+    boolean registrar(int numIteracion, int idVecino) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            if (iteracionDeHueco[h] != numIteracion) return false; // Tardío o de otra iteración.
+
+            int pos = Math.floorMod(idVecino, V_vecinos);
+            long mascara = 1L << (pos & 63);
+            if ((bits[h][pos >> 6] & mascara) != 0) return false; // Duplicado.
+            bits[h][pos >> 6] |= mascara;
+
+            if (++recibidos[h] == esperados) {
+                completadaEn[h] = System.nanoTime();
+                completada.signalAll();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apunta de golpe un bitmap de confirmaciones (ACK_MAPA del servidor, bit = posición en el grupo).
+     * @return true si con esto la iteración queda completa (solo la primera vez).
+     */
+    boolean registrarMapa(int numIteracion, long[] mapa) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            if (iteracionDeHueco[h] != numIteracion || recibidos[h] >= esperados) return false;
+            int palabras = Math.min(mapa.length, bits[h].length);
+            for (int w = 0; w < palabras; w++) {
+                long validos = (w == bits[h].length - 1 && (V_vecinos & 63) != 0) ? (1L << (V_vecinos & 63)) - 1 : -1L;
+                long nuevos = mapa[w] & validos & ~bits[h][w]; // Solo cuentan los que no teníamos.
+                bits[h][w] |= nuevos;
+                recibidos[h] += Long.bitCount(nuevos);
+            }
+            if (recibidos[h] >= esperados) {
+                completadaEn[h] = System.nanoTime();
+                completada.signalAll();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bloquea hasta que la iteración tenga los V-1 ACKs o pase el timeout.
+     * @return true si se completó; false si saltó el timeout (o nos interrumpieron).
+     */
+    boolean esperar(int numIteracion, long timeout, TimeUnit unidad) {
+        long restante = unidad.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!completa(numIteracion)) {
+                if (restante <= 0) return false;
+                restante = completada.awaitNanos(restante);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean completa(int numIteracion) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            return iteracionDeHueco[h] == numIteracion && recibidos[h] >= esperados;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** System.nanoTime() del ACK que completó la iteración, o 0 si aún no está completa. */
+    long instanteCompleta(int numIteracion) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            return (iteracionDeHueco[h] == numIteracion) ? completadaEn[h] : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Posiciones (idVecino % V) de los vecinos que aún no han confirmado 'numIteracion'.
+     * Es lo que hay que retransmitir. 'posPropia' es la nuestra, que nunca se espera.
+     */
+    int[] faltantes(int numIteracion, int posPropia) {
+        lock.lock();
+        try {
+            int h = hueco(numIteracion);
+            if (iteracionDeHueco[h] != numIteracion) return new int[0];
+            int[] faltan = new int[Math.max(0, esperados - recibidos[h])];
+            int n = 0;
+            for (int pos = 0; pos < V_vecinos && n < faltan.length; pos++) {
+                if (pos != posPropia && (bits[h][pos >> 6] & (1L << (pos & 63))) == 0) faltan[n++] = pos;
+            }
+            return faltan;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int hueco(int numIteracion) {
+        return Math.floorMod(numIteracion, iteracionDeHueco.length);
+    }
+}
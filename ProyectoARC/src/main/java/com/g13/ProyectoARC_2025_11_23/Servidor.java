@@ -4,8 +4,15 @@ package com.g13.ProyectoARC_2025_11_23;
 import com.g13.ProyectoARC_2025_11_23.Mensaje;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
 import java.util.*;
 import java.util.concurrent.*; // Importante: Contiene ExecutorService (Pool de Hilos)
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * CLASE PRINCIPAL: Servidor (Híbrido TCP/UDP)
@@ -16,152 +23,613 @@ import java.util.concurrent.*; // Importante: Contiene ExecutorService (Pool de
  * Usa un modelo "Híbrido + Productor-Consumidor".
  * - Híbrido: Usa TCP para registro (seguridad) y UDP para simulación (velocidad).
  * - Productor-Consumidor: El hilo principal recibe paquetes (Productor) y un Pool de Hilos
- * los procesa en paralelo (Consumidores) para evitar cuellos de botella.
+ * los procesa en paralelo (Consumidores) para evitar cuellos de botella. Entre los dos hay una
+ * cola ACOTADA (ColaTrabajo) con política de desbordamiento configurable.
+ * * * MODO REACTORES (-Darc.modo=reactores):
+ * En vez de un único receptor + pool, arrancamos K hilos "reactor" (por defecto uno por núcleo),
+ * cada uno con su propio canal UDP en el puerto PUERTO+1+k. Cada grupo se asigna a un reactor
+ * al registrarse y el cliente recibe ese puerto en la respuesta TCP. Así todo el tráfico de un
+ * grupo lo atiende siempre el mismo hilo, sin colas compartidas ni mensajes desordenados.
+ * * * INTERCAMBIO DIRECTO (-Darc.intercambio=directo):
+ * El registro TCP devuelve además, en cuanto el grupo está completo, los endpoints UDP de sus
+ * miembros, y los clientes se mandan coordenadas y ACKs entre ellos (un salto en vez de dos).
+ * El servidor se queda solo con el control: INICIAR_SIMULACION, TIEMPOS_SIMULACION y GROUP_DONE.
+ * * * CLÚSTER (-Darc.rol=coordinador / rele):
+ * Varios procesos Servidor en la misma máquina. El coordinador hace el registro TCP y reparte
+ * los grupos (g % R) entre R relés (ver Coordinador y ProtocoloCluster); cada relé hace la
+ * FASE 2 y la FASE 3 solo para sus grupos y le va contando al coordinador cuáles terminan.
  */
 public class Servidor {
 
-    // Record simple para guardar los datos de cada cliente registrado.
-    private record InfoCliente(int idCliente, int idGrupo, InetAddress direccion, int puerto) {}
+    // --- ESTRUCTURAS DE DATOS ---
+    // Durante el registro TCP (un solo hilo) vamos rellenando este array, indexado por idCliente.
+    private static InfoCliente[] clientesConectados;
 
-    // --- ESTRUCTURAS DE DATOS CONCURRENTES ---
-    // Usamos 'ConcurrentHashMap' porque múltiples hilos van a leer/escribir aquí a la vez.
-    // Un HashMap normal daría error o corrupción de datos.
-    private static Map<Integer, InfoCliente> clientesConectados = new ConcurrentHashMap<>();
+    // Cuando el registro termina, lo congelamos en un registro inmutable con búsqueda O(1)
+    // por dirección y la lista de miembros de cada grupo ya precalculada.
+    // Al ser inmutable, todos los trabajadores lo leen a la vez sin ningún lock.
+    private static RegistroClientes registro;
     
-    // Mapa para contar cuántos clientes de cada grupo han terminado. 
-    // Clave: ID de Grupo, Valor: Cantidad de clientes finalizados.
-    private static Map<Integer, Integer> finalizadosPorGrupo = new ConcurrentHashMap<>();
+    // Contador de clientes finalizados por grupo (índice = ID de Grupo).
+    // Array atómico de int primitivos: sin Integer en caja ni entradas de mapa.
+    private static AtomicIntegerArray finalizadosPorGrupo;
+
+    // Iteraciones de coordenadas que hemos difundido de cada cliente (índice = ID de cliente): la
+    // última en los 32 bits altos y, en los bajos, un bit por cada una de las 32 anteriores (bit k =
+    // última - k). Si el mismo COMPARTIR_COORDENADAS llega dos veces, no lo repartimos dos veces al
+    // grupo, aunque el cliente tenga varias iteraciones en vuelo (bucle abierto).
+    private static AtomicLongArray difundidas;
+
+    // Agregación de coordenadas por grupo e iteración (-Darc.agrupar=true). null = reenvío clásico.
+    private static AgrupadorCoordenadas agrupador;
+
+    // Agregación de ACKs en un bitmap por cliente e iteración (-Darc.agruparAcks=true). null = sueltos.
+    private static AgregadorAcks agregadorAcks;
+
+    // Intercambio directo entre vecinos (-Darc.intercambio=directo): coordenadas y ACKs no pasan por aquí.
+    private static boolean intercambioDirecto = false;
+
+    // Se abre cuando los V miembros del grupo están registrados (índice = ID de grupo). Hasta entonces
+    // el registro en modo directo no puede mandar la tabla de vecinos.
+    private static CountDownLatch[] grupoCompleto;
+
+    // Datagramas y bytes reales enviados/recibidos por tipo de mensaje (los suman todos los hilos).
+    static final ContadoresTrafico trafico = new ContadoresTrafico();
+
+    // Grupos que ya han recibido su GROUP_DONE. Cuando son todos, se cierran los canales.
+    private static final AtomicInteger gruposFinalizados = new AtomicInteger();
     
     private static int N, V, S; // Parámetros de la simulación.
-    private static final int PUERTO = 10578;
+    private static int PUERTO = 10578; // --puerto para cambiarlo (p. ej. varias ejecuciones a la vez).
+    private static final int TAM_BUFER_RECEPCION = 4 * 1024 * 1024; // 4 MB (el SO puede limitarlo).
+    private static final int BACKLOG_TCP = 4096; // Conexiones TCP en espera de accept() (miles llegan a la vez).
 
     // --- THREAD POOL (La Clave del Rendimiento) ---
-    // Creamos un equipo fijo de 50 trabajadores.
+    // Creamos un equipo fijo de trabajadores (-Darc.trabajadores, 50 por defecto).
     // Si llegan 2000 mensajes, no creamos 2000 hilos (eso mataría la CPU).
-    // Los 50 trabajadores se van turnando para procesarlos todos.
-    private static ExecutorService pool = Executors.newFixedThreadPool(50);
+    // Los trabajadores se van turnando para procesarlos todos, sacándolos de una cola acotada
+    // (-Darc.colaCapacidad) en vez de la LinkedBlockingQueue sin límite de un ExecutorService.
+    private static ColaTrabajo cola;
+    private static Thread[] trabajadores;
+
+    // --- BUFFERS DE RECEPCIÓN REUTILIZABLES ---
+    // Un número acotado de buffers directos que se prestan a los trabajadores y se reciclan.
+    // Hay uno por hueco de la cola, uno por trabajador y el del receptor: así quien limita es la
+    // cola (y su política), no quedarse sin buffers.
+    private static PoolBuferes buferesRecepcion;
+
+    // --- MODO CLÚSTER ---
+    // Coordinador: conexiones con los relés (null si no somos coordinador).
+    private static Coordinador coordinador;
+    // Relé: conexión de control con el coordinador (null si no somos relé) y cuántos relés hay.
+    private static DataOutputStream controlCoordinador;
+    private static int numReles = 1, indiceRele = 0;
+    // Lo que este proceso tiene que ver terminar: todo (N, N/V) o, en un relé, solo lo suyo.
+    private static int clientesPropios, gruposPropios;
+
+    // Cronometraje por etapas del camino de un paquete (-Darc.etapas=true). null = desactivado.
+    private static EtapasServidor etapas;
+
+    // Captura de todos los datagramas recibidos y enviados (-Darc.traza=fichero). null = desactivada.
+    private static TrazaPaquetes traza;
+
+    // --- MODO REACTORES ---
+    // 0 = modo clásico (un receptor + pool). K > 0 = K reactores, cada uno con su canal.
+    private static int numReactores = 0;
+
+    // Se abre en cuanto el ServerSocket escucha: SimulacionLocal espera a esto para lanzar los clientes.
+    static final CountDownLatch escuchando = new CountDownLatch(1);
+    private static Transporte[] canalesUDP; // UDP real o en memoria (-Darc.transporte).
 
     public static void main(String args[]) {
         // 1. CONFIGURACIÓN
-        Scanner escaner = new Scanner(System.in);
-        System.out.println("--- CONFIGURACIÓN DEL SERVIDOR HÍBRIDO (TCP+UDP) ---");
-        System.out.print("Introduce N (Total clientes): ");
-        N = escaner.nextInt();
-        System.out.print("Introduce V (Vecinos por grupo): ");
-        V = escaner.nextInt();
-        System.out.print("Introduce S (Iteraciones): ");
-        S = escaner.nextInt();
+        // Por línea de comandos (--n=100 --v=5 --s=10) o fichero (--config=...); lo que falte, por teclado.
+        Configuracion.cargar(args);
+        String rol = Configuracion.texto("arc.rol", "servidor");
+        PUERTO = Configuracion.entero("arc.puerto", PUERTO);
+        DataInputStream entradaCoordinador = null;
+        if (rol.equalsIgnoreCase("rele")) {
+            // Un relé no pregunta nada: N, V, S y sus grupos se los dice el coordinador.
+            System.out.println("--- SERVIDOR RELÉ (puerto " + PUERTO + ") ---");
+            try {
+                entradaCoordinador = esperarCoordinador();
+            } catch (IOException e) {
+                System.err.println("Error esperando al coordinador: " + e.getMessage());
+                return;
+            }
+        } else {
+            System.out.println("--- CONFIGURACIÓN DEL SERVIDOR HÍBRIDO (TCP+UDP) ---");
+            N = Configuracion.enteroOPreguntar("arc.n", "Introduce N (Total clientes): ");
+            V = Configuracion.enteroOPreguntar("arc.v", "Introduce V (Vecinos por grupo): ");
+            S = Configuracion.enteroOPreguntar("arc.s", "Introduce S (Iteraciones): ");
+            intercambioDirecto = Configuracion.texto("arc.intercambio", "servidor").equalsIgnoreCase("directo");
+            clientesPropios = N;
+        }
         
         if (N % V != 0) {
             System.out.println("Error: N debe ser múltiplo de V para que los grupos sean iguales.");
             return;
         }
+        gruposPropios = 0;
+        for (int g = 0; g < N / V; g++) {
+            if (ProtocoloCluster.releDeGrupo(g, numReles) == indiceRele) gruposPropios++;
+        }
 
-        try {
-            // =================================================================
-            // FASE 1: REGISTRO VÍA TCP (Fiabilidad Crítica)
-            // =================================================================
-            // Usamos TCP aquí porque no podemos permitirnos perder ni un solo registro.
-            System.out.println("\n--- FASE 1: REGISTRO (TCP) ---");
-            ServerSocket serverSocketTCP = new ServerSocket(PUERTO);
-            System.out.println("Esperando a " + N + " clientes en puerto TCP " + PUERTO + "...");
-
-            // Bucle secuencial: Atendemos a los clientes de uno en uno para darles su ID.
-            for (int i = 0; i < N; i++) {
-                // 'accept()' bloquea hasta que entra un cliente.
-                Socket clienteTCP = serverSocketTCP.accept();
-                
-                // Canales de E/S para hablar con el cliente.
-                DataOutputStream dos = new DataOutputStream(clienteTCP.getOutputStream());
-                DataInputStream dis = new DataInputStream(clienteTCP.getInputStream());
-
-                // El cliente nos dice en qué puerto UDP va a escuchar luego.
-                int puertoUDPCliente = dis.readInt(); 
-                InetAddress ipCliente = clienteTCP.getInetAddress();
-
-                // Asignamos ID y Grupo matemáticamente.
-                int idCliente = i;
-                int idGrupo = i / V; // División entera para agrupar (ej: 0..9 -> Grupo 0).
+        boolean esCoordinador = rol.equalsIgnoreCase("coordinador");
+        if (!esCoordinador && Configuracion.texto("arc.modo", "pool").equalsIgnoreCase("reactores")) {
+            // No tiene sentido tener más reactores que grupos: sobrarían hilos sin trabajo.
+            int porDefecto = Runtime.getRuntime().availableProcessors();
+            numReactores = Math.max(1, Math.min(Configuracion.entero("arc.reactores", porDefecto), gruposPropios));
+            System.out.println("Modo REACTORES: " + numReactores + " hilos, puertos UDP "
+                    + (PUERTO + 1) + ".." + (PUERTO + numReactores));
+        }
+        if (Boolean.parseBoolean(Configuracion.texto("arc.etapas", "false"))) {
+            etapas = new EtapasServidor(Configuracion.entero("arc.etapasMuestreo", 16));
+            System.out.println("Cronometraje por etapas: 1 de cada " + etapas.cadaK() + " paquetes.");
+        }
+        if (intercambioDirecto) {
+            System.out.println("Intercambio DIRECTO: los clientes se mandan coordenadas y ACKs entre ellos.");
+        }
 
-                // Guardamos la ficha del cliente en memoria.
-                InfoCliente nuevo = new InfoCliente(idCliente, idGrupo, ipCliente, puertoUDPCliente);
-                clientesConectados.put(idCliente, nuevo);
-                System.out.println("  -> Cliente " + idCliente + " registrado (TCP). UDP en: " + puertoUDPCliente);
+        Metricas metricas = null;
+        try {
+            if (entradaCoordinador != null) {
+                // RELÉ: le contamos al coordinador cómo escuchamos y esperamos las fichas de nuestros clientes.
+                controlCoordinador.writeInt(numReactores);
+                controlCoordinador.flush();
+                clientesConectados = ProtocoloCluster.leerClientes(entradaCoordinador, N);
+                clientesPropios = 0;
+                for (InfoCliente c : clientesConectados) if (c != null) clientesPropios++;
+                System.out.println("Relé " + indiceRele + "/" + numReles + ": " + clientesPropios + " clientes en "
+                        + gruposPropios + " grupos.");
+            } else {
+                if (esCoordinador) {
+                    // COORDINADOR: antes de registrar necesitamos saber a qué puerto mandar cada grupo.
+                    coordinador = Coordinador.conectar(Configuracion.texto("arc.reles", ""), N, V, S, intercambioDirecto);
+                }
+                // =================================================================
+                // FASE 1: REGISTRO VÍA TCP (Fiabilidad Crítica)
+                // =================================================================
+                // Usamos TCP aquí porque no podemos permitirnos perder ni un solo registro.
+                System.out.println("\n--- FASE 1: REGISTRO (TCP) ---");
+                registrarClientes();
+                if (coordinador != null) {
+                    // El resto (FASE 2 y 3) lo hacen los relés: nosotros solo llevamos la cuenta.
+                    coordinador.repartir(clientesConectados);
+                    coordinador.esperarFin();
+                    return;
+                }
+            }
 
-                // Le enviamos su "DNI" (configuración) por TCP.
-                dos.writeInt(idCliente);
-                dos.writeInt(idGrupo);
-                dos.writeInt(V);
-                
-                // Cerramos el canal TCP. El registro ha terminado con éxito.
-                clienteTCP.close();
+            prepararEstado();
+            String rutaTraza = Configuracion.texto("arc.traza", "");
+            if (!rutaTraza.isBlank()) {
+                long maxBytes = Configuracion.entero("arc.trazaMaxMB", 256) * 1024L * 1024L;
+                traza = TrazaPaquetes.crear(java.nio.file.Path.of(rutaTraza), maxBytes, N, V, S, clientesConectados);
+                System.out.println("Traza de paquetes en " + rutaTraza + " (hasta " + maxBytes / (1024 * 1024) + " MB).");
             }
-            
-            serverSocketTCP.close(); // Ya no admitimos más registros.
-            System.out.println("Registro TCP completado. Todos los clientes listos.");
 
             // =================================================================
             // FASE 2: SIMULACIÓN UDP (Velocidad Máxima)
             // =================================================================
-            // Abrimos el socket UDP para el bombardeo de datos.
-            DatagramSocket socketUDP = new DatagramSocket(PUERTO); 
+            // Abrimos los canales UDP (NIO) para el bombardeo de datos: uno en modo clásico,
+            // uno por reactor en modo reactores.
+            canalesUDP = new Transporte[Math.max(1, numReactores)];
+            for (int k = 0; k < canalesUDP.length; k++) {
+                canalesUDP[k] = abrirCanalUDP(numReactores == 0 ? PUERTO : PUERTO + 1 + k);
+            }
             System.out.println("\n--- FASE 2: SIMULACIÓN (UDP MULTI-HILO) ---");
             
-            // Enviamos la señal de salida a todos (Broadcast manual).
-            for (InfoCliente cliente : clientesConectados.values()) {
-                Mensaje msjInicio = new Mensaje(Mensaje.messageType.INICIAR_SIMULACION, cliente.idCliente(), "", 0);
-                byte[] datos = serializarMensaje(msjInicio);
-                socketUDP.send(new DatagramPacket(datos, datos.length, cliente.direccion(), cliente.puerto()));
+            // Enviamos la señal de salida a todos (Broadcast manual), cada uno desde el canal de su grupo.
+            for (InfoCliente cliente : clientesConectados) {
+                if (cliente == null) continue; // De otro relé.
+                Mensaje msjInicio = new Mensaje(Mensaje.messageType.INICIAR_SIMULACION, cliente.idCliente(), 0);
+                msjInicio.idDestino = cliente.idCliente();
+                enviar(canalDeGrupo(cliente.idGrupo()), msjInicio.type, serializarMensaje(msjInicio), cliente.endpoint());
             }
             System.out.println("Señal de inicio enviada. Procesando mensajes en paralelo...");
+            if (agrupador != null || agregadorAcks != null) {
+                Thread.ofPlatform().name("agrupador-plazos").daemon().start(Servidor::vigilarPlazos);
+            }
 
             // Variable atómica (segura para hilos) para contar el progreso global.
             java.util.concurrent.atomic.AtomicInteger clientesFinalizados = new java.util.concurrent.atomic.AtomicInteger(0);
-            
-            // --- BUCLE PRINCIPAL (EL PRODUCTOR) ---
-            // La única misión de este bucle es sacar paquetes de la tarjeta de red lo más rápido posible.
-            while (clientesFinalizados.get() < N) {
-                byte[] bufer = new byte[4096];
-                DatagramPacket peticion = new DatagramPacket(bufer, bufer.length);
-                
-                // 1. RECEPCIÓN (Bloqueante pero muy rápida).
-                socketUDP.receive(peticion);
-
-                // 2. CLONADO DE DATOS
-                // ¡CRÍTICO! Si no copiamos los datos a un array nuevo ('datosCopia'), el siguiente 'receive'
-                // sobrescribiría el buffer antes de que el hilo trabajador pudiera leerlo.
-                byte[] datosCopia = Arrays.copyOf(peticion.getData(), peticion.getLength());
-                int longitud = peticion.getLength();
-                InetAddress ip = peticion.getAddress();
-                int puerto = peticion.getPort();
+            metricas = publicarMetricas(clientesFinalizados);
 
-                // 3. DESPACHO A WORKER (Pasar la patata caliente)
-                // En lugar de procesar el mensaje aquí (que bloquearía la recepción),
-                // se lo damos al Thread Pool para que lo haga en segundo plano.
-                pool.execute(() -> {
-                    try {
-                        // --- CÓDIGO DEL TRABAJADOR (CONSUMIDOR) ---
-                        // Esto se ejecuta en paralelo en uno de los 50 hilos.
-                        Mensaje msj = deserializarMensaje(datosCopia, longitud);
-                        InfoCliente remitente = buscarCliente(ip, puerto);
-                        
-                        // Solo procesamos si el cliente está registrado (seguridad básica).
-                        if (remitente != null) {
-                            procesarMensaje(socketUDP, msj, remitente, clientesFinalizados);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+            if (numReactores > 0) {
+                simularConReactores(clientesFinalizados);
+            } else {
+                simularConPool(canalesUDP[0], clientesFinalizados);
             }
             
             // =================================================================
             // FASE 3: CIERRE
             // =================================================================
-            pool.shutdown(); // Apagamos los trabajadores.
-            socketUDP.close(); // Cerramos el socket.
+            pararTrabajadores(5000); // Que terminen sus envíos antes de contar.
+            cerrarCanales(); // Cerramos los canales (si no los cerró ya el último trabajador).
             System.out.println("\n--- FIN DE LA SIMULACIÓN ---");
+            if (traza != null) traza.cerrar();
+            trafico.imprimir("TRÁFICO UDP DEL SERVIDOR");
+            if (cola != null) cola.imprimir("COLA DE TRABAJO DEL SERVIDOR");
+            if (etapas != null) etapas.imprimir("ETAPAS DEL RELÉ");
+            if (controlCoordinador != null) {
+                ProtocoloCluster.escribirFin(controlCoordinador, trafico);
+                controlCoordinador.close();
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (metricas != null) metricas.cerrar(); // El HttpServer no es daemon: si no, la JVM no acaba.
+        }
+    }
+
+    /**
+     * Congela la lista de clientes en el registro inmutable y prepara el estado de la FASE 2
+     * (contadores de cierre, supresión de duplicados y agrupación si está activada).
+     */
+    private static void prepararEstado() {
+        registro = new RegistroClientes(clientesConectados, N / V);
+        finalizadosPorGrupo = new AtomicIntegerArray(N / V);
+        difundidas = new AtomicLongArray(N);
+        // En modo directo no pasan por aquí ni coordenadas ni ACKs: no hay nada que agrupar.
+        // Iteraciones por cliente que se agrupan a la vez (más de una con clientes en bucle abierto).
+        int ventana = Math.max(1, Configuracion.entero("arc.agruparVentana", 16));
+        if (!intercambioDirecto && Boolean.parseBoolean(Configuracion.texto("arc.agrupar", "false"))) {
+            long plazoUs = Configuracion.entero("arc.agruparPlazoUs", 10_000);
+            agrupador = new AgrupadorCoordenadas(N / V, V, ventana, plazoUs * 1000);
+            System.out.println("Agrupación de coordenadas activada (plazo " + plazoUs + " us).");
+        }
+        if (!intercambioDirecto && Boolean.parseBoolean(Configuracion.texto("arc.agruparAcks", "false"))) {
+            long plazoUs = Configuracion.entero("arc.agruparAcksPlazoUs", 10_000);
+            agregadorAcks = new AgregadorAcks(N / V, V, ventana, plazoUs * 1000);
+            System.out.println("Agrupación de ACKs activada (plazo " + plazoUs + " us).");
+        }
+    }
+
+    /**
+     * REPRODUCCIÓN (ReproductorTraza): deja el servidor como estaba al empezar la FASE 2 de la
+     * ejecución capturada, sin registro TCP, y con 'canal' como único canal (en modo pool).
+     * Luego cada datagrama se mete con atenderPaquete.
+     */
+    static void prepararReproduccion(int n, int v, int s, InfoCliente[] clientes, Transporte canal) {
+        N = n;
+        V = v;
+        S = s;
+        clientesConectados = clientes;
+        clientesPropios = 0;
+        gruposPropios = 0;
+        boolean[] grupoPropio = new boolean[N / V];
+        for (InfoCliente c : clientes) {
+            if (c == null) continue; // La traza era de un relé: solo sus grupos.
+            clientesPropios++;
+            if (!grupoPropio[c.idGrupo()]) gruposPropios++;
+            grupoPropio[c.idGrupo()] = true;
+        }
+        canalesUDP = new Transporte[] { canal };
+        if (Boolean.parseBoolean(Configuracion.texto("arc.etapas", "false"))) {
+            etapas = new EtapasServidor(Configuracion.entero("arc.etapasMuestreo", 16));
+        }
+        prepararEstado();
+        if (agrupador != null || agregadorAcks != null) {
+            Thread.ofPlatform().name("agrupador-plazos").daemon().start(Servidor::vigilarPlazos);
+        }
+    }
+
+    /** Tabla de etapas (si arc.etapas está activado). La usa ReproductorTraza al terminar. */
+    static void imprimirEtapas(String titulo) {
+        if (etapas != null) etapas.imprimir(titulo);
+    }
+
+    /**
+     * Métricas en vivo (JMX y, con -Darc.metricasPuerto, texto por HTTP). Todo son lecturas de
+     * contadores que ya llevamos; nada de esto añade trabajo al camino de los paquetes.
+     */
+    private static Metricas publicarMetricas(java.util.concurrent.atomic.AtomicInteger clientesFinalizados) {
+        Metricas m = new Metricas("servidor")
+                .contadorPorTipo("datagramas_enviados", "Datagramas UDP enviados", trafico::datagramasEnviados)
+                .contadorPorTipo("bytes_enviados", "Bytes UDP enviados", trafico::bytesEnviados)
+                .contadorPorTipo("datagramas_recibidos", "Datagramas UDP recibidos", trafico::datagramasRecibidos)
+                .contadorPorTipo("bytes_recibidos", "Bytes UDP recibidos", trafico::bytesRecibidos)
+                .medida("clientes_activos", "Clientes que aún no han terminado sus S iteraciones", () -> clientesPropios - clientesFinalizados.get())
+                .contador("clientes_finalizados", "Clientes que han terminado", clientesFinalizados::get)
+                .medida("grupos_finalizados", "Grupos a los que ya se les ha mandado GROUP_DONE", gruposFinalizados::get)
+                .vector("finalizados_por_grupo", "grupo", "Clientes terminados en cada grupo", () -> {
+                    long[] v = new long[finalizadosPorGrupo.length()];
+                    for (int g = 0; g < v.length; g++) v[g] = finalizadosPorGrupo.get(g);
+                    return v;
+                });
+        if (numReactores == 0) {
+            // La cola se crea al arrancar los trabajadores: hasta entonces, todo a 0.
+            m.medida("trabajadores", "Hilos del pool", () -> (cola == null) ? 0 : cola.numConsumidores())
+                    .ritmo("trabajadores_utilizacion", "Fracción del tiempo que los trabajadores pasan atendiendo paquetes",
+                            () -> (cola == null) ? 0 : cola.nsOcupados(),
+                            () -> (cola == null) ? 0 : 1e9 * cola.numConsumidores())
+                    .medida("cola_profundidad", "Paquetes esperando en la cola", () -> (cola == null) ? 0 : cola.profundidad())
+                    .medida("cola_profundidad_maxima", "Máximo de paquetes que ha llegado a tener la cola",
+                            () -> (cola == null) ? 0 : cola.profundidadMaxima())
+                    .medida("cola_espera_media_us", "Tiempo medio en cola desde el inicio (us)",
+                            () -> (cola == null) ? 0 : cola.esperaMediaNs() / 1000)
+                    .contador("cola_atendidos", "Paquetes sacados de la cola", () -> (cola == null) ? 0 : cola.atendidos())
+                    .contador("cola_descartados", "Paquetes descartados por la política de la cola",
+                            () -> (cola == null) ? 0 : cola.descartados());
+        }
+        if (etapas != null) {
+            // Acumulado desde el inicio, recalculado en cada muestreo (no en cada consulta).
+            m.alMuestrear(etapas::actualizar);
+            for (EtapasServidor.Etapa e : EtapasServidor.Etapa.values()) {
+                m.medida("etapa_muestras", "etapa", e.name(), "Paquetes cronometrados por etapa", () -> etapas.etapa(e).total());
+            }
+            for (EtapasServidor.Etapa e : EtapasServidor.Etapa.values()) {
+                m.medida("etapa_media_us", "etapa", e.name(), "Tiempo medio por etapa (us)", () -> etapas.etapa(e).media() / 1e3);
+            }
+            for (EtapasServidor.Etapa e : EtapasServidor.Etapa.values()) {
+                m.medida("etapa_p99_us", "etapa", e.name(), "p99 por etapa (us)", () -> etapas.etapa(e).percentil(99) / 1e3);
+            }
+        }
+        return m.arrancar(Configuracion.entero("arc.metricasPuerto", 0));
+    }
+
+    /**
+     * FASE 1: Registro concurrente.
+     * * Un hilo acepta conexiones y cada conexión se atiende en su propio hilo virtual, así que
+     * miles de clientes pueden registrarse a la vez (antes era uno detrás de otro).
+     * * La asignación sigue siendo determinista y sin carreras: los IDs se reservan con un
+     * contador atómico (un lote recibe IDs consecutivos) y el grupo es siempre ID / V.
+     * Termina cuando los N clientes tienen su ficha.
+     */
+    private static void registrarClientes() throws IOException, InterruptedException {
+        ServerSocket serverSocketTCP = new ServerSocket(PUERTO, BACKLOG_TCP);
+        clientesConectados = new InfoCliente[N];
+        grupoCompleto = new CountDownLatch[N / V];
+        for (int g = 0; g < grupoCompleto.length; g++) grupoCompleto[g] = new CountDownLatch(V);
+        System.out.println("Esperando a " + N + " clientes en puerto TCP " + PUERTO + "...");
+        escuchando.countDown();
+
+        AtomicInteger siguienteId = new AtomicInteger(0);
+        CountDownLatch todosRegistrados = new CountDownLatch(N);
+        AtomicLong primerContacto = new AtomicLong(0); // Para medir cuánto tarda el arranque.
+        ExecutorService atencion = Executors.newVirtualThreadPerTaskExecutor();
+
+        Thread aceptador = new Thread(() -> {
+            try {
+                while (true) {
+                    // 'accept()' bloquea hasta que entra un cliente.
+                    Socket clienteTCP = serverSocketTCP.accept();
+                    primerContacto.compareAndSet(0, System.nanoTime());
+                    atencion.execute(() -> atenderRegistro(clienteTCP, siguienteId, todosRegistrados));
+                }
+            } catch (IOException e) {
+                // Normal: cerramos el ServerSocket cuando ya están todos.
+            }
+        }, "aceptador-tcp");
+        aceptador.start();
+
+        todosRegistrados.await();
+        long duracionMs = (System.nanoTime() - primerContacto.get()) / 1_000_000;
+
+        serverSocketTCP.close(); // Ya no admitimos más registros.
+        aceptador.join();
+        atencion.shutdown(); // Dejamos terminar las respuestas que estén en curso.
+        atencion.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.println("Registro TCP completado en " + duracionMs + " ms. Todos los clientes listos.");
+    }
+
+    /**
+     * Atiende UNA conexión de registro (simple o en lote). Se ejecuta en un hilo virtual.
+     */
+    private static void atenderRegistro(Socket clienteTCP, AtomicInteger siguienteId, CountDownLatch todosRegistrados) {
+        try (clienteTCP) {
+            // Canales de E/S para hablar con el cliente (con buffer: un lote son muchos ints).
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(clienteTCP.getOutputStream()));
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(clienteTCP.getInputStream()));
+
+            // El cliente nos dice en qué puerto(s) UDP va a escuchar luego.
+            int[] puertosUDP = ProtocoloRegistro.leerPeticion(dis);
+            InetAddress ipCliente = clienteTCP.getInetAddress();
+
+            // Reservamos de golpe un bloque de IDs consecutivos (sin pasarnos de N).
+            int primerId = reservarIds(siguienteId, puertosUDP.length);
+            if (primerId < 0) {
+                System.out.println("  -> Registro rechazado: ya hay " + N + " clientes.");
+                return;
+            }
+
+            for (int j = 0; j < puertosUDP.length; j++) {
+                // Asignamos ID y Grupo matemáticamente.
+                int idCliente = primerId + j;
+                int idGrupo = idCliente / V; // División entera para agrupar (ej: 0..9 -> Grupo 0).
+
+                // Guardamos la ficha del cliente en memoria (cada hilo escribe en posiciones distintas).
+                clientesConectados[idCliente] = new InfoCliente(idCliente, idGrupo, ipCliente, puertosUDP[j]);
+                grupoCompleto[idGrupo].countDown();
+                todosRegistrados.countDown();
+                System.out.println("  -> Cliente " + idCliente + " registrado (TCP). UDP en: " + puertosUDP[j]);
+
+                // Le enviamos su "DNI" (configuración) por TCP.
+                ProtocoloRegistro.escribirAsignacion(dos,
+                        new ProtocoloRegistro.Asignacion(idCliente, idGrupo, V, puertoUDPDeGrupo(idGrupo), null),
+                        intercambioDirecto);
+            }
+            dos.flush();
+
+            // Modo directo: la tabla de vecinos de cada grupo de la petición, según se vayan completando.
+            // (Esperamos en un hilo virtual: miles de registros esperando no cuestan hilos del sistema.)
+            if (intercambioDirecto) {
+                int grupoAnterior = -1;
+                for (int j = 0; j < puertosUDP.length; j++) {
+                    int idGrupo = (primerId + j) / V; // IDs consecutivos: cada grupo aparece seguido.
+                    if (idGrupo == grupoAnterior) continue;
+                    grupoAnterior = idGrupo;
+                    grupoCompleto[idGrupo].await();
+                    ProtocoloRegistro.escribirVecinos(dos, idGrupo,
+                            Arrays.copyOfRange(clientesConectados, idGrupo * V, idGrupo * V + V));
+                    dos.flush();
+                }
+            }
+            // Al salir del try se cierra el canal TCP. El registro ha terminado con éxito.
+        } catch (IOException e) {
+            System.err.println("Error en un registro TCP: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reserva 'cuantos' IDs consecutivos. Devuelve el primero, o -1 si no caben en N.
+    private static int reservarIds(AtomicInteger siguienteId, int cuantos) {
+        while (true) {
+            int actual = siguienteId.get();
+            if (actual + cuantos > N) return -1;
+            if (siguienteId.compareAndSet(actual, actual + cuantos)) return actual;
+        }
+    }
+
+    /**
+     * MODO CLÁSICO: un hilo recibe (Productor) y el pool de trabajadores procesa (Consumidores).
+     */
+    private static void simularConPool(Transporte canalUDP, java.util.concurrent.atomic.AtomicInteger clientesFinalizados) throws IOException, InterruptedException {
+        arrancarTrabajadores(canalUDP, clientesFinalizados);
 
+        // --- BUCLE PRINCIPAL (EL PRODUCTOR) ---
+        // La única misión de este bucle es sacar paquetes de la tarjeta de red lo más rápido posible.
+        // Cuando el último grupo termina, el trabajador que lo detecta cierra el canal y el
+        // 'receive' bloqueado salta con AsynchronousCloseException: así salimos del bucle.
+        EtapasServidor.Hilo cronometro = (etapas != null) ? etapas.hilo() : null;
+        try {
+            while (clientesFinalizados.get() < clientesPropios) {
+                // 1. PRÉSTAMO DE BUFFER
+                // En vez de 'new byte[4096]' + copia por paquete, tomamos un buffer directo del pool.
+                // El trabajador lo devolverá al terminar; mientras tanto nadie más lo toca,
+                // así que ya no hace falta clonar los datos.
+                ByteBuffer bufer = buferesRecepcion.tomar();
+
+                // 2. RECEPCIÓN (Bloqueante pero muy rápida).
+                InetSocketAddress origen;
+                try {
+                    origen = canalUDP.recibir(bufer);
+                } catch (IOException e) {
+                    buferesRecepcion.devolver(bufer);
+                    throw e;
+                }
+                bufer.flip();
+                if (traza != null) traza.entrada(bufer, origen);
+                long inicio = (cronometro != null) ? etapas.empezar(cronometro) : 0;
+
+                // 3. DESPACHO A WORKER (Pasar la patata caliente)
+                // En lugar de procesar el mensaje aquí (que bloquearía la recepción),
+                // lo dejamos en la cola para que lo haga un trabajador. Si está llena, la
+                // política decide: esperar, o tirar este o el más antiguo (nunca uno de control).
+                cola.encolar(bufer, origen);
+                if (inicio != 0) etapas.marcar(cronometro, EtapasServidor.Etapa.ENTREGA, inicio);
+            }
+        } catch (AsynchronousCloseException e) {
+            // Cierre normal: el último grupo ha terminado.
+        }
+    }
+
+    /**
+     * Crea la cola acotada y los trabajadores que la vacían (modo clásico).
+     */
+    private static void arrancarTrabajadores(Transporte canalUDP, java.util.concurrent.atomic.AtomicInteger clientesFinalizados) {
+        int numTrabajadores = Math.max(1, Configuracion.entero("arc.trabajadores", 50));
+        int capacidad = Math.max(2, Configuracion.entero("arc.colaCapacidad", 1024));
+        ColaTrabajo.Politica politica = ColaTrabajo.politica(Configuracion.texto("arc.colaPolitica", "bloquear"));
+        Set<Mensaje.messageType> descartables = ColaTrabajo.tipos(
+                Configuracion.texto("arc.colaDescartables", "COMPARTIR_COORDENADAS,ACK,ACK_AGRUPADO"));
+
+        // Un buffer por hueco de la cola (ya redondeada), uno por trabajador y el del receptor.
+        buferesRecepcion = new PoolBuferes(ColaTrabajo.huecos(capacidad) + numTrabajadores + 1, CodecMensaje.TAM_MAXIMO);
+        cola = new ColaTrabajo(capacidad, politica, descartables, buferesRecepcion);
+        if (etapas != null) etapas.setEsperaCola(cola::espera);
+        System.out.println("Pool de " + numTrabajadores + " trabajadores, cola de " + cola.capacidad()
+                + " (" + politica + ", descartables: " + descartables + ").");
+
+        trabajadores = new Thread[numTrabajadores];
+        for (int k = 0; k < numTrabajadores; k++) {
+            ColaTrabajo.Consumidor turno = cola.nuevoConsumidor();
+            trabajadores[k] = new Thread(() -> {
+                // --- CÓDIGO DEL TRABAJADOR (CONSUMIDOR) ---
+                // Esto se ejecuta en paralelo en cada uno de los trabajadores.
+                try {
+                    while (cola.tomar(turno)) {
+                        try {
+                            atenderPaquete(canalUDP, turno.bufer, turno.origen, clientesFinalizados);
+                        } finally {
+                            buferesRecepcion.devolver(turno.bufer); // ¡Siempre! Si no, el pool se vacía.
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Apagado a la fuerza: salimos.
+                }
+            }, "trabajador-" + k);
+            trabajadores[k].setDaemon(true); // Se paran con pararTrabajadores; no deben retener la JVM si algo falla.
+            trabajadores[k].start();
+        }
+    }
+
+    /** Cierra la cola y espera a que los trabajadores terminen lo que quede (como shutdown + awaitTermination). */
+    private static void pararTrabajadores(long esperaMs) throws InterruptedException {
+        if (cola == null) return;
+        cola.cerrar();
+        long limite = System.currentTimeMillis() + esperaMs;
+        for (Thread t : trabajadores) {
+            t.join(Math.max(1, limite - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * MODO REACTORES: K hilos, cada uno recibe Y procesa los paquetes de su propio canal.
+     * No hay pool ni cola intermedia: el mismo hilo que recibe el paquete lo reenvía.
+     * Cada reactor tiene un único buffer de recepción que reutiliza en cada vuelta.
+     */
+    private static void simularConReactores(java.util.concurrent.atomic.AtomicInteger clientesFinalizados) throws InterruptedException {
+        Thread[] reactores = new Thread[numReactores];
+        for (int k = 0; k < numReactores; k++) {
+            Transporte canal = canalesUDP[k];
+            reactores[k] = new Thread(() -> {
+                ByteBuffer bufer = ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO);
+                try {
+                    while (clientesFinalizados.get() < clientesPropios) {
+                        bufer.clear();
+                        InetSocketAddress origen = canal.recibir(bufer);
+                        bufer.flip();
+                        if (traza != null) traza.entrada(bufer, origen);
+                        atenderPaquete(canal, bufer, origen, clientesFinalizados);
+                    }
+                } catch (ClosedChannelException e) {
+                    // Cierre normal: el último grupo ha terminado (puede ser de otro reactor).
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "reactor-" + k);
+            reactores[k].start();
+        }
+        for (Thread reactor : reactores) {
+            reactor.join();
+        }
+    }
+
+    /**
+     * Decodifica un paquete recibido, averigua quién lo manda y lo procesa.
+     * Común a los dos modos (la llama un trabajador del pool o un reactor) y a ReproductorTraza.
+     */
+    static void atenderPaquete(Transporte canal, ByteBuffer bufer, InetSocketAddress origen, java.util.concurrent.atomic.AtomicInteger clientesFinalizados) {
+        EtapasServidor.Hilo cronometro = (etapas != null) ? etapas.hilo() : null;
+        long inicio = (cronometro != null) ? etapas.empezar(cronometro) : 0;
+        try {
+            Mensaje msj = deserializarMensaje(bufer);
+            trafico.recibido(msj.type, bufer.limit());
+            long t = (inicio != 0) ? etapas.marcar(cronometro, EtapasServidor.Etapa.DECODIFICAR, inicio) : 0;
+            InfoCliente remitente = buscarCliente(origen, msj.idCliente);
+            if (inicio != 0) t = etapas.marcar(cronometro, EtapasServidor.Etapa.BUSCAR, t);
+            
+            // Solo procesamos si el cliente está registrado (seguridad básica).
+            if (remitente != null) {
+                procesarMensaje(canal, msj, bufer, remitente, clientesFinalizados);
+            }
+            if (inicio != 0) etapas.terminar(cronometro, inicio, t);
+        } catch (ClosedChannelException e) {
+            // La simulación ya terminó y el canal está cerrado: nada que hacer.
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -170,53 +638,105 @@ public class Servidor {
     /**
      * Lógica de negocio del servidor.
      * Decide qué hacer con cada mensaje recibido (Reenviar, ACK, Cerrar grupo...).
+     * @param datos El datagrama original tal cual llegó (posición 0 = inicio del paquete).
      */
-    private static void procesarMensaje(DatagramSocket socket, Mensaje msj, InfoCliente remitente, java.util.concurrent.atomic.AtomicInteger contadorFin) throws IOException {
+    private static void procesarMensaje(Transporte canal, Mensaje msj, ByteBuffer datos, InfoCliente remitente, java.util.concurrent.atomic.AtomicInteger contadorFin) throws IOException {
         switch (msj.type) {
             case COMPARTIR_COORDENADAS:
-                // El servidor actúa como repetidor: envía las coordenadas a todos los miembros del grupo
-                // EXCEPTO al que las envió.
-                for (InfoCliente vecino : clientesConectados.values()) {
-                    if (vecino.idGrupo() == remitente.idGrupo() && vecino.idCliente() != remitente.idCliente()) {
-                        byte[] datos = serializarMensaje(msj); 
-                        socket.send(new DatagramPacket(datos, datos.length, vecino.direccion(), vecino.puerto()));
+                // Retransmisión selectiva (capa fiable de Persona): si trae destinatario, va SOLO a ese
+                // vecino. Siempre se reenvía, porque puede que la anterior también se perdiera.
+                if (msj.idDestino != Mensaje.SIN_DESTINO) {
+                    InfoCliente vecino = registro.porId(msj.idDestino);
+                    if (vecino != null && vecino.idGrupo() == remitente.idGrupo() && vecino.idCliente() != remitente.idCliente()) {
+                        datos.position(0);
+                        enviar(canal, msj.type, datos, vecino.endpoint());
                     }
+                    break;
                 }
+                // Supresión de duplicados: si ya difundimos esta iteración de este cliente, no repetimos.
+                if (!primeraDifusion(remitente.idCliente(), msj.numIteracion)) {
+                    break;
+                }
+                // Modo agrupado: se guardan hasta que está el grupo entero (o vence el plazo) y sale
+                // un único datagrama por miembro. Si su iteración ya salió, siguen el camino clásico.
+                if (agrupador != null) {
+                    List<ByteBuffer> agregados = agrupador.anotar(remitente.idGrupo(), remitente.idCliente(), msj, System.nanoTime());
+                    if (agregados != null) {
+                        difundirAgregados(canal, remitente.idGrupo(), agregados);
+                        break;
+                    }
+                }
+                // El servidor actúa como repetidor: envía las coordenadas a todo el grupo menos al autor.
+                difundirAlGrupo(canal, remitente.idGrupo(), remitente.idCliente(), datos);
                 break;
 
             case ACK:
-                // Reenvío simple de confirmación al destinatario específico.
-                int idDestino = Integer.parseInt(msj.mensaje); // El destinatario viene en el contenido.
-                InfoCliente destino = clientesConectados.get(idDestino);
-                
-                if (destino != null) {
-                    // Construimos un nuevo ACK indicando quién confirma.
-                    Mensaje msjAck = new Mensaje(Mensaje.messageType.ACK, idDestino, String.valueOf(remitente.idCliente()), msj.numIteracion);
-                    byte[] datos = serializarMensaje(msjAck);
-                    socket.send(new DatagramPacket(datos, datos.length, destino.direccion(), destino.puerto()));
+                // El destinatario viaja en idDestino y quien confirma en idCliente: sin parseInt.
+                InfoCliente destino = registro.porId(msj.idDestino);
+                if (destino == null) break;
+
+                if (agregadorAcks != null) {
+                    // Se apunta en su bitmap; solo sale un ACK_MAPA cuando están todos (o vence el plazo).
+                    enviarConfirmaciones(canal, agregadorAcks.anotar(remitente.idGrupo(), destino.idCliente(),
+                            remitente.idCliente(), msj.numIteracion, System.nanoTime()));
+                } else {
+                    // Reenvío simple al destinatario: los mismos bytes que llegaron, sin recodificar.
+                    datos.position(0);
+                    enviar(canal, msj.type, datos, destino.endpoint());
+                }
+                break;
+
+            case ACK_AGRUPADO:
+                // Un miembro confirma de golpe todo el agregado de esa iteración: cada cliente que iba
+                // dentro recibe su ACK de siempre (contenido = quién confirma).
+                int[] confirmados = (agrupador != null) ? agrupador.incluidos(remitente.idGrupo(), msj.numIteracion) : null;
+                if (confirmados == null) break; // Ya no lo recordamos: lo cubre el timeout (o la capa fiable).
+                if (agregadorAcks != null) {
+                    long ahora = System.nanoTime();
+                    for (int idConfirmado : confirmados) {
+                        enviarConfirmaciones(canal, agregadorAcks.anotar(remitente.idGrupo(), idConfirmado,
+                                remitente.idCliente(), msj.numIteracion, ahora));
+                    }
+                    break;
+                }
+                Mensaje msjConfirmacion = new Mensaje(Mensaje.messageType.ACK, remitente.idCliente(), msj.numIteracion);
+                ByteBuffer datosConfirmacion = serializarMensaje(msjConfirmacion); // Codificado una sola vez.
+                for (int idConfirmado : confirmados) {
+                    if (idConfirmado == remitente.idCliente()) continue;
+                    CodecMensaje.escribirDestino(datosConfirmacion, idConfirmado);
+                    datosConfirmacion.position(0);
+                    enviar(canal, msjConfirmacion.type, datosConfirmacion, registro.porId(idConfirmado).endpoint());
                 }
                 break;
 
             case TIEMPOS_SIMULACION:
                 // Un cliente ha terminado todas sus iteraciones.
                 int terminados = contadorFin.incrementAndGet();
-                System.out.println("Cliente " + remitente.idCliente() + " terminó. (" + terminados + "/" + N + ")");
+                System.out.println("Cliente " + remitente.idCliente() + " terminó. (" + terminados + "/" + clientesPropios + ")");
                 
                 // LÓGICA DE CIERRE DE GRUPO
                 // Contamos cuántos de ESTE grupo han terminado.
-                int finGrupo = finalizadosPorGrupo.merge(remitente.idGrupo(), 1, Integer::sum);
+                int finGrupo = finalizadosPorGrupo.incrementAndGet(remitente.idGrupo());
                 
                 // Si el contador llega a V (todos los miembros), liberamos el grupo.
                 if (finGrupo == V) {
                     System.out.println("Grupo " + remitente.idGrupo() + " FINALIZADO.");
-                    Mensaje msjFin = new Mensaje(Mensaje.messageType.GROUP_DONE, 0, "", 0);
-                    byte[] datosFin = serializarMensaje(msjFin);
+                    Mensaje msjFin = new Mensaje(Mensaje.messageType.GROUP_DONE, 0, 0);
+                    ByteBuffer datosFin = serializarMensaje(msjFin); // Codificado una sola vez.
                     
                     // Enviamos la señal de liberación a todos los miembros del grupo.
-                    for (InfoCliente c : clientesConectados.values()) {
-                        if (c.idGrupo() == remitente.idGrupo()) {
-                            socket.send(new DatagramPacket(datosFin, datosFin.length, c.direccion(), c.puerto()));
-                        }
+                    for (InfoCliente c : registro.miembros(remitente.idGrupo())) {
+                        CodecMensaje.escribirDestino(datosFin, c.idCliente());
+                        datosFin.rewind();
+                        enviar(canal, msjFin.type, datosFin, c.endpoint());
+                    }
+
+                    // Si era el último grupo, cerramos los canales para despertar a los receptores.
+                    // Se cuenta por grupos (no por clientes) para no cerrar mientras otro trabajador
+                    // todavía está enviando el GROUP_DONE de su grupo.
+                    if (controlCoordinador != null) avisarCoordinador(remitente.idGrupo());
+                    if (gruposFinalizados.incrementAndGet() == gruposPropios) {
+                        cerrarCanales();
                     }
                 }
                 break;
@@ -224,25 +744,204 @@ public class Servidor {
     }
 
     // --- MÉTODOS AUXILIARES ---
-    
-    // Busca un cliente en el mapa usando su IP y Puerto (para saber quién nos habla).
-    private static InfoCliente buscarCliente(InetAddress ip, int puerto) {
-        for (InfoCliente c : clientesConectados.values()) {
-            if (c.direccion().equals(ip) && c.puerto() == puerto) return c;
+
+    /** Envía un datagrama y lo cuenta (con arc.etapas, además cronometra el send si toca; con arc.traza, lo apunta). */
+    private static void enviar(Transporte canal, Mensaje.messageType tipo, ByteBuffer datos, InetSocketAddress destino) throws IOException {
+        if (traza != null) traza.salida(datos, destino);
+        EtapasServidor.Hilo cronometro = (etapas != null) ? etapas.hilo() : null;
+        if (cronometro == null || !etapas.midiendo(cronometro)) {
+            trafico.enviado(tipo, canal.enviar(datos, destino));
+            return;
         }
-        return null;
+        long inicio = System.nanoTime();
+        int bytes = canal.enviar(datos, destino);
+        etapas.envio(cronometro, System.nanoTime() - inicio);
+        trafico.enviado(tipo, bytes);
     }
 
-    /* Esta función convierte un objeto Mensaje en un arreglo de bytes */
-    private static byte[] serializarMensaje(Mensaje msj) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(msj);
-        return bos.toByteArray();
+    /**
+     * Reenvía un COMPARTIR_COORDENADAS a los miembros del grupo EXCEPTO a su autor. Solo recorremos
+     * los V miembros del grupo, no los N clientes. El mensaje reenviado es idéntico al recibido, así
+     * que no volvemos a codificarlo: mandamos los mismos bytes del buffer a cada vecino (solo
+     * rebobinamos y reescribimos los 4 bytes del destinatario). Lo mide también RepartoBenchmark.
+     */
+    static void difundirAlGrupo(Transporte canal, int idGrupo, int autor, ByteBuffer datos) throws IOException {
+        for (InfoCliente vecino : registro.miembros(idGrupo)) {
+            if (vecino.idCliente() != autor) {
+                CodecMensaje.escribirDestino(datos, vecino.idCliente());
+                datos.position(0);
+                enviar(canal, Mensaje.messageType.COMPARTIR_COORDENADAS, datos, vecino.endpoint());
+            }
+        }
+    }
+
+    /**
+     * Apunta que vamos a difundir esa iteración del cliente. Devuelve false si ya se difundió, o si
+     * es más de 32 iteraciones más vieja que la última (tan atrasada se trata como duplicada).
+     */
+    private static boolean primeraDifusion(int idCliente, int iteracion) {
+        while (true) {
+            long actual = difundidas.get(idCliente);
+            int ultima = (int) (actual >>> 32);
+            int vistas = (int) actual;
+            long nuevo;
+            if (iteracion > ultima) {
+                int salto = iteracion - ultima;
+                int mascara = (salto >= 32) ? 1 : (vistas << salto) | 1;
+                nuevo = ((long) iteracion << 32) | (mascara & 0xFFFFFFFFL);
+            } else {
+                int atras = ultima - iteracion;
+                if (atras >= 32 || (vistas & (1 << atras)) != 0) return false;
+                nuevo = actual | (1L << atras);
+            }
+            if (difundidas.compareAndSet(idCliente, actual, nuevo)) return true;
+        }
+    }
+
+    /**
+     * Envía a todo el grupo los paquetes que ha soltado el agrupador (ya codificados): el agregado
+     * va a todos los miembros; una coordenada suelta (si el agregado no cabía), a todos menos a su autor.
+     */
+    private static void difundirAgregados(Transporte canal, int idGrupo, List<ByteBuffer> paquetes) throws IOException {
+        for (ByteBuffer paquete : paquetes) {
+            boolean agregado = paquete.get(1) == Mensaje.messageType.COORDENADAS_AGRUPADAS.ordinal();
+            Mensaje.messageType tipo = agregado ? Mensaje.messageType.COORDENADAS_AGRUPADAS : Mensaje.messageType.COMPARTIR_COORDENADAS;
+            int autor = agregado ? Mensaje.SIN_DESTINO : paquete.getInt(2); // idCliente del paquete.
+            for (InfoCliente miembro : registro.miembros(idGrupo)) {
+                if (miembro.idCliente() == autor) continue;
+                CodecMensaje.escribirDestino(paquete, miembro.idCliente());
+                paquete.position(0);
+                enviar(canal, tipo, paquete, miembro.endpoint());
+            }
+        }
+    }
+
+    /** Envía cada ACK_MAPA que ha soltado el agregador a su destinatario. */
+    private static void enviarConfirmaciones(Transporte canal, List<AgregadorAcks.Confirmacion> confirmaciones) throws IOException {
+        for (AgregadorAcks.Confirmacion confirmacion : confirmaciones) {
+            Mensaje msjMapa = new Mensaje(Mensaje.messageType.ACK_MAPA, Mensaje.SIN_DESTINO, confirmacion.iteracion());
+            msjMapa.idDestino = confirmacion.idDestino();
+            msjMapa.mapa = confirmacion.mapa();
+            enviar(canal, msjMapa.type, serializarMensaje(msjMapa), registro.porId(confirmacion.idDestino()).endpoint());
+        }
+    }
+
+    /**
+     * Hilo del plazo de agrupación: cada medio plazo, los grupos que llevan esperando demasiado
+     * sueltan lo que tengan (un miembro lento no retiene al resto más de arc.agruparPlazoUs,
+     * ni sus ACKs más de arc.agruparAcksPlazoUs).
+     */
+    private static void vigilarPlazos() {
+        long plazoNs = Long.MAX_VALUE;
+        if (agrupador != null) plazoNs = Configuracion.entero("arc.agruparPlazoUs", 10_000) * 1000L;
+        if (agregadorAcks != null) plazoNs = Math.min(plazoNs, Configuracion.entero("arc.agruparAcksPlazoUs", 10_000) * 1000L);
+        long pausaNs = Math.max(50_000L, plazoNs / 2);
+        try {
+            while (gruposFinalizados.get() < gruposPropios) {
+                java.util.concurrent.locks.LockSupport.parkNanos(pausaNs);
+                long ahora = System.nanoTime();
+                for (int g = 0; g < N / V; g++) {
+                    if (agrupador != null) {
+                        List<ByteBuffer> agregados = agrupador.caducados(g, ahora);
+                        if (!agregados.isEmpty()) difundirAgregados(canalDeGrupo(g), g, agregados);
+                    }
+                    if (agregadorAcks != null) {
+                        enviarConfirmaciones(canalDeGrupo(g), agregadorAcks.caducados(g, ahora));
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Cierre normal: la simulación ha terminado.
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Transporte abrirCanalUDP(int puerto) throws IOException {
+        // Buffer de recepción grande: al inicio de cada iteración llegan ráfagas de N*(V-1) ACKs
+        // de golpe y con el buffer por defecto (~200 KB) el kernel descartaría parte de ellos.
+        return Transporte.abrir(puerto, TAM_BUFER_RECEPCION);
+    }
+
+    // Reparto de grupos entre reactores: siempre el mismo reactor para el mismo grupo.
+    private static int reactorDeGrupo(int idGrupo) {
+        return ProtocoloCluster.reactorDeGrupo(idGrupo, numReles, numReactores);
+    }
+
+    private static int puertoUDPDeGrupo(int idGrupo) {
+        if (coordinador != null) return coordinador.puertoUDPDeGrupo(idGrupo); // El de su relé.
+        return (numReactores == 0) ? PUERTO : PUERTO + 1 + reactorDeGrupo(idGrupo);
+    }
+
+    /**
+     * RELÉ: espera en el puerto TCP a que se conecte el coordinador y lee el encargo
+     * (N, V, S, intercambio y qué grupos son nuestros). La respuesta va en main, cuando
+     * ya sabemos cuántos reactores tendremos.
+     */
+    private static DataInputStream esperarCoordinador() throws IOException {
+        Socket socket;
+        try (ServerSocket escucha = new ServerSocket(PUERTO)) {
+            System.out.println("Esperando al coordinador en puerto TCP " + PUERTO + "...");
+            socket = escucha.accept();
+        }
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        controlCoordinador = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        ProtocoloCluster.Encargo encargo = ProtocoloCluster.leerEncargo(dis);
+        N = encargo.N();
+        V = encargo.V();
+        S = encargo.S();
+        intercambioDirecto = encargo.directo();
+        numReles = encargo.numReles();
+        indiceRele = encargo.indice();
+        System.out.println("Encargo del coordinador: N=" + N + " V=" + V + " S=" + S + ", relé "
+                + indiceRele + " de " + numReles + (intercambioDirecto ? " (intercambio directo)" : ""));
+        return dis;
+    }
+
+    /** RELÉ: un grupo nuestro ha recibido su GROUP_DONE (lo pueden llamar varios trabajadores a la vez). */
+    private static void avisarCoordinador(int idGrupo) {
+        synchronized (controlCoordinador) {
+            try {
+                ProtocoloCluster.escribirGrupoTerminado(controlCoordinador, idGrupo);
+            } catch (IOException e) {
+                System.err.println("No se pudo avisar al coordinador del grupo " + idGrupo + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static Transporte canalDeGrupo(int idGrupo) {
+        return canalesUDP[reactorDeGrupo(idGrupo)];
+    }
+
+    private static void cerrarCanales() throws IOException {
+        for (Transporte canal : canalesUDP) {
+            canal.close();
+        }
+    }
+    
+    // Busca un cliente usando su IP y Puerto (para saber quién nos habla). O(1) gracias al registro.
+    // Si varios clientes comparten dirección (MultiplexorPersonas), desempata con el idCliente del mensaje.
+    private static InfoCliente buscarCliente(InetSocketAddress origen, int idDeclarado) {
+        return registro.buscar(origen, idDeclarado);
+    }
+
+    // Buffer de envío por hilo (directo, fuera del heap): cada trabajador del pool reutiliza
+    // el suyo en vez de crear streams o arrays nuevos en cada envío.
+    private static final ThreadLocal<ByteBuffer> BUFER_CODIFICACION =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CodecMensaje.TAM_MAXIMO));
+
+    /* Esta función codifica un Mensaje en el buffer de envío del hilo (formato binario de CodecMensaje).
+     * Devuelve el buffer listo para 'send'. Para enviarlo a varios destinos, rewind() entre envíos. */
+    private static ByteBuffer serializarMensaje(Mensaje msj) {
+        ByteBuffer bufer = BUFER_CODIFICACION.get();
+        bufer.clear();
+        CodecMensaje.codificar(msj, bufer);
+        bufer.flip();
+        return bufer;
     }
 
-    /* Esta función saca un objeto Mensaje de un arreglo de bytes */
-    private static Mensaje deserializarMensaje(byte[] datos, int len) throws IOException, ClassNotFoundException {
-        return (Mensaje) new ObjectInputStream(new ByteArrayInputStream(datos, 0, len)).readObject();
+    /* Esta función saca un objeto Mensaje de un buffer recibido */
+    private static Mensaje deserializarMensaje(ByteBuffer datos) throws IOException {
+        return CodecMensaje.decodificar(datos);
     }
-}
\ No newline at end of file
+}
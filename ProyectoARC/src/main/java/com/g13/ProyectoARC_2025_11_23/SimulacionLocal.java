@@ -0,0 +1,46 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+/**
+ * CLASE PRINCIPAL: SimulacionLocal (Servidor y clientes en la misma JVM)
+ * * OBJETIVO:
+ * Ejecutar la simulación completa en un único proceso: el Servidor en un hilo y los clientes
+ * con Cliente.ejecutar. Por defecto con el transporte en memoria (-Darc.transporte=memoria),
+ * así los datagramas no pasan por el kernel y lo que se mide es solo nuestro procesamiento:
+ * la cota superior de throughput del servidor. Con --transporte=udp es la misma simulación por
+ * loopback real, para comparar las dos en igualdad de condiciones.
+ * * Ejemplo:
+ * <pre>
+ *   java ... SimulacionLocal --n=1000 --v=10 --s=100 --motor=virtual --retardoMemoriaUs=50
+ * </pre>
+ * El registro sigue siendo por TCP (loopback): no es camino caliente.
+ */
+public class SimulacionLocal {
+
+    public static void main(String[] args) throws InterruptedException {
+        Configuracion.cargar(args);
+        Configuracion.porDefecto("arc.transporte", "memoria");
+        System.out.println("--- SIMULACIÓN LOCAL (transporte: " + Configuracion.texto("arc.transporte", "udp") + ") ---");
+
+        // Se preguntan aquí (si faltan) y el Servidor ya las encuentra configuradas.
+        int N = Configuracion.enteroOPreguntar("arc.n", "Introduce N (Total clientes): ");
+        int V = Configuracion.enteroOPreguntar("arc.v", "Introduce V (Vecinos por grupo): ");
+        int S = Configuracion.enteroOPreguntar("arc.s", "Introduce S (Iteraciones): ");
+        int puerto = Configuracion.entero("arc.puerto", 10578);
+
+        // Daemon: si los clientes no llegan a arrancar, el servidor se queda esperando registros
+        // y no debe impedir que el proceso termine.
+        Thread servidor = Thread.ofPlatform().name("servidor-local").daemon().start(() -> Servidor.main(new String[0]));
+        Servidor.escuchando.await();
+
+        CSVWriter csvWriter = new CSVWriter(); // Solo para el detalle por iteración, si está activado.
+        ResultadoSimulacion resultado = Cliente.ejecutar("127.0.0.1", puerto, N, V, S, csvWriter);
+        if (resultado != null) servidor.join();
+        csvWriter.cerrar();
+
+        // No se escriben los CSV de resumen: son resultados sin red y no deben mezclarse con los de UDP.
+        if (resultado != null) resultado.imprimir();
+        if (TransporteMemoria.descartados() > 0) {
+            System.out.println("Datagramas descartados en memoria (cola llena): " + TransporteMemoria.descartados());
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CLASE: SumideroCSV (Escritura de CSV en segundo plano)
+ * * OBJETIVO:
+ * Sacar la escritura de ficheros de los hilos que están midiendo. Antes cada fila abría un
+ * FileWriter, escribía una línea y lo cerraba, dentro de un método synchronized: válido para
+ * tres filas de resumen, inviable para una fila por iteración y por cliente.
+ * * * CÓMO:
+ * - Un único hilo escritor ("sumidero-csv") es el dueño de todos los ficheros.
+ * - Las MUESTRAS (camino caliente) van por un anillo acotado de huecos primitivos (4 longs + a
+ *   quién van), tipo Vyukov: el productor reserva hueco con un CAS y lo publica con una escritura
+ *   volátil. Nunca bloquea ni reserva memoria: si el anillo está lleno, la muestra se descarta y
+ *   se cuenta en descartados().
+ * - Las LÍNEAS sueltas (resúmenes al final) van por una cola normal: no son camino caliente.
+ * - El hilo escritor convierte los números a texto directamente en un ByteBuffer de 256 KB por
+ *   fichero (sin crear Strings, para no generar basura ni pausas de GC que se colarían en las
+ *   latencias medidas) y escribe con FileChannel en bloques grandes.
+ * - Rotación: al pasar de 'maxBytes', el fichero se cierra y se sigue en nombre.1.csv, nombre.2.csv...
+ * - close() (y un shutdown hook, por si se corta con Ctrl+C) vacía el anillo y escribe todo lo pendiente.
+ */
+final class SumideroCSV implements AutoCloseable {
+
+    /** Quien recibe las muestras en el hilo escritor (normalmente escribe filas en algún Archivo). */
+    interface ConsumidorMuestra {
+        void aceptar(long a, long b, long c, long d) throws IOException;
+    }
+
+    private static final int TAM_BUFER_ARCHIVO = 256 * 1024;
+    private static final long ESPERA_INACTIVO_NS = 1_000_000L;    // 1 ms dormido si no hay nada.
+    private static final long INTERVALO_VOLCADO_NS = 200_000_000L; // Volcar a disco al menos cada 200 ms.
+
+    // --- ANILLO DE MUESTRAS (varios productores, un consumidor) ---
+    private final int mascara;
+    private final AtomicLongArray secuencia; // Estado de cada hueco (algoritmo de Vyukov).
+    private final int[] consumidorDeHueco;
+    private final long[] colA, colB, colC, colD;
+    private final AtomicLong posEscritura = new AtomicLong();
+    private long posLectura = 0; // Solo la toca el hilo escritor.
+    private final LongAdder descartados = new LongAdder();
+
+    private final List<ConsumidorMuestra> consumidores = new CopyOnWriteArrayList<>(); // Se lee sin lock.
+    private final ConcurrentLinkedQueue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private final List<Runnable> alCerrar = new ArrayList<>();
+    private final List<Archivo> archivos = new ArrayList<>();
+
+    private final Thread hiloEscritor;
+    private volatile boolean cerrando = false;
+
+    /** @param capacidad Huecos del anillo (se redondea a potencia de 2). */
+    SumideroCSV(int capacidad) {
+        int cap = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.mascara = cap - 1;
+        this.secuencia = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) secuencia.set(i, i);
+        this.consumidorDeHueco = new int[cap];
+        this.colA = new long[cap];
+        this.colB = new long[cap];
+        this.colC = new long[cap];
+        this.colD = new long[cap];
+
+        this.hiloEscritor = new Thread(this::bucleEscritor, "sumidero-csv");
+        this.hiloEscritor.setDaemon(true);
+        this.hiloEscritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "sumidero-csv-cierre"));
+    }
+
+    // --- CONFIGURACIÓN (antes de empezar a producir) ---
+
+    /** Abre (en modo añadir) un CSV; escribe la cabecera si el fichero es nuevo. */
+    synchronized Archivo abrir(String ruta, String cabecera, long maxBytes) {
+        Archivo archivo = new Archivo(ruta, cabecera, maxBytes);
+        archivos.add(archivo);
+        return archivo;
+    }
+
+    /** Da de alta un consumidor de muestras; devuelve el número que hay que pasar a ofrecer(). */
+    synchronized int registrar(ConsumidorMuestra consumidor) { // synchronized: el índice debe ser el suyo.
+        consumidores.add(consumidor);
+        return consumidores.size() - 1;
+    }
+
+    /** Tarea que el hilo escritor ejecuta al cerrar, antes del último volcado (p. ej. agregados pendientes). */
+    synchronized void alCerrar(Runnable tarea) {
+        alCerrar.add(tarea);
+    }
+
+    // --- PRODUCTORES ---
+
+    /**
+     * Encola una muestra para el consumidor 'destino'. Nunca bloquea.
+     * @return false si el anillo estaba lleno (la muestra se descarta y se cuenta).
+     */
+    boolean ofrecer(int destino, long a, long b, long c, long d) {
+        long pos = posEscritura.get();
+        while (true) {
+            int h = (int) (pos & mascara);
+            long dif = secuencia.get(h) - pos;
+            if (dif == 0) {
+                if (posEscritura.compareAndSet(pos, pos + 1)) {
+                    consumidorDeHueco[h] = destino;
+                    colA[h] = a;
+                    colB[h] = b;
+                    colC[h] = c;
+                    colD[h] = d;
+                    secuencia.set(h, pos + 1); // Publicar (escritura volátil).
+                    return true;
+                }
+                pos = posEscritura.get();
+            } else if (dif < 0) {
+                descartados.increment(); // Lleno: el escritor no da abasto.
+                return false;
+            } else {
+                pos = posEscritura.get(); // Otro productor nos ganó el hueco.
+            }
+        }
+    }
+
+    /** Añade una línea de texto a un archivo (camino frío: resúmenes). */
+    void linea(Archivo archivo, String texto) {
+        tareas.add(() -> archivo.texto(texto));
+    }
+
+    long descartados() {
+        return descartados.sum();
+    }
+
+    /** Vacía todo lo pendiente, lo escribe y cierra los ficheros. Se puede llamar varias veces. */
+    @Override
+    public void close() {
+        cerrando = true;
+        LockSupport.unpark(hiloEscritor);
+        try {
+            hiloEscritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- HILO ESCRITOR ---
+
+    private void bucleEscritor() {
+        long ultimoVolcado = System.nanoTime();
+        try {
+            while (true) {
+                boolean terminar = cerrando; // Leído ANTES de vaciar: lo encolado antes de close() se escribe.
+                int hechos = vaciar();
+                long ahora = System.nanoTime();
+                if (terminar) break;
+                if (hechos == 0) {
+                    if (ahora - ultimoVolcado > INTERVALO_VOLCADO_NS) {
+                        volcarTodos();
+                        ultimoVolcado = ahora;
+                    }
+                    LockSupport.parkNanos(ESPERA_INACTIVO_NS);
+                }
+            }
+            synchronized (this) {
+                for (Runnable tarea : alCerrar) tarea.run();
+            }
+            vaciar();
+        } catch (RuntimeException e) {
+            System.err.println("[Sumidero] Error escribiendo CSV: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                for (Archivo archivo : archivos) archivo.cerrar();
+            }
+        }
+    }
+
+    /** Procesa todas las tareas y muestras pendientes. Devuelve cuántas ha procesado. */
+    private int vaciar() {
+        int hechos = 0;
+        Runnable tarea;
+        while ((tarea = tareas.poll()) != null) {
+            tarea.run();
+            hechos++;
+        }
+        while (true) {
+            int h = (int) (posLectura & mascara);
+            if (secuencia.get(h) != posLectura + 1) break; // Nada publicado en este hueco todavía.
+            try {
+                consumidores.get(consumidorDeHueco[h]).aceptar(colA[h], colB[h], colC[h], colD[h]);
+            } catch (IOException e) {
+                System.err.println("[Sumidero] Error escribiendo muestra: " + e.getMessage());
+            }
+            secuencia.set(h, posLectura + mascara + 1); // Hueco libre para la siguiente vuelta.
+            posLectura++;
+            hechos++;
+        }
+        return hechos;
+    }
+
+    private synchronized void volcarTodos() {
+        for (Archivo archivo : archivos) archivo.volcar();
+    }
+
+    /**
+     * Un CSV con su buffer y su rotación. Solo lo usa el hilo escritor (las filas se construyen
+     * campo a campo directamente en bytes).
+     */
+    final class Archivo {
+        private final String base, extension, cabecera;
+        private final long maxBytes;
+        private final ByteBuffer bufer = ByteBuffer.allocate(TAM_BUFER_ARCHIVO);
+        private FileChannel canal;
+        private long escritos;
+        private int parte = 0;
+        private boolean primerCampo = true;
+
+        private Archivo(String ruta, String cabecera, long maxBytes) {
+            int punto = ruta.lastIndexOf('.');
+            this.base = (punto > 0) ? ruta.substring(0, punto) : ruta;
+            this.extension = (punto > 0) ? ruta.substring(punto) : "";
+            this.cabecera = cabecera;
+            this.maxBytes = maxBytes;
+            abrirParte(ruta);
+        }
+
+        /** Añade un campo numérico a la fila en curso. */
+        Archivo campo(long valor) {
+            asegurarHueco(21);
+            if (!primerCampo) bufer.put((byte) ';');
+            primerCampo = false;
+            ponerNumero(valor);
+            return this;
+        }
+
+        /** Termina la fila en curso (y rota el fichero si ya es demasiado grande). */
+        void finFila() {
+            asegurarHueco(1);
+            bufer.put((byte) '\n');
+            primerCampo = true;
+            if (escritos + bufer.position() >= maxBytes) rotar();
+        }
+
+        private void texto(String linea) {
+            byte[] bytes = (linea + "\n").getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > bufer.remaining()) volcar();
+            if (bytes.length > bufer.remaining()) {
+                escribir(ByteBuffer.wrap(bytes));
+            } else {
+                bufer.put(bytes);
+            }
+        }
+
+        private void ponerNumero(long valor) {
+            if (valor == Long.MIN_VALUE) {
+                bufer.put("-9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            if (valor < 0) {
+                bufer.put((byte) '-');
+                valor = -valor;
+            }
+            int inicio = bufer.position();
+            do {
+                bufer.put((byte) ('0' + valor % 10));
+                valor /= 10;
+            } while (valor > 0);
+            // Los dígitos han salido al revés: les damos la vuelta en el sitio.
+            for (int i = inicio, j = bufer.position() - 1; i < j; i++, j--) {
+                byte t = bufer.get(i);
+                bufer.put(i, bufer.get(j));
+                bufer.put(j, t);
+            }
+        }
+
+        private void asegurarHueco(int bytes) {
+            if (bufer.remaining() < bytes) volcar();
+        }
+
+        private void volcar() {
+            if (bufer.position() == 0 || canal == null) return;
+            bufer.flip();
+            escribir(bufer);
+            bufer.clear();
+        }
+
+        private void escribir(ByteBuffer datos) {
+            if (canal == null) { // No se pudo abrir: descartamos en vez de fallar.
+                datos.position(datos.limit());
+                return;
+            }
+            try {
+                while (datos.hasRemaining()) escritos += canal.write(datos);
+            } catch (IOException e) {
+                System.err.println("[Sumidero] Error escribiendo " + base + extension + ": " + e.getMessage());
+                datos.position(datos.limit());
+            }
+        }
+
+        private void rotar() {
+            volcar();
+            cerrarCanal();
+            String ruta;
+            do {
+                parte++;
+                ruta = base + "." + parte + extension;
+            } while (new File(ruta).exists());
+            abrirParte(ruta);
+        }
+
+        private void abrirParte(String ruta) {
+            File fichero = new File(ruta);
+            File dir = fichero.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists()) dir.mkdirs();
+            try {
+                boolean nuevo = !fichero.exists() || fichero.length() == 0;
+                canal = FileChannel.open(fichero.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                escritos = canal.size();
+                if (nuevo && cabecera != null) texto(cabecera);
+            } catch (IOException e) {
+                System.err.println("Error creando CSV " + ruta);
+                canal = null;
+            }
+        }
+
+        private void cerrar() {
+            volcar();
+            cerrarCanal();
+        }
+
+        private void cerrarCanal() {
+            if (canal == null) return;
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Nada más que hacer.
+            }
+            canal = null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * INTERFAZ: Transporte (Por dónde viajan los datagramas de la simulación)
+ * * OBJETIVO:
+ * Que Servidor y Persona no dependan directamente de DatagramChannel, para poder medir
+ * nuestra lógica de reenvío sin el coste del kernel y del loopback. Hay dos implementaciones:
+ * - TransporteUDP (por defecto): el DatagramChannel de siempre.
+ * - TransporteMemoria (-Darc.transporte=memoria): colas en memoria dentro de la misma JVM
+ *   (solo tiene sentido con SimulacionLocal, que ejecuta servidor y clientes juntos).
+ * * Misma semántica que UDP: enviar nunca bloquea, si el receptor no da abasto el datagrama se
+ * pierde, y cerrar el transporte despierta al que está bloqueado en recibir con una
+ * AsynchronousCloseException.
+ */
+interface Transporte extends Closeable {
+
+    /** Envía los bytes restantes de 'datos' (avanza su posición). Devuelve los bytes enviados. */
+    int enviar(ByteBuffer datos, InetSocketAddress destino) throws IOException;
+
+    /** Bloquea hasta recibir un datagrama; lo copia en 'destino' y devuelve quién lo mandó. */
+    InetSocketAddress recibir(ByteBuffer destino) throws IOException;
+
+    InetSocketAddress direccionLocal() throws IOException;
+
+    boolean abierto();
+
+    /**
+     * Abre un transporte del tipo configurado (-Darc.transporte=udp|memoria).
+     * @param puerto Puerto local (0 = cualquiera libre).
+     * @param tamBuferRecepcion Lo que puede acumular sin leer antes de empezar a descartar.
+     */
+    static Transporte abrir(int puerto, int tamBuferRecepcion) throws IOException {
+        if (Configuracion.texto("arc.transporte", "udp").equalsIgnoreCase("memoria")) {
+            return TransporteMemoria.abrir(puerto, tamBuferRecepcion);
+        }
+        return TransporteUDP.abrir(puerto, tamBuferRecepcion);
+    }
+}
@@ -0,0 +1,192 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CLASE: TransporteMemoria (UDP de mentira, dentro de la JVM)
+ * * OBJETIVO:
+ * Ejecutar la simulación completa sin pasar por el kernel, para saber cuánto cuesta NUESTRO
+ * procesamiento (decodificar, buscar remitente, repartir) separado del coste de la red. Lo que
+ * dé la simulación con este transporte es la cota superior de lo que puede dar el servidor.
+ * * * CÓMO:
+ * - Cada extremo tiene un "puerto" (un número de 16 bits, como en UDP) y se apunta en una tabla
+ *   global indexada por puerto: enviar es mirar la tabla y dejar los bytes en la cola del destino.
+ *   Así el registro TCP y RegistroClientes no cambian: los clientes siguen dando su puerto.
+ * - La cola de cada extremo es un anillo acotado de varios productores y un consumidor (Vyukov,
+ *   como SumideroCSV): el productor reserva hueco con un CAS y publica con una escritura volátil.
+ *   Sin locks. Si está lleno, el datagrama se descarta (igual que un SO_RCVBUF desbordado).
+ * - El receptor, si no hay nada, se aparca (LockSupport) y el productor que publica lo despierta.
+ * - Retardo opcional (-Darc.retardoMemoriaUs): cada datagrama se entrega como pronto ese tiempo
+ *   después de enviarse, para simular la latencia de una red.
+ * * Solo un hilo recibe a la vez de cada extremo (el receptor del servidor, un reactor, o el hilo
+ * de una Persona), que es justo cómo se usan los canales UDP en el resto del proyecto.
+ */
+final class TransporteMemoria implements Transporte {
+
+    // Aproximación del kernel: un datagrama pequeño ocupa ~1 KB de SO_RCVBUF (cabeceras del skb).
+    private static final int BYTES_POR_HUECO = 1024;
+    private static final int HUECOS_MINIMOS = 64;
+    private static final int PRIMER_PUERTO_LIBRE = 20000; // Para "puerto 0": lejos de 10578 y sus reactores.
+
+    // La "red": extremo abierto en cada puerto (null = nadie escucha).
+    private static final AtomicReferenceArray<TransporteMemoria> red = new AtomicReferenceArray<>(65536);
+    private static final AtomicInteger siguientePuerto = new AtomicInteger(PRIMER_PUERTO_LIBRE);
+    private static final LongAdder descartados = new LongAdder();
+
+    private static final long RETARDO_NS = Configuracion.entero("arc.retardoMemoriaUs", 0) * 1_000L;
+    private static final InetAddress LOCAL = InetAddress.getLoopbackAddress();
+
+    private final InetSocketAddress direccion;
+
+    // --- ANILLO (varios productores, un consumidor) ---
+    private final int mascara;
+    private final AtomicLongArray secuencia;
+    private final byte[][] datos;          // Cada hueco reutiliza su array (solo crece si hace falta).
+    private final int[] longitud;
+    private final InetSocketAddress[] origen;
+    private final long[] entrega;          // System.nanoTime() a partir del cual se puede leer.
+    private final AtomicLong posEscritura = new AtomicLong();
+    private long posLectura = 0;           // Solo la toca el hilo que recibe.
+
+    private volatile Thread esperando;     // Receptor aparcado (null si no hay).
+    private volatile boolean cerrado = false;
+
+    private TransporteMemoria(int puerto, int huecos) {
+        this.direccion = new InetSocketAddress(LOCAL, puerto);
+        int cap = Integer.highestOneBit(Math.max(2, huecos - 1)) << 1;
+        this.mascara = cap - 1;
+        this.secuencia = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) secuencia.set(i, i);
+        this.datos = new byte[cap][];
+        this.longitud = new int[cap];
+        this.origen = new InetSocketAddress[cap];
+        this.entrega = new long[cap];
+    }
+
+    static TransporteMemoria abrir(int puerto, int tamBuferRecepcion) throws IOException {
+        int huecos = Math.max(HUECOS_MINIMOS, tamBuferRecepcion / BYTES_POR_HUECO);
+        if (puerto != 0) {
+            TransporteMemoria t = new TransporteMemoria(puerto, huecos);
+            if (!red.compareAndSet(puerto, null, t)) throw new BindException("Puerto en memoria ocupado: " + puerto);
+            return t;
+        }
+        for (int intentos = 0; intentos < 65536; intentos++) {
+            int p = siguientePuerto.getAndIncrement();
+            if (p > 65535) {
+                siguientePuerto.compareAndSet(p + 1, PRIMER_PUERTO_LIBRE);
+                continue;
+            }
+            TransporteMemoria t = new TransporteMemoria(p, huecos);
+            if (red.compareAndSet(p, null, t)) return t;
+        }
+        throw new BindException("No quedan puertos libres en memoria");
+    }
+
+    /** Datagramas perdidos en total porque la cola del destino estaba llena o no existía. */
+    static long descartados() {
+        return descartados.sum();
+    }
+
+    @Override
+    public int enviar(ByteBuffer bufer, InetSocketAddress destino) throws IOException {
+        if (cerrado) throw new ClosedChannelException();
+        int n = bufer.remaining();
+        TransporteMemoria receptor = red.get(destino.getPort());
+        if (receptor == null || !receptor.ofrecer(bufer, n, direccion)) {
+            descartados.increment(); // Como en UDP: se envía igual, pero no llega.
+        }
+        bufer.position(bufer.limit());
+        return n;
+    }
+
+    private boolean ofrecer(ByteBuffer bufer, int n, InetSocketAddress remitente) {
+        long pos = posEscritura.get();
+        while (true) {
+            int h = (int) (pos & mascara);
+            long dif = secuencia.get(h) - pos;
+            if (dif == 0) {
+                if (posEscritura.compareAndSet(pos, pos + 1)) {
+                    byte[] hueco = datos[h];
+                    if (hueco == null || hueco.length < n) datos[h] = hueco = new byte[Math.max(n, 64)];
+                    bufer.get(bufer.position(), hueco, 0, n); // Lectura absoluta: no toca la posición.
+                    longitud[h] = n;
+                    origen[h] = remitente;
+                    entrega[h] = (RETARDO_NS > 0) ? System.nanoTime() + RETARDO_NS : 0;
+                    secuencia.set(h, pos + 1); // Publicar (escritura volátil).
+                    Thread t = esperando;
+                    if (t != null) LockSupport.unpark(t);
+                    return true;
+                }
+                pos = posEscritura.get();
+            } else if (dif < 0) {
+                return false; // Lleno: el receptor no da abasto.
+            } else {
+                pos = posEscritura.get(); // Otro productor nos ganó el hueco.
+            }
+        }
+    }
+
+    @Override
+    public InetSocketAddress recibir(ByteBuffer destino) throws IOException {
+        if (cerrado) throw new ClosedChannelException();
+        while (true) {
+            int h = (int) (posLectura & mascara);
+            if (secuencia.get(h) == posLectura + 1) {
+                long espera = (RETARDO_NS > 0) ? entrega[h] - System.nanoTime() : 0;
+                if (espera <= 0) {
+                    int n = Math.min(longitud[h], destino.remaining()); // Como UDP: lo que no cabe se trunca.
+                    destino.put(datos[h], 0, n);
+                    InetSocketAddress remitente = origen[h];
+                    origen[h] = null;
+                    secuencia.set(h, posLectura + mascara + 1); // Hueco libre para la siguiente vuelta.
+                    posLectura++;
+                    return remitente;
+                }
+                LockSupport.parkNanos(this, espera); // Aún "viajando" por la red.
+            } else {
+                // Vacío: nos apuntamos como esperando y volvemos a mirar antes de aparcar, para no
+                // perder el aviso de un productor que publique justo entre medias.
+                esperando = Thread.currentThread();
+                if (secuencia.get(h) != posLectura + 1 && !cerrado) LockSupport.park(this);
+                esperando = null;
+            }
+            if (cerrado) throw new AsynchronousCloseException();
+            if (Thread.interrupted()) {
+                close(); // Igual que un DatagramChannel interrumpido.
+                throw new ClosedByInterruptException();
+            }
+        }
+    }
+
+    @Override
+    public InetSocketAddress direccionLocal() {
+        return direccion;
+    }
+
+    @Override
+    public boolean abierto() {
+        return !cerrado;
+    }
+
+    @Override
+    public void close() {
+        if (cerrado) return;
+        cerrado = true;
+        red.compareAndSet(direccion.getPort(), this, null);
+        Thread t = esperando;
+        if (t != null) LockSupport.unpark(t);
+    }
+}
@@ -0,0 +1,53 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Transporte real: un DatagramChannel (NIO) bloqueante. Se bloquea sin "anclar" el hilo,
+ * así que funciona igual de bien con hilos normales que con hilos virtuales.
+ */
+final class TransporteUDP implements Transporte {
+
+    private final DatagramChannel canal;
+
+    private TransporteUDP(DatagramChannel canal) {
+        this.canal = canal;
+    }
+
+    static TransporteUDP abrir(int puerto, int tamBuferRecepcion) throws IOException {
+        DatagramChannel canal = DatagramChannel.open();
+        // El SO puede limitarlo (net.core.rmem_max), pero pedirlo grande evita descartes en las ráfagas.
+        canal.setOption(StandardSocketOptions.SO_RCVBUF, tamBuferRecepcion);
+        canal.bind(new InetSocketAddress(puerto));
+        return new TransporteUDP(canal);
+    }
+
+    @Override
+    public int enviar(ByteBuffer datos, InetSocketAddress destino) throws IOException {
+        return canal.send(datos, destino);
+    }
+
+    @Override
+    public InetSocketAddress recibir(ByteBuffer destino) throws IOException {
+        return (InetSocketAddress) canal.receive(destino);
+    }
+
+    @Override
+    public InetSocketAddress direccionLocal() throws IOException {
+        return (InetSocketAddress) canal.getLocalAddress();
+    }
+
+    @Override
+    public boolean abierto() {
+        return canal.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
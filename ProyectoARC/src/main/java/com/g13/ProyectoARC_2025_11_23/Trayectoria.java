@@ -0,0 +1,72 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * CLASE: Trayectoria (Dónde está un cliente simulado y cómo lo cuenta)
+ * * OBJETIVO:
+ * Antes cada iteración mandaba un número aleatorio en texto ("(57)"). Ahora cada cliente tiene
+ * una posición 3D de verdad, en enteros cuantizados (centésimas, ver Mensaje.ESCALA), que da
+ * un paso aleatorio en cada iteración, y la manda en los campos x, y, z del Mensaje:
+ * - Por defecto, absoluta (13 bytes de payload).
+ * - Con -Darc.coordsDelta=true, lo que se ha movido desde su iteración anterior (4 bytes con
+ *   los pasos normales, ver CodecMensaje). Cada -Darc.coordsClave envíos (y siempre el primero)
+ *   va una absoluta, como haría un protocolo real para resincronizar tras perder deltas por UDP.
+ * Ojo: los receptores (Persona, MultiplexorPersonas) solo confirman las coordenadas, no guardan
+ * la posición de los vecinos ni aplican las deltas. arc.coordsDelta sirve para medir el efecto
+ * del tamaño de paquete (incluido el coste de las absolutas periódicas), no cambia nada más.
+ * Un objeto por cliente; solo lo usa el hilo que envía sus coordenadas.
+ */
+final class Trayectoria {
+
+    private static final int LADO = 100 * Mensaje.ESCALA; // El mundo: un cubo de 100 unidades de lado.
+    private static final int PASO = Mensaje.ESCALA / 2;    // Lo más que se mueve por eje en una iteración.
+
+    private static final boolean DELTA = Boolean.parseBoolean(Configuracion.texto("arc.coordsDelta", "false"));
+    private static final int CLAVE = Math.max(1, Configuracion.entero("arc.coordsClave", 16));
+
+    private int x, y, z;
+    private int enviadas = 0;
+
+    Trayectoria() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        x = r.nextInt(LADO + 1);
+        y = r.nextInt(LADO + 1);
+        z = r.nextInt(LADO + 1);
+    }
+
+    /**
+     * Mueve al cliente (salvo en su primer envío) y devuelve el COMPARTIR_COORDENADAS de esta
+     * iteración. Hay que llamarlo una vez por iteración y en orden: la delta es respecto a la
+     * anterior. Las retransmisiones reutilizan el mismo Mensaje.
+     */
+    Mensaje siguiente(int idCliente, int numIteracion) {
+        Mensaje msj = new Mensaje(Mensaje.messageType.COMPARTIR_COORDENADAS, idCliente, numIteracion);
+        int dx = 0, dy = 0, dz = 0;
+        if (enviadas > 0) {
+            dx = mover(x) - x;
+            dy = mover(y) - y;
+            dz = mover(z) - z;
+            x += dx;
+            y += dy;
+            z += dz;
+        }
+        if (DELTA && enviadas % CLAVE != 0) {
+            msj.delta = true;
+            msj.x = dx;
+            msj.y = dy;
+            msj.z = dz;
+        } else {
+            msj.x = x;
+            msj.y = y;
+            msj.z = z;
+        }
+        enviadas++;
+        return msj;
+    }
+
+    // Un paso aleatorio de como mucho PASO, sin salirse del cubo.
+    private static int mover(int eje) {
+        return Math.clamp(eje + ThreadLocalRandom.current().nextInt(-PASO, PASO + 1), 0, LADO);
+    }
+}
@@ -0,0 +1,223 @@
+package com.g13.ProyectoARC_2025_11_23;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CLASE: TrazaPaquetes (Todo lo que entró y salió del servidor, en un fichero)
+ * * OBJETIVO:
+ * Cuando una ejecución da colas raras no había forma de reconstruir qué pasó. Con
+ * -Darc.traza=fichero el servidor apunta cada datagrama que recibe y que envía: instante,
+ * sentido, extremo (IP y puerto del cliente) y los bytes tal cual. ReproductorTraza lo vuelve
+ * a meter después en el servidor, a la velocidad original o acelerada.
+ * * * BARATO:
+ * - El fichero se mapea en memoria (MappedByteBuffer) de una vez, con el tamaño máximo
+ *   (-Darc.trazaMaxMB): escribir es copiar bytes, sin llamadas al sistema.
+ * - Cada hilo apunta en SU bloque (64 KB en el heap). Solo cuando se llena reserva sitio en el
+ *   fichero con un getAndAdd y lo copia entero. El lock del bloque solo lo pide otro hilo al cerrar.
+ * - Si el fichero se llena, se deja de apuntar y se cuentan los paquetes perdidos.
+ * * * FORMATO (big endian):
+ * <pre>
+ *   cabecera : [MAGIA] [VERSION] [bytes usados (long)] [N] [V] [S]
+ *              [k] k × ([idCliente] [idGrupo] [longitud IP (byte)] [IP] [puerto])
+ *   bloques  : [longitud] registros...
+ *   registro : [ns desde el inicio (long)] [sentido (byte)] [longitud IP (byte)] [IP] [puerto]
+ *              [longitud (short)] [bytes del datagrama]
+ * </pre>
+ * Los bloques de distintos hilos quedan intercalados: al leer se ordena por instante.
+ */
+final class TrazaPaquetes {
+
+    static final int MAGIA = 0x41524354; // "ARCT"
+    static final int VERSION = 1;
+    static final byte ENTRADA = 0, SALIDA = 1;
+
+    private static final int TAM_BLOQUE = 64 * 1024;
+    private static final int POSICION_USADOS = 8; // Tras MAGIA y VERSION.
+
+    /** Un datagrama de la traza. 'tiempoNs' cuenta desde que se abrió la traza. */
+    record Registro(long tiempoNs, byte sentido, InetSocketAddress extremo, byte[] datos) {}
+
+    /** Lo que se lee de un fichero de traza: la simulación, sus clientes y los datagramas en orden. */
+    record Contenido(int N, int V, int S, InfoCliente[] clientes, List<Registro> registros) {}
+
+    /** Bloque de un hilo: se llena sin compartir nada y se copia al fichero de golpe. */
+    private static final class Hilo {
+        final ByteBuffer bloque = ByteBuffer.allocate(TAM_BLOQUE);
+        int registros; // Los que hay ahora en el bloque (para contarlos como perdidos si no caben).
+    }
+
+    private final Path ruta;
+    private final FileChannel fichero;
+    private final MappedByteBuffer mapa;
+    private final AtomicLong siguiente;                    // Primera posición libre del fichero.
+    private final AtomicLong limite;                       // Primera reserva que no cupo (o la capacidad).
+    private final long origenNs = System.nanoTime();
+    private final LongAdder apuntados = new LongAdder();
+    private final LongAdder perdidos = new LongAdder();
+    private final List<Hilo> hilos = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Hilo> delHilo = ThreadLocal.withInitial(() -> {
+        Hilo h = new Hilo();
+        hilos.add(h);
+        return h;
+    });
+    private volatile boolean cerrada;
+
+    private TrazaPaquetes(Path ruta, FileChannel fichero, MappedByteBuffer mapa, int cabecera) {
+        this.ruta = ruta;
+        this.fichero = fichero;
+        this.mapa = mapa;
+        this.siguiente = new AtomicLong(cabecera);
+        this.limite = new AtomicLong(mapa.capacity());
+    }
+
+    /**
+     * Crea el fichero (lo sobrescribe si existe), lo mapea con 'maxBytes' y escribe la cabecera
+     * con los clientes registrados (null = de otro relé, no se guarda).
+     */
+    static TrazaPaquetes crear(Path ruta, long maxBytes, int N, int V, int S, InfoCliente[] clientes) throws IOException {
+        if (ruta.getParent() != null) Files.createDirectories(ruta.getParent());
+        FileChannel fichero = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Un MappedByteBuffer se indexa con int: como mucho 2 GB por traza.
+        MappedByteBuffer mapa = fichero.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(maxBytes, Integer.MAX_VALUE));
+        mapa.putInt(MAGIA).putInt(VERSION).putLong(0).putInt(N).putInt(V).putInt(S);
+        int k = 0;
+        for (InfoCliente c : clientes) if (c != null) k++;
+        mapa.putInt(k);
+        for (InfoCliente c : clientes) {
+            if (c == null) continue;
+            mapa.putInt(c.idCliente()).putInt(c.idGrupo());
+            escribirExtremo(mapa, c.endpoint());
+        }
+        return new TrazaPaquetes(ruta, fichero, mapa, mapa.position());
+    }
+
+    // --- CAMINO CALIENTE ---
+
+    /** Un datagrama recibido de 'origen'. No mueve la posición de 'datos'. */
+    void entrada(ByteBuffer datos, InetSocketAddress origen) {
+        apuntar(ENTRADA, datos, origen);
+    }
+
+    /** Un datagrama que se va a enviar a 'destino'. No mueve la posición de 'datos'. */
+    void salida(ByteBuffer datos, InetSocketAddress destino) {
+        apuntar(SALIDA, datos, destino);
+    }
+
+    private void apuntar(byte sentido, ByteBuffer datos, InetSocketAddress extremo) {
+        if (cerrada) return;
+        long ahora = System.nanoTime() - origenNs;
+        byte[] ip = extremo.getAddress().getAddress();
+        int longitud = datos.remaining();
+        int tam = 8 + 1 + 1 + ip.length + 4 + 2 + longitud;
+        Hilo h = delHilo.get();
+        synchronized (h) {
+            if (cerrada) return;
+            if (h.bloque.remaining() < tam) volcar(h);
+            ByteBuffer b = h.bloque;
+            b.putLong(ahora).put(sentido).put((byte) ip.length).put(ip).putInt(extremo.getPort()).putShort((short) longitud);
+            b.put(b.position(), datos, datos.position(), longitud);
+            b.position(b.position() + longitud);
+            h.registros++;
+        }
+        apuntados.increment();
+    }
+
+    // Copia el bloque del hilo al fichero (con el lock del bloque tomado).
+    private void volcar(Hilo h) {
+        ByteBuffer b = h.bloque.flip();
+        int n = b.remaining();
+        if (n > 0) {
+            long pos = siguiente.getAndAdd(4 + n);
+            if (pos + 4 + n > mapa.capacity()) {
+                limite.accumulateAndGet(pos, Math::min); // Lo que vaya detrás tampoco cabe.
+                perdidos.add(h.registros);
+            } else {
+                mapa.putInt((int) pos, n);
+                mapa.put((int) pos + 4, b, 0, n);
+            }
+        }
+        b.clear();
+        h.registros = 0;
+    }
+
+    /** Vuelca los bloques de todos los hilos, apunta cuánto se ha usado y cierra el fichero. */
+    void cerrar() throws IOException {
+        cerrada = true;
+        for (Hilo h : hilos) {
+            synchronized (h) {
+                volcar(h);
+            }
+        }
+        long usados = Math.min(siguiente.get(), limite.get());
+        mapa.putLong(POSICION_USADOS, usados);
+        mapa.force();
+        fichero.truncate(usados); // El resto del mapeo no se llegó a usar.
+        fichero.close();
+        System.out.printf("Traza: %d datagramas en %s (%.1f MB)%s%n", apuntados.sum() - perdidos.sum(), ruta,
+                usados / (1024.0 * 1024.0), perdidos.sum() > 0 ? ", " + perdidos.sum() + " perdidos (fichero lleno, sube arc.trazaMaxMB)" : "");
+    }
+
+    // --- LECTURA (ReproductorTraza) ---
+
+    /** Lee una traza completa, con los datagramas ordenados por instante. */
+    static Contenido leer(Path ruta) throws IOException {
+        try (FileChannel fichero = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            MappedByteBuffer mapa = fichero.map(FileChannel.MapMode.READ_ONLY, 0, fichero.size());
+            if (mapa.getInt() != MAGIA) throw new IOException(ruta + " no es una traza de paquetes");
+            int version = mapa.getInt();
+            if (version != VERSION) throw new IOException("Versión de traza no soportada: " + version);
+            long usados = mapa.getLong();
+            if (usados == 0) throw new IOException(ruta + " no se cerró bien (el servidor no llegó al final)");
+            int N = mapa.getInt(), V = mapa.getInt(), S = mapa.getInt();
+
+            InfoCliente[] clientes = new InfoCliente[N];
+            int k = mapa.getInt();
+            for (int i = 0; i < k; i++) {
+                int idCliente = mapa.getInt();
+                int idGrupo = mapa.getInt();
+                clientes[idCliente] = new InfoCliente(idCliente, idGrupo, leerExtremo(mapa));
+            }
+
+            List<Registro> registros = new ArrayList<>();
+            while (mapa.position() < usados) {
+                int fin = mapa.position() + 4 + mapa.getInt();
+                while (mapa.position() < fin) {
+                    long tiempo = mapa.getLong();
+                    byte sentido = mapa.get();
+                    InetSocketAddress extremo = leerExtremo(mapa);
+                    byte[] datos = new byte[mapa.getShort() & 0xFFFF];
+                    mapa.get(datos);
+                    registros.add(new Registro(tiempo, sentido, extremo, datos));
+                }
+            }
+            registros.sort(Comparator.comparingLong(Registro::tiempoNs)); // Estable: cada hilo ya iba en orden.
+            return new Contenido(N, V, S, clientes, registros);
+        }
+    }
+
+    private static void escribirExtremo(ByteBuffer b, InetSocketAddress extremo) {
+        byte[] ip = extremo.getAddress().getAddress();
+        b.put((byte) ip.length).put(ip).putInt(extremo.getPort());
+    }
+
+    private static InetSocketAddress leerExtremo(ByteBuffer b) throws IOException {
+        byte[] ip = new byte[b.get()];
+        b.get(ip);
+        return new InetSocketAddress(InetAddress.getByAddress(ip), b.getInt());
+    }
+}